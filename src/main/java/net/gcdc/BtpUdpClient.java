@@ -20,6 +20,7 @@ import net.gcdc.geonetworking.LinkLayerUdpToEthernet;
 import net.gcdc.geonetworking.LongPositionVector;
 import net.gcdc.geonetworking.MacAddress;
 import net.gcdc.geonetworking.Optional;
+import net.gcdc.geonetworking.PayloadView;
 import net.gcdc.geonetworking.Position;
 import net.gcdc.geonetworking.PositionProvider;
 import net.gcdc.geonetworking.StationConfig;
@@ -254,18 +255,19 @@ public final  class BtpUdpClient {
                             udpSocket.send(udpPacket);
 
                             BtpPacket packet = BtpPacket.fromGeonetData(gnData);
+                            PayloadView payload = packet.payloadView();
                             if (packet.destinationPort() == 2001 && remoteDataCamAddress != null) {
-                                System.arraycopy(packet.payload(), 0, bufferCam, 0, packet.payload().length);
-                                udpPacketCam.setLength(packet.payload().length);
+                                payload.copyTo(bufferCam, 0);
+                                udpPacketCam.setLength(payload.length());
                                 udpSocket.send(udpPacketCam);
 
                             } else if (packet.destinationPort() == 2010 && remoteDataIclcmAddress != null) {
-                                System.arraycopy(packet.payload(), 0, bufferIclcm, 0, packet.payload().length);
-                                udpPacketIclcm.setLength(packet.payload().length);
+                                payload.copyTo(bufferIclcm, 0);
+                                udpPacketIclcm.setLength(payload.length());
                                 udpSocket.send(udpPacketIclcm);
                             }
 
-                            logger.debug("Received BTP message of size {} to BTP port {}", packet.payload().length, packet.destinationPort());
+                            logger.debug("Received BTP message of size {} to BTP port {}", payload.length(), packet.destinationPort());
 
                         } catch (InterruptedException e) {
                             e.printStackTrace();
@@ -0,0 +1,63 @@
+package net.gcdc.geonetworking;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/** Base class for {@link ByteBufferLinkLayer} implementations.
+ *
+ * Implements the array-based methods of {@link LinkLayer} on top of the buffer-based ones, so
+ * that new link layers can still be used by code written against the old interface.
+ */
+public abstract class AbstractByteBufferLinkLayer implements ByteBufferLinkLayer {
+
+    protected static final int ETHER_HEADER_LENGTH = 14;
+    protected static final int ETHERTYPE_OFFSET    = 12;
+
+    private ByteBuffer legacyReceiveBuffer = null;  // Allocated on first use of receive().
+
+    /** Receives one frame, subclasses that can drain their queue should override this. */
+    @Override
+    public int receive(ByteBuffer buffer, int[] lengths) throws IOException, InterruptedException {
+        lengths[0] = receive(buffer);
+        return lengths[0] == 0 ? 0 : 1;
+    }
+
+    @Override
+    public byte[] receive() throws IOException, InterruptedException {
+        if (legacyReceiveBuffer == null) {
+            legacyReceiveBuffer = ByteBuffer.allocate(MAX_FRAME_LENGTH);
+        }
+        legacyReceiveBuffer.clear();
+        int length = receive(legacyReceiveBuffer);
+        return Arrays.copyOf(legacyReceiveBuffer.array(), length);
+    }
+
+    @Override
+    public void send(byte[] payload) throws IOException {
+        send(ByteBuffer.wrap(payload));
+    }
+
+    @Override
+    public boolean prefersDirectBuffers() {
+        return false;
+    }
+
+    /** Returns true if the frame at given offset carries the Geonetworking ethertype.
+     *
+     * Reads the ethertype in place, without wrapping the array. */
+    protected static boolean isGeonetworking(byte[] frame, int offset, int length) {
+        return length >= ETHER_HEADER_LENGTH &&
+                frame[offset + ETHERTYPE_OFFSET]     == (byte) (GeonetStation.GN_ETHER_TYPE >> 8) &&
+                frame[offset + ETHERTYPE_OFFSET + 1] == (byte)  GeonetStation.GN_ETHER_TYPE;
+    }
+
+    /** Returns true if the frame at given offset of the buffer carries the Geonetworking
+     * ethertype.
+     *
+     * Uses an absolute get, so neither position nor limit of the buffer are changed. */
+    protected static boolean isGeonetworking(ByteBuffer buffer, int offset, int length) {
+        return length >= ETHER_HEADER_LENGTH &&
+                buffer.getShort(offset + ETHERTYPE_OFFSET) == GeonetStation.GN_ETHER_TYPE;
+    }
+}
@@ -79,8 +79,10 @@ public final class Area {
         private Type(int code) { this.code = code; }
         public  int code()     { return code;      }
 
+        private static final Area.Type[] byCode = Area.Type.values();
+
         public static Area.Type fromCode(int code) {
-            for (Area.Type h: Area.Type.values()) { if (h.code() == code) { return h; } }
+            for (Area.Type h: byCode) { if (h.code() == code) { return h; } }
             throw new IllegalArgumentException("Can't recognize area type: " + code);
         }
     }
@@ -126,8 +128,17 @@ public final class Area {
      * with origin in the center of the shape and abscissa parallel to the long side of the shape.
      */
     public double f(Position position) {
-        double distance = this.center.distanceInMetersTo(position);
-        double bearing = this.center.bearingInDegreesTowards(position);
+        return f(center.lattitudeDegrees(), center.longitudeDegrees(), distanceAmeters,
+                distanceBmeters, angleDegreesFromNorth, type, position);
+    }
+
+    /** Characteristic function of an area given by its fields, see {@link #f(Position)}. */
+    static double f(double centerLattitude, double centerLongitude, int distanceAmeters,
+            int distanceBmeters, int angleDegreesFromNorth, Type type, Position position) {
+        double distance = Position.distanceMeters(centerLattitude, centerLongitude,
+                position.lattitudeDegrees(), position.longitudeDegrees());
+        double bearing = Position.bearingDegrees(centerLattitude, centerLongitude,
+                position.lattitudeDegrees(), position.longitudeDegrees());
         double relativeAngle = bearing - angleDegreesFromNorth;
         double x = distance * Math.cos(Math.toRadians(relativeAngle));
         double y = distance * Math.sin(Math.toRadians(relativeAngle));
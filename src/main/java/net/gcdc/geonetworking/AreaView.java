@@ -0,0 +1,52 @@
+package net.gcdc.geonetworking;
+
+import java.nio.ByteBuffer;
+
+/** Flyweight over an area in a Geobroadcast or Geoanycast header, reads the fields on demand.
+ *
+ * Lets the receiving thread decide whether a packet is for this station, and where to forward
+ * it, without creating an {@link Area}. Same rules as for {@link BasicHeaderView}.
+ *
+ * @see Area
+ */
+public final class AreaView {
+    /** Area length in bytes: center position and three 16-bit fields. */
+    public static final int LENGTH = Position.LENGTH + 6;
+
+    private ByteBuffer buffer;
+    private int        offset;
+    private Area.Type  type;
+
+    /** Points the view to the area starting at offset, returns this view. */
+    public AreaView wrap(ByteBuffer buffer, int offset, Area.Type type) {
+        this.buffer = buffer;
+        this.offset = offset;
+        this.type   = type;
+        return this;
+    }
+
+    public Area.Type type() { return type; }
+
+    public double centerLattitudeDegrees() { return Position.fromStoreUnit(buffer.getInt(offset)); }
+    public double centerLongitudeDegrees() { return Position.fromStoreUnit(buffer.getInt(offset + 4)); }
+    public int    distanceAmeters()        { return buffer.getShort(offset +  8) & 0xffff; }
+    public int    distanceBmeters()        { return buffer.getShort(offset + 10) & 0xffff; }
+    public int    angleDegreesFromNorth()  { return buffer.getShort(offset + 12) & 0xffff; }
+
+    public Position center() {
+        return new Position(centerLattitudeDegrees(), centerLongitudeDegrees());
+    }
+
+    /** Same as {@link Area#contains(Position)}. */
+    public boolean contains(Position position) {
+        return Area.f(centerLattitudeDegrees(), centerLongitudeDegrees(), distanceAmeters(),
+                distanceBmeters(), angleDegreesFromNorth(), type, position) >= 0;
+    }
+
+    /** Returns a new Area with the same fields. */
+    public Area toArea() {
+        ByteBuffer area = buffer.duplicate();
+        area.position(offset);
+        return Area.getFrom(area, type);
+    }
+}
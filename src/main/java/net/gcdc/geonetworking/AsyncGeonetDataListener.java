@@ -0,0 +1,123 @@
+package net.gcdc.geonetworking;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** Listener that queues indications and calls the wrapped listener from an executor.
+ *
+ * The receiving thread only puts an indication into a bounded queue, so a slow listener (logger,
+ * GUI) does not stall beacons and forwarding. When the queue is full, the indication is dropped
+ * for this listener only and counted in {@link #dropped()}.
+ *
+ * The wrapped listener is called from one task at a time, in the order of indications, even if
+ * the executor has many threads. Several listeners can share one executor. The task hands the
+ * executor back after a batch of indications, so one busy listener does not hold a thread
+ * forever.
+ */
+public final class AsyncGeonetDataListener implements GeonetDataListener {
+
+    private final static Logger logger = LoggerFactory.getLogger(AsyncGeonetDataListener.class);
+
+    private final GeonetDataListener       delegate;
+    private final Executor                 executor;
+    private final MpscArrayQueue<Pending>  queue;
+    private final int                      batchSize;
+    private final AtomicBoolean            isScheduled = new AtomicBoolean(false);
+    private final AtomicLong               delivered   = new AtomicLong(0);
+    private final AtomicLong               dropped     = new AtomicLong(0);
+    private final AtomicLong               failed      = new AtomicLong(0);
+    private volatile long                  lastLagNanos = 0;
+    private volatile long                  maxLagNanos  = 0;
+
+    private final Runnable drain = new Runnable() {
+        @Override public void run() { drain(); }
+    };
+
+    /** Indication with the time it was queued, for lag. */
+    private static final class Pending {
+        final GeonetData indication;
+        final long       queuedNanos;
+        Pending(GeonetData indication, long queuedNanos) {
+            this.indication  = indication;
+            this.queuedNanos = queuedNanos;
+        }
+    }
+
+    public AsyncGeonetDataListener(GeonetDataListener delegate, int capacity, Executor executor) {
+        this.delegate  = delegate;
+        this.executor  = executor;
+        this.queue     = new MpscArrayQueue<>(capacity);
+        this.batchSize = queue.capacity();
+    }
+
+    /** Returns the listener that receives indications from this one. */
+    public GeonetDataListener delegate() { return delegate; }
+
+    /** Queues the indication, never calls the wrapped listener. */
+    @Override
+    public void onGeonetDataReceived(GeonetData indication) {
+        if (!queue.offer(new Pending(indication, System.nanoTime()))) {
+            dropped.incrementAndGet();
+            return;
+        }
+        schedule();
+    }
+
+    private void schedule() {
+        if (isScheduled.compareAndSet(false, true)) {
+            try {
+                executor.execute(drain);
+            } catch (RejectedExecutionException e) {  // Executor is shut down, nobody will drain.
+                isScheduled.set(false);
+                Pending p;
+                while ((p = queue.poll()) != null) { dropped.incrementAndGet(); }
+            }
+        }
+    }
+
+    private void drain() {
+        try {
+            for (int i = 0; i < batchSize; i++) {
+                Pending p = queue.poll();
+                if (p == null) { break; }
+                final long lag = System.nanoTime() - p.queuedNanos;
+                lastLagNanos = lag;
+                if (lag > maxLagNanos) { maxLagNanos = lag; }  // Only this task writes it.
+                try {
+                    delegate.onGeonetDataReceived(p.indication);
+                    delivered.incrementAndGet();
+                } catch (RuntimeException e) {
+                    failed.incrementAndGet();
+                    logger.warn("Listener {} failed on indication", delegate, e);
+                }
+            }
+        } finally {
+            isScheduled.set(false);
+        }
+        // Indications queued after the last poll, or more than one batch.
+        if (!queue.isEmpty()) { schedule(); }
+    }
+
+    /** Returns the number of indications waiting for the wrapped listener. */
+    public int pending() { return queue.size(); }
+
+    /** Returns the number of indications passed to the wrapped listener. */
+    public long delivered() { return delivered.get(); }
+
+    /** Returns the number of indications dropped because the queue was full. */
+    public long dropped() { return dropped.get(); }
+
+    /** Returns the number of indications on which the wrapped listener threw an exception. */
+    public long failed() { return failed.get(); }
+
+    /** Returns time from queueing to delivery of the latest delivered indication. */
+    public long lastLagNanos() { return lastLagNanos; }
+
+    /** Returns the longest time from queueing to delivery so far. */
+    public long maxLagNanos() { return maxLagNanos; }
+}
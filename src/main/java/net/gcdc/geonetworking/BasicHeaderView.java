@@ -0,0 +1,42 @@
+package net.gcdc.geonetworking;
+
+import java.nio.ByteBuffer;
+
+/** Flyweight over a Basic Header in a buffer, reads the fields on demand.
+ *
+ * The view does not copy the header and does not change the position of the buffer. It is meant
+ * to be reused for every received frame with {@link #wrap}, so it is not thread safe and nobody
+ * may keep it after the buffer is reused.
+ *
+ * @see BasicHeader
+ */
+public final class BasicHeaderView {
+    private ByteBuffer buffer;
+    private int        offset;
+
+    /** Points the view to the header starting at offset, returns this view. */
+    public BasicHeaderView wrap(ByteBuffer buffer, int offset) {
+        this.buffer = buffer;
+        this.offset = offset;
+        return this;
+    }
+
+    public int  offset()            { return offset; }
+    public byte version()           { return (byte) ((buffer.get(offset) & 0xff) >> 4); }
+    public int  nextHeaderValue()   { return buffer.get(offset) & 0b0000_1111; }
+    public byte lifetimeByte()      { return buffer.get(offset + 2); }
+    public byte remainingHopLimit() { return buffer.get(offset + 3); }
+
+    public BasicHeader.NextHeader nextHeader() {
+        return BasicHeader.NextHeader.fromValue(nextHeaderValue());
+    }
+
+    public BasicHeader.Lifetime lifetime() {
+        return BasicHeader.Lifetime.fromByte(lifetimeByte());
+    }
+
+    /** Returns a new BasicHeader with the same fields. */
+    public BasicHeader toBasicHeader() {
+        return new BasicHeader(version(), nextHeader(), lifetime(), remainingHopLimit());
+    }
+}
@@ -0,0 +1,243 @@
+package net.gcdc.geonetworking;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/** In-process broadcast medium for many stations in one JVM, e.g. for simulations and load tests.
+ *
+ * Every frame sent on one port is delivered to all other ports. The frame is copied once, into a
+ * pooled {@link FrameBuffer} that all receivers share read-only; each receiver copies it into its
+ * own buffer in {@link Port#receive(ByteBuffer)} and releases it. The frame goes back to the pool
+ * after the last receiver is done with it.
+ *
+ * Every port has a bounded queue. If a receiver does not keep up and its queue is full, the frame
+ * is dropped for that receiver only, and counted both in {@link Port#dropped()} and
+ * {@link #dropped()}. Sending never blocks.
+ *
+ * <pre>
+ * BroadcastHub hub = new BroadcastHub(true);
+ * GeonetStation station1 = new GeonetStation(config1, hub.get(), positionProvider1);
+ * GeonetStation station2 = new GeonetStation(config2, hub.get(), positionProvider2);
+ * </pre>
+ */
+public class BroadcastHub {
+
+    /** Number of frames that fit into the queue of one port. */
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+    private final boolean         hasEthernetHeader;
+    private final boolean         isLoopback;
+    private final int             queueCapacity;
+    private final FrameBufferPool pool;
+    private final AtomicLong      dropped = new AtomicLong(0);
+    private volatile Port[]       ports   = new Port[0];  // Copied on attach and detach.
+
+    /**
+     * @param isLoopback if true, frames are delivered also to the port that sent them
+     * @param poolSize number of frames in the shared pool, frames beyond that are allocated
+     */
+    public BroadcastHub(boolean hasEthernetHeader, boolean isLoopback, int queueCapacity,
+            int poolSize) {
+        this.hasEthernetHeader = hasEthernetHeader;
+        this.isLoopback        = isLoopback;
+        this.queueCapacity     = queueCapacity;
+        this.pool = new FrameBufferPool(poolSize, FrameBufferPool.DEFAULT_SLOT_SIZE, false);
+    }
+
+    public BroadcastHub(boolean hasEthernetHeader) {
+        this(hasEthernetHeader, false, DEFAULT_QUEUE_CAPACITY, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /** Attaches a new port to the hub. */
+    public Port get() {
+        Port port = new Port();
+        synchronized (this) {
+            Port[] attached = Arrays.copyOf(ports, ports.length + 1);
+            attached[attached.length - 1] = port;
+            ports = attached;
+        }
+        return port;
+    }
+
+    private synchronized void detach(Port port) {
+        Port[] attached = ports;
+        for (int i = 0; i < attached.length; i++) {
+            if (attached[i] == port) {
+                Port[] remaining = new Port[attached.length - 1];
+                System.arraycopy(attached, 0, remaining, 0, i);
+                System.arraycopy(attached, i + 1, remaining, i, attached.length - i - 1);
+                ports = remaining;
+                return;
+            }
+        }
+    }
+
+    /** Returns the number of attached ports. */
+    public int size() { return ports.length; }
+
+    /** Returns the total number of frames dropped by all ports. */
+    public long dropped() { return dropped.get(); }
+
+    /** Returns the number of free frames in the shared pool. */
+    int poolAvailable() { return pool.available(); }
+
+    private void broadcast(Port sender, ByteBuffer payload) {
+        final FrameBuffer frame = pool.copyOf(payload);
+        payload.position(payload.limit());
+        try {
+            for (Port port : ports) {
+                if (port != sender || isLoopback) { port.offer(frame); }
+            }
+        } finally {
+            frame.release();
+        }
+    }
+
+    /** One station's attachment to the hub. */
+    public final class Port extends AbstractByteBufferLinkLayer {
+
+        private final MpscArrayQueue<FrameBuffer> queue = new MpscArrayQueue<>(queueCapacity);
+        private final AtomicLong                  portDropped = new AtomicLong(0);
+        private final AtomicBoolean               isPolling = new AtomicBoolean(false);  // Who polls queue.
+        private volatile Thread                   consumer = null;
+        private volatile boolean                  isConsumerParked = false;
+        private volatile boolean                  isClosed = false;
+
+        private Port() {}
+
+        private void offer(FrameBuffer frame) {
+            if (isClosed) { return; }
+            frame.retain();
+            if (!queue.offer(frame)) {
+                frame.release();
+                portDropped.incrementAndGet();
+                dropped.incrementAndGet();
+                return;
+            }
+            if (isConsumerParked) { LockSupport.unpark(consumer); }
+            if (isClosed) { drain(); }  // Closed meanwhile, nobody else may see the frame.
+        }
+
+        /** Takes the next frame, waiting if there is none. Only one thread may receive. */
+        @Override
+        public int receive(ByteBuffer buffer) throws IOException, InterruptedException {
+            startPolling();
+            try {
+                return copyAndRelease(take(), buffer);
+            } finally {
+                stopPolling();
+            }
+        }
+
+        /** Takes the first frame like {@link #receive(ByteBuffer)}, then all frames that are
+         * already in the queue, without waiting for more. */
+        @Override
+        public int receive(ByteBuffer buffer, int[] lengths)
+                throws IOException, InterruptedException {
+            startPolling();
+            try {
+                lengths[0] = copyAndRelease(take(), buffer);
+                int frames = 1;
+                while (frames < lengths.length && buffer.remaining() >= MAX_FRAME_LENGTH) {
+                    FrameBuffer frame = queue.poll();
+                    if (frame == null) { break; }
+                    lengths[frames] = copyAndRelease(frame, buffer);
+                    frames++;
+                }
+                return frames;
+            } finally {
+                stopPolling();
+            }
+        }
+
+        private FrameBuffer take() throws IOException, InterruptedException {
+            FrameBuffer frame = queue.poll();
+            while (frame == null) {
+                if (isClosed) { throw new ClosedChannelException(); }
+                isConsumerParked = true;
+                if (queue.isEmpty() && !isClosed) { LockSupport.park(this); }
+                isConsumerParked = false;
+                if (Thread.interrupted()) { throw new InterruptedException(); }
+                frame = queue.poll();
+            }
+            return frame;
+        }
+
+        /** Makes the calling thread the consumer of the queue. The only other thread that polls
+         * it is one that drains it after close. */
+        private void startPolling() throws IOException {
+            consumer = Thread.currentThread();
+            if (!isPolling.compareAndSet(false, true)) {
+                if (isClosed) { throw new ClosedChannelException(); }  // Being drained.
+                throw new IllegalStateException("Only one thread may receive");
+            }
+        }
+
+        private void stopPolling() {
+            isPolling.set(false);
+            if (isClosed) { drain(); }
+        }
+
+        /** Copies the shared frame from its array, without touching its position, since other
+         * receivers may read it at the same time. */
+        private int copyAndRelease(FrameBuffer frame, ByteBuffer buffer) {
+            try {
+                final ByteBuffer shared = frame.buffer();
+                final int length = Math.min(frame.length(), buffer.remaining());
+                buffer.put(shared.array(), shared.arrayOffset(), length);
+                return length;
+            } finally {
+                frame.release();
+            }
+        }
+
+        @Override
+        public void send(ByteBuffer frame) throws IOException {
+            if (isClosed) { throw new ClosedChannelException(); }
+            broadcast(this, frame);
+        }
+
+        /** Returns the number of frames dropped because this port's queue was full. */
+        public long dropped() { return portDropped.get(); }
+
+        /** Returns the number of frames waiting to be received. */
+        int queued() { return queue.size(); }
+
+        @Override
+        public boolean hasEthernetHeader() {
+            return hasEthernetHeader;
+        }
+
+        /** Releases the frames that will not be received anymore, unless a receiver is polling
+         * the queue: then it drains the queue when it is done. */
+        private void drain() {
+            while (!queue.isEmpty() && isPolling.compareAndSet(false, true)) {
+                try {
+                    FrameBuffer frame = queue.poll();
+                    while (frame != null) {
+                        frame.release();
+                        frame = queue.poll();
+                    }
+                } finally {
+                    isPolling.set(false);
+                }
+            }
+        }
+
+        /** Detaches the port from the hub and releases its queued frames, a waiting receive
+         * throws ClosedChannelException. */
+        @Override
+        public void close() {
+            isClosed = true;
+            detach(this);
+            final Thread waiting = consumer;
+            if (waiting != null) { LockSupport.unpark(waiting); }
+            drain();
+        }
+    }
+}
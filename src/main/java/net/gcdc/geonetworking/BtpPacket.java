@@ -1,14 +1,13 @@
 package net.gcdc.geonetworking;
 
 import java.nio.ByteBuffer;
-import java.util.Arrays;
 
 public class BtpPacket {
 
     private final Optional<Short>              sourcePort;
     private final short                        destinationPort;
     private final Optional<Short>              destinationPortInfo;
-    private final byte[]                       payload;  // Final reference, but mutable content!
+    private final PayloadView                  payload;
     private final Destination                  destination;
     private final Optional<TrafficClass>       trafficClass;
     private final Optional<LongPositionVector> senderPosition;
@@ -26,10 +25,24 @@ public class BtpPacket {
             Optional<TrafficClass>       trafficClass,
             Optional<LongPositionVector> senderPosition
         ) {
+        this(sourcePort, destinationPort, destinationPortInfo,
+                PayloadView.of(payload.clone()),  // Defensive, the caller still has the array.
+                destination, trafficClass, senderPosition);
+    }
+
+    private BtpPacket(
+            Optional<Short>              sourcePort,
+            short                        destinationPort,
+            Optional<Short>              destinationPortInfo,
+            PayloadView                  payload,
+            Destination                  destination,
+            Optional<TrafficClass>       trafficClass,
+            Optional<LongPositionVector> senderPosition
+        ) {
         this.sourcePort          = sourcePort;
         this.destinationPort     = destinationPort;
         this.destinationPortInfo = destinationPortInfo;
-        this.payload             = payload.clone();  // Defensive. Just in case.
+        this.payload             = payload;
         this.destination         = destination;
         this.trafficClass        = trafficClass;
         this.senderPosition      = senderPosition;
@@ -123,15 +136,16 @@ public class BtpPacket {
     public Optional<Short>              sourcePort()           { return sourcePort;          }
     public short                        destinationPort()      { return destinationPort;     }
     public Optional<Short>              destinationPortInfo () { return destinationPortInfo; }
-    public byte[]                       payload ()             { return payload.clone();     }  // Extra defensive here. Just in case.
+    public byte[]                       payload ()             { return payload.toByteArray(); }  // Copy, see payloadView().
+    public PayloadView                  payloadView ()         { return payload;             }
     public Destination                  destination ()         { return destination;         }
     public Optional<TrafficClass>       trafficClass ()        { return trafficClass;        }
     public Optional<LongPositionVector> senderPosition ()      { return senderPosition;      }
 
     public byte[] asBytes() {
         if (gnPayload == null) {
-            ByteBuffer buffer = ByteBuffer.allocate(HEADER_LENGTH + payload.length);
-            gnPayload = putHeaderTo(buffer).put(payload).array();
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER_LENGTH + payload.length());
+            gnPayload = payload.putTo(putHeaderTo(buffer)).array();
         }
         return gnPayload;
     }
@@ -141,6 +155,9 @@ public class BtpPacket {
                      .putShort(sourcePort.orElse(destinationPortInfo.orElse((short)0x00)));
     }
 
+    /** Returns BTP packet from the payload of GeonetData.
+     *
+     * The packet shares the payload array with data, see {@link GeonetData}. */
     public static BtpPacket fromGeonetData(GeonetData data) {
         ByteBuffer buffer = ByteBuffer.wrap(data.payload);
         Optional<Short>         sourcePort;
@@ -155,8 +172,8 @@ public class BtpPacket {
                 short port2 = buffer.getShort();
                 sourcePort          = isA ? Optional.of(port2)  :         emptyPort;
                 destinationPortInfo = isA ?           emptyPort : Optional.of(port2);
-                byte[] btpPayload = Arrays.copyOfRange(data.payload, HEADER_LENGTH,
-                        data.payload.length);
+                PayloadView btpPayload = data.payloadView().slice(HEADER_LENGTH,
+                        data.payload.length - HEADER_LENGTH);
                 return new BtpPacket(
                         sourcePort,
                         destinationPort,
@@ -1,10 +1,18 @@
 package net.gcdc.geonetworking;
 
 import java.io.IOException;
+import java.util.Collection;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
 
 public class BtpSocket implements AutoCloseable {
 
     private GeonetStation station;
+    private final Collection<BufferedPublisher<BtpPacket>> publishers = new CopyOnWriteArrayList<>();
+    private final GeonetDataListener publishersListener = new GeonetDataListener() {
+        @Override public void onGeonetDataReceived(GeonetData data) { sendToPublishers(data); }
+    };
+    private boolean isListening = false;  // Whether publishersListener is added, guarded by this.
 
     private BtpSocket(GeonetStation station) {
         this.station = station;
@@ -42,8 +50,55 @@ public class BtpSocket implements AutoCloseable {
         return BtpPacket.fromGeonetData(data);
     }
 
+    /** Returns a new publisher of received BTP packets, with flow control, see
+     * {@link GeonetStation#publisher(Executor, int)}. It completes when the socket is closed.
+     *
+     * All publishers of the socket share one station listener, which is removed when they are
+     * all closed. */
+    public BufferedPublisher<BtpPacket> publisher(Executor executor, int bufferCapacity) {
+        final BufferedPublisher<BtpPacket> publisher =
+                new BufferedPublisher<>(executor, bufferCapacity);
+        synchronized (this) {
+            publishers.add(publisher);
+            if (!isListening) {
+                station.addGeonetDataListener(publishersListener);
+                isListening = true;
+            }
+        }
+        return publisher;
+    }
+
+    /** Offers BTP packets to the open publishers, parsing the packet only if one of them has a
+     * subscriber. */
+    private void sendToPublishers(GeonetData data) {
+        if (data.protocol != UpperProtocolType.BTP_A && data.protocol != UpperProtocolType.BTP_B) {
+            return;
+        }
+        BtpPacket packet = null;
+        for (BufferedPublisher<BtpPacket> p : publishers) {
+            if (p.isClosed()) {
+                publishers.remove(p);
+                continue;
+            }
+            if (p.subscriberCount() == 0) { continue; }
+            if (packet == null) { packet = BtpPacket.fromGeonetData(data); }
+            p.offer(packet);
+        }
+        if (publishers.isEmpty()) { stopListening(); }
+    }
+
+    private synchronized void stopListening() {
+        if (isListening && publishers.isEmpty()) {
+            station.removeGeonetDataListener(publishersListener);
+            isListening = false;
+        }
+    }
+
     @Override
     public void close() {
+        for (BufferedPublisher<BtpPacket> p : publishers) { p.close(); }
+        publishers.clear();
+        stopListening();
         station.close();
     }
 }
@@ -0,0 +1,187 @@
+package net.gcdc.geonetworking;
+
+import java.util.Collection;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** Publisher of items offered by the station, with a bounded buffer per subscriber.
+ *
+ * Items are buffered for each subscriber until it requests them, and dropped for that
+ * subscriber when its buffer is full (counted in {@link #dropped()}). Offering never blocks and
+ * never calls subscribers: they are called from the executor, one task per subscriber at a time,
+ * with as many items per task as there are in the buffer and in demand. A subscriber that
+ * requests in batches therefore costs one executor task per batch, not per item.
+ *
+ * Subscribers that subscribe later get only items offered after that.
+ */
+public final class BufferedPublisher<T> implements Flow.Publisher<T>, AutoCloseable {
+
+    private final static Logger logger = LoggerFactory.getLogger(BufferedPublisher.class);
+
+    private final Executor                         executor;
+    private final int                              bufferCapacity;
+    private final Collection<BufferedSubscription> subscriptions = new CopyOnWriteArrayList<>();
+    private final AtomicLong                       dropped = new AtomicLong(0);
+    private volatile boolean                       isClosed = false;
+
+    /**
+     * @param executor runs subscribers; must not run tasks on the calling thread (the receiving
+     *        thread of the station), unless subscribers are known to return quickly
+     * @param bufferCapacity items buffered for each subscriber, rounded up to a power of two
+     */
+    public BufferedPublisher(Executor executor, int bufferCapacity) {
+        this.executor       = executor;
+        this.bufferCapacity = bufferCapacity;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super T> subscriber) {
+        if (subscriber == null) { throw new NullPointerException(); }
+        BufferedSubscription subscription = new BufferedSubscription(subscriber);
+        for (BufferedSubscription s : subscriptions) {
+            if (s.subscriber == subscriber) {  // Rule 2.12, subscribe at most once.
+                subscription.fail(new IllegalStateException("Already subscribed"));
+                return;
+            }
+        }
+        if (isClosed) {
+            subscription.isDone = true;
+        } else {
+            subscriptions.add(subscription);
+        }
+        subscription.signal();  // Calls onSubscribe, and onComplete if closed.
+    }
+
+    /** Buffers the item for every subscriber. */
+    public void offer(T item) {
+        if (isClosed) { return; }
+        for (BufferedSubscription s : subscriptions) {
+            s.offer(item);
+        }
+    }
+
+    /** Completes all subscribers after they have received their buffered items. */
+    @Override
+    public void close() {
+        isClosed = true;
+        for (BufferedSubscription s : subscriptions) {
+            s.isDone = true;
+            s.signal();
+        }
+        subscriptions.clear();
+    }
+
+    /** Returns the number of items dropped for subscribers whose buffer was full. */
+    public long dropped() { return dropped.get(); }
+
+    public int subscriberCount() { return subscriptions.size(); }
+
+    public boolean isClosed() { return isClosed; }
+
+    private final class BufferedSubscription implements Flow.Subscription, Runnable {
+        private final Flow.Subscriber<? super T> subscriber;
+        private final MpscArrayQueue<T>          buffer;
+        private final AtomicLong                 demand = new AtomicLong(0);
+        private final AtomicInteger              signals = new AtomicInteger(0);  // Pending drains.
+        private volatile boolean                 isDone = false;      // Complete when drained.
+        private volatile boolean                 isCancelled = false;
+        private volatile Throwable               error = null;        // Signalled at once.
+        private boolean                          isSubscribed = false;  // Only in run().
+
+        BufferedSubscription(Flow.Subscriber<? super T> subscriber) {
+            this.subscriber = subscriber;
+            this.buffer     = new MpscArrayQueue<>(bufferCapacity);
+        }
+
+        void offer(T item) {
+            if (isCancelled) { return; }
+            if (!buffer.offer(item)) {
+                dropped.incrementAndGet();
+                return;
+            }
+            if (demand.get() > 0) { signal(); }
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {  // Rule 3.9.
+                fail(new IllegalArgumentException("Non-positive request: " + n));
+                return;
+            }
+            while (true) {
+                final long current = demand.get();
+                final long next = current + n < 0 ? Long.MAX_VALUE : current + n;  // Rule 3.17.
+                if (demand.compareAndSet(current, next)) { break; }
+            }
+            signal();
+        }
+
+        @Override
+        public void cancel() {
+            isCancelled = true;
+            subscriptions.remove(this);
+        }
+
+        void fail(Throwable throwable) {
+            error = throwable;
+            subscriptions.remove(this);
+            signal();
+        }
+
+        /** Schedules run(), unless it is scheduled or running; then that run sees the signal. */
+        void signal() {
+            if (signals.getAndIncrement() == 0) {
+                try {
+                    executor.execute(this);
+                } catch (RejectedExecutionException e) {
+                    logger.warn("Executor rejected delivery, cancelling subscription", e);
+                    isCancelled = true;
+                    subscriptions.remove(this);
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            int missed = signals.get();
+            while (true) {
+                drain();
+                missed = signals.addAndGet(-missed);
+                if (missed == 0) { break; }
+            }
+        }
+
+        private void drain() {
+            try {
+                if (!isSubscribed) {
+                    isSubscribed = true;
+                    subscriber.onSubscribe(this);
+                }
+                while (!isCancelled && error == null && demand.get() > 0) {
+                    T item = buffer.poll();
+                    if (item == null) { break; }
+                    if (demand.get() != Long.MAX_VALUE) { demand.decrementAndGet(); }
+                    subscriber.onNext(item);
+                }
+                if (isCancelled) {
+                    while (buffer.poll() != null) {}  // Let go of the items.
+                } else if (error != null) {
+                    isCancelled = true;
+                    subscriber.onError(error);
+                } else if (isDone && buffer.isEmpty()) {
+                    isCancelled = true;
+                    subscriber.onComplete();
+                }
+            } catch (RuntimeException e) {  // Rule 2.13, subscriber is broken.
+                logger.warn("Subscriber {} failed, cancelling subscription", subscriber, e);
+                cancel();
+            }
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package net.gcdc.geonetworking;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/** Data Link Layer interface working on caller-owned buffers.
+ *
+ * Frames are the same as in {@link LinkLayer}, including the optional 14-byte Ethernet header,
+ * but they are passed in ByteBuffers owned by the caller. This lets GeonetStation receive into
+ * and send from buffers it reuses, instead of allocating a new array for every frame.
+ *
+ * Implementations must not keep a reference to the buffer after the call returns.
+ *
+ * Old {@link LinkLayer} implementations can be used through {@link LinkLayerAdapter}. New
+ * implementations can extend {@link AbstractByteBufferLinkLayer}, which provides the array-based
+ * methods of {@link LinkLayer} on top of the buffer-based ones.
+ */
+public interface ByteBufferLinkLayer extends LinkLayer {
+
+    /** Maximum frame length in bytes, the same as the maximum UDP datagram length. */
+    public static final int MAX_FRAME_LENGTH = 65535;
+
+    /** Receives the next frame into the buffer, starting at its position.
+     *
+     * Blocks until a frame is available. On return, the position of the buffer is advanced by the
+     * length of the frame. Frames longer than buffer.remaining() are truncated.
+     *
+     * @return length of the received frame in bytes */
+    public int receive(ByteBuffer buffer) throws IOException, InterruptedException;
+
+    /** Receives a batch of frames into the buffer, one frame after another.
+     *
+     * Blocks until the first frame is available, like {@link #receive(ByteBuffer)}. Then adds
+     * frames that are already queued, without blocking, until the lengths array is full or less
+     * than {@link #MAX_FRAME_LENGTH} bytes remain in the buffer. The length of the i-th frame is
+     * stored in lengths[i]. On return, the position of the buffer is after the last frame.
+     *
+     * Implementations that can't tell whether more frames are queued receive one frame.
+     *
+     * @return number of received frames */
+    public int receive(ByteBuffer buffer, int[] lengths) throws IOException, InterruptedException;
+
+    /** Sends bytes between the position and the limit of the buffer as one frame.
+     *
+     * On return, the position of the buffer is equal to its limit. */
+    public void send(ByteBuffer frame) throws IOException;
+
+    /** Returns true if the link layer works best with direct buffers.
+     *
+     * Channel-based implementations avoid a copy between the Java heap and native memory when
+     * they are given direct buffers, see {@link ByteBuffer#allocateDirect(int)}. */
+    public boolean prefersDirectBuffers();
+}
@@ -0,0 +1,47 @@
+package net.gcdc.geonetworking;
+
+import java.nio.ByteBuffer;
+
+/** Flyweight over a Common Header in a buffer, reads the fields on demand.
+ *
+ * Same rules as for {@link BasicHeaderView}: one view per receiving thread, reused for every
+ * frame, no copies and no allocations.
+ *
+ * @see CommonHeader
+ */
+public final class CommonHeaderView {
+    private ByteBuffer buffer;
+    private int        offset;
+
+    /** Points the view to the header starting at offset, returns this view. */
+    public CommonHeaderView wrap(ByteBuffer buffer, int offset) {
+        this.buffer = buffer;
+        this.offset = offset;
+        return this;
+    }
+
+    public int     offset()             { return offset; }
+    public byte    typeAndSubtypeByte() { return buffer.get(offset + 1); }
+    public byte    trafficClassByte()   { return buffer.get(offset + 2); }
+    public boolean isMobile()           { return (buffer.get(offset + 3) & 0x80) != 0; }
+    public short   payloadLength()      { return buffer.getShort(offset + 4); }
+    public byte    maximumHopLimit()    { return buffer.get(offset + 6); }
+
+    public UpperProtocolType nextHeader() {
+        return UpperProtocolType.fromCode(buffer.get(offset) >> 4);
+    }
+
+    public DestinationType typeAndSubtype() {
+        return DestinationType.fromByte(typeAndSubtypeByte());
+    }
+
+    public TrafficClass trafficClass() {
+        return TrafficClass.fromByte(trafficClassByte());
+    }
+
+    /** Returns a new CommonHeader with the same fields. */
+    public CommonHeader toCommonHeader() {
+        return new CommonHeader(nextHeader(), typeAndSubtype(), trafficClass(), isMobile(),
+                payloadLength(), maximumHopLimit());
+    }
+}
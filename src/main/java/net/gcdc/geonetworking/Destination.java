@@ -232,6 +232,8 @@ public abstract class Destination {
         @Override public Optional<Byte>   maxHopLimit()        { return maxHopLimit; }
         @Override public Optional<Byte>   remainingHopLimit()  { return remainingHopLimit; }
 
+        public Address address() { return address; }
+
         public GeoUnicast withMaxLifetimeSeconds(double lifetimeSeconds) {
             return new GeoUnicast(
                 this.address,
@@ -27,10 +27,20 @@ public enum DestinationType {
     public int  subtype() { return headerSubtype; }
     public byte asByte()  { return (byte) (headerType << 4 | headerSubtype); }
 
+    /** Returns true for Geoanycast of any area shape. */
+    public boolean isGeoanycast() { return headerType == GEOANYCAST_CIRCLE.headerType; }
+
+    // Lookup by header byte, values() would copy the array on every received packet.
+    private static final DestinationType[] byByte = new DestinationType[256];
+    static {
+        for (DestinationType hts: DestinationType.values()) { byByte[hts.asByte() & 0xff] = hts; }
+    }
+
     public static DestinationType fromByte(byte b) {
-        for (DestinationType hts: DestinationType.values()) {
-            if (hts.asByte() == b) { return hts; }
+        DestinationType hts = byByte[b & 0xff];
+        if (hts == null) {
+            throw new IllegalArgumentException("Can't recognize packet type and subtype: " + b);
         }
-        throw new IllegalArgumentException("Can't recognize packet type and subtype: " + b);
+        return hts;
     }
 }
\ No newline at end of file
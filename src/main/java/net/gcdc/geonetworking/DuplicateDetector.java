@@ -0,0 +1,29 @@
+package net.gcdc.geonetworking;
+
+/** Duplicate packet detection for multi-hop packets, see {@link StationConfig#getDuplicateDetection()}.
+ *
+ * Called from the receiving thread, or from receive workers, which shard by source address. */
+public interface DuplicateDetector {
+
+    /** How duplicates are detected. */
+    enum Mode {
+        /** Every packet is remembered for its lifetime, see {@link DuplicatePacketTable}. Memory
+         * grows with packet rate. */
+        PER_PACKET,
+
+        /** Last timestamp and a window of recent sequence numbers per source, kept in the
+         * Location Table entry, see {@link SequenceWindow}. Memory grows with the number of
+         * sources, but a window is forgotten when its entry expires. */
+        PER_SOURCE
+    }
+
+    /** Marks the packet as seen.
+     *
+     * @param sourceAddress GN address of the source
+     * @param timestamp TAI milliseconds mod 2^32 from the source position vector
+     * @param nowMillis current time, from the clock of the station
+     * @param lifetimeMillis lifetime of the packet from its Basic Header
+     * @return true if the packet was seen before, i.e. it is a duplicate */
+    boolean markSeen(long sourceAddress, int timestamp, short sequenceNumber,
+            long nowMillis, long lifetimeMillis);
+}
@@ -0,0 +1,160 @@
+package net.gcdc.geonetworking;
+
+/** Packets seen recently, for duplicate packet detection, in primitive arrays.
+ *
+ * A packet is identified by 96 bits: the 48-bit low-level part of the source GN address, the
+ * 16-bit sequence number, and the 32-bit timestamp of the source position vector (see
+ * {@link GeonetStation} on why the timestamp is included). Entries are kept in open-addressing
+ * tables with linear probing, 14 bytes per slot ({@code long}, {@code int} and {@code short}),
+ * and no objects per packet. A table is rebuilt when entries fill 7/8 of it, to a size that
+ * they fill 2/3 of, so it takes 16 to 21 bytes per entry. Entries include expired ones that have
+ * not been dropped yet; their slots are reused by new entries on the same probe path.
+ *
+ * Time is divided into generations. An entry holds the generation in which it expires instead
+ * of having a timer: expired entries are skipped by lookups, and dropped all together when the
+ * table is rebuilt, which happens when it is full, or at least every
+ * {@link #SWEEP_GENERATIONS} generations, to keep 16-bit generations from wrapping around.
+ *
+ * The table is split into segments by source address, each with its own lock, so receive
+ * workers (which shard by source address too) do not contend.
+ */
+final class DuplicatePacketTable implements DuplicateDetector {
+
+    private final static int   SEGMENTS          = 16;
+    private final static int   INITIAL_CAPACITY  = 64;   // Slots per segment, at least.
+    final static int           SWEEP_GENERATIONS = 4096;  // Generations are 16-bit, see above.
+
+    private final long      generationMillis;
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    /**
+     * @param generationMillis resolution of expiry; entries live up to this much longer than
+     *        asked for. At least 250 ms, so that the maximum lifetime of 6300 seconds and
+     *        the time between rebuilds together are less than 2^15 generations.
+     */
+    DuplicatePacketTable(long generationMillis) {
+        if (generationMillis < 250) {
+            throw new IllegalArgumentException("Generation too short: " + generationMillis);
+        }
+        this.generationMillis = generationMillis;
+        for (int i = 0; i < SEGMENTS; i++) { segments[i] = new Segment(); }
+    }
+
+    /** Marks the packet as seen until its lifetime has passed.
+     *
+     * @return true if the packet was seen before and has not expired, i.e. it is a duplicate */
+    @Override
+    public boolean markSeen(long sourceAddress, int timestamp, short sequenceNumber,
+            long nowMillis, long lifetimeMillis) {
+        final long key = ((sourceAddress & 0x00_00_ff_ff_ff_ff_ff_ffL) << 16) |
+                (sequenceNumber & 0xffff);
+        final int hash = hash(key, timestamp);
+        final long now = nowMillis / generationMillis;
+        final long expiry = (nowMillis + lifetimeMillis + generationMillis - 1) / generationMillis;
+        final Segment segment = segments[(int) ((sourceAddress * 0x9E37_79B9_7F4A_7C15L) >>> 60)];
+        synchronized (segment) {
+            return segment.markSeen(key, timestamp, hash, now, expiry);
+        }
+    }
+
+    /** Returns the number of entries, including expired ones that are not dropped yet. */
+    int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) { size += segment.occupied; }
+        }
+        return size;
+    }
+
+    /** Returns the number of slots, for the memory taken by {@link #size()} entries. */
+    int capacity() {
+        int capacity = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) { capacity += segment.keys.length; }
+        }
+        return capacity;
+    }
+
+    private static int hash(long key, int timestamp) {
+        long h = (key ^ ((long) timestamp << 21)) * 0x9E37_79B9_7F4A_7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /** Maps the hash to a slot of a table of any capacity, by its high bits. */
+    private static int index(int hash, int capacity) {
+        return (int) (((hash & 0xffff_ffffL) * capacity) >>> 32);
+    }
+
+    /** Stored generation, never 0, which marks an empty slot. */
+    private static short storedGeneration(long generation) {
+        final short g = (short) generation;
+        return g == 0 ? 1 : g;
+    }
+
+    private static final class Segment {
+        private long[]  keys        = new long[INITIAL_CAPACITY];   // Source and sequence number.
+        private int[]   timestamps  = new int[INITIAL_CAPACITY];
+        private short[] expiries    = new short[INITIAL_CAPACITY];  // 0 if the slot is empty.
+        private int     occupied    = 0;
+        private long    lastRebuild = 0;  // Generation.
+        private long    maxExpiry   = 0;  // Generation, all entries are expired after it.
+
+        boolean markSeen(long key, int timestamp, int hash, long now, long expiry) {
+            if (now - lastRebuild >= SWEEP_GENERATIONS) { rebuild(now); }
+            final short current = (short) now;
+            final int capacity = keys.length;
+            int reusable = -1;  // First expired slot on the way.
+            int i = index(hash, capacity);
+            while (expiries[i] != 0) {
+                final boolean isAlive = (short) (expiries[i] - current) >= 0;
+                if (!isAlive) {
+                    if (reusable < 0) { reusable = i; }
+                } else if (keys[i] == key && timestamps[i] == timestamp) {
+                    return true;
+                }
+                if (++i == capacity) { i = 0; }
+            }
+            if (reusable >= 0) {
+                i = reusable;
+            } else {
+                occupied++;
+            }
+            keys[i]       = key;
+            timestamps[i] = timestamp;
+            expiries[i]   = storedGeneration(expiry);
+            if (expiry > maxExpiry) { maxExpiry = expiry; }
+            if (occupied * 8L > keys.length * 7L) { rebuild(now); }
+            return false;
+        }
+
+        /** Drops expired entries, and grows or shrinks so that live entries fill 2/3. */
+        private void rebuild(long now) {
+            lastRebuild = now;
+            final short current = (short) now;
+            int live = 0;
+            if (now <= maxExpiry) {  // Otherwise all are expired, maybe long ago, skip comparing.
+                for (int i = 0; i < keys.length; i++) {
+                    if (expiries[i] != 0 && (short) (expiries[i] - current) >= 0) { live++; }
+                }
+            }
+            final int capacity = Math.max(INITIAL_CAPACITY, (live * 3 + 1) / 2);
+            final long[]  oldKeys       = keys;
+            final int[]   oldTimestamps = timestamps;
+            final short[] oldExpiries   = expiries;
+            keys       = new long[capacity];
+            timestamps = new int[capacity];
+            expiries   = new short[capacity];
+            occupied   = live;
+            for (int j = 0; j < oldKeys.length && live > 0; j++) {
+                if (oldExpiries[j] == 0 || (short) (oldExpiries[j] - current) < 0) { continue; }
+                int i = index(hash(oldKeys[j], oldTimestamps[j]), capacity);
+                while (expiries[i] != 0) {
+                    if (++i == capacity) { i = 0; }
+                }
+                keys[i]       = oldKeys[j];
+                timestamps[i] = oldTimestamps[j];
+                expiries[i]   = oldExpiries[j];
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package net.gcdc.geonetworking;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.threeten.bp.Clock;
+
+/** Timer service in real time, on a {@link ScheduledExecutorService}.
+ *
+ * The executor can be shared between stations (see {@link StationRuntime}); it is shut down on
+ * {@link #close()} only if this timer service created it.
+ */
+public final class ExecutorTimerService implements TimerService {
+
+    private final ScheduledExecutorService executor;
+    private final Clock                    clock;
+    private final boolean                  isExecutorOwned;
+
+    private ExecutorTimerService(ScheduledExecutorService executor, Clock clock,
+            boolean isExecutorOwned) {
+        this.executor        = executor;
+        this.clock           = clock;
+        this.isExecutorOwned = isExecutorOwned;
+    }
+
+    /** Returns a timer service on the executor, which stays running after {@link #close()}. */
+    public static ExecutorTimerService on(ScheduledExecutorService executor) {
+        return new ExecutorTimerService(executor, Clock.systemUTC(), false);
+    }
+
+    /** Returns a timer service with its own thread, which stops on {@link #close()}. */
+    public static ExecutorTimerService singleThread(final String threadName) {
+        return new ExecutorTimerService(Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactory() {
+                    @Override public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, threadName);
+                        t.setDaemon(true);
+                        return t;
+                    }
+                }), Clock.systemUTC(), true);
+    }
+
+    @Override
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        final ScheduledFuture<?> future = executor.schedule(task, delay, unit);
+        return new Timeout() {
+            @Override public boolean cancel() { return future.cancel(false); }
+        };
+    }
+
+    @Override
+    public Clock clock() { return clock; }
+
+    @Override
+    public void close() {
+        if (isExecutorOwned) { executor.shutdownNow(); }
+    }
+}
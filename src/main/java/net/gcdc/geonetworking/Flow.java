@@ -0,0 +1,39 @@
+package net.gcdc.geonetworking;
+
+/** Interfaces of reactive streams with demand-driven flow control, the same as
+ * java.util.concurrent.Flow of Java 9 (and org.reactivestreams), for Java 7.
+ *
+ * Methods have the same names and signatures as in Java 9, so an adapter to the JDK or to
+ * a reactive library is a one-liner per method.
+ */
+public final class Flow {
+
+    private Flow() {}
+
+    /** Producer of items that subscribers receive as much as they request. */
+    public static interface Publisher<T> {
+        /** Adds the subscriber. The subscriber gets onSubscribe first, then onNext for
+         * requested items, and onComplete or onError at the end. */
+        void subscribe(Subscriber<? super T> subscriber);
+    }
+
+    /** Receiver of items. Methods are called one at a time, never concurrently. */
+    public static interface Subscriber<T> {
+        void onSubscribe(Subscription subscription);
+        void onNext(T item);
+        void onError(Throwable throwable);
+        void onComplete();
+    }
+
+    /** Link between a publisher and a subscriber. */
+    public static interface Subscription {
+        /** Adds n items to the demand; n must be positive. */
+        void request(long n);
+        /** Stops sending items, eventually. */
+        void cancel();
+    }
+
+    /** Both subscriber and publisher, a stage in between. */
+    public static interface Processor<T, R> extends Subscriber<T>, Publisher<R> {
+    }
+}
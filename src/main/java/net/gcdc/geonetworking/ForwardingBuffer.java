@@ -0,0 +1,223 @@
+package net.gcdc.geonetworking;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.threeten.bp.Duration;
+import org.threeten.bp.Instant;
+
+/** Broadcast forwarding packet buffer of Greedy Forwarding (store-carry-forward).
+ *
+ * Holds received Geobroadcast frames that could not be forwarded because no neighbour is closer
+ * to the destination area than this station, until such a neighbour shows up in the Location
+ * Table. Frames are indexed by destination area, so a new neighbour releases all packets for the
+ * areas it is closer to at once.
+ *
+ * The buffer holds at most its capacity in bytes. A packet is dropped when its lifetime is over,
+ * by a timer that runs at the earliest expiry in the buffer, and when there is no space for a new
+ * one, expired packets go first, then the oldest ones (head drop, as in EN 302 636-4-1 V1.2.1,
+ * Annex C).
+ *
+ * Frames are copied into a pool of the buffer, see {@link #copyOf(ByteBuffer)}, with as many
+ * slots as full-size frames fit into the capacity, so that buffered packets do not take slots of
+ * the send pool of the station. The pool is allocated with the first packet, most stations never
+ * buffer anything.
+ *
+ * The buffer owns the frames it holds, and releases them when they are dropped; frames taken out
+ * of it are owned by the caller. Thread-safe.
+ */
+final class ForwardingBuffer {
+
+    /** Frame waiting in the buffer. */
+    static final class Packet {
+        final FrameBuffer frame;
+        final Area        area;
+        final long        lastForwarderMac;
+        final Instant     timeAdded;  // For the queuing time, subtracted from the lifetime.
+        final Instant     expiry;
+
+        Packet(FrameBuffer frame, Area area, long lastForwarderMac, Instant timeAdded,
+                Instant expiry) {
+            this.frame            = frame;
+            this.area             = area;
+            this.lastForwarderMac = lastForwarderMac;
+            this.timeAdded        = timeAdded;
+            this.expiry           = expiry;
+        }
+    }
+
+    private final long                    capacityBytes;
+    private final boolean                 isDirect;
+    private final TimerService            timer;
+    private final LinkedHashSet<Packet>   packets = new LinkedHashSet<>();  // Oldest first.
+    private final Map<Area, List<Packet>> byArea  = new HashMap<>();        // Oldest first too.
+    private long                          bytes   = 0;
+    private long                          dropped = 0;
+    private FrameBufferPool               pool;       // Allocated with the first packet.
+    private TimerService.Timeout          sweep;      // At sweepTime, while there are packets.
+    private Runnable                      sweepTask;  // Of sweep, to tell if a run is stale.
+    private Instant                       sweepTime;
+
+    /**
+     * @param isDirect whether the pool allocates direct buffers, see
+     *        {@link ByteBufferLinkLayer#prefersDirectBuffers()}
+     * @param timer for dropping expired packets
+     */
+    ForwardingBuffer(long capacityBytes, boolean isDirect, TimerService timer) {
+        this.capacityBytes = capacityBytes;
+        this.isDirect      = isDirect;
+        this.timer         = timer;
+    }
+
+    /** Returns a frame from the pool of the buffer with a copy of the bytes between position and
+     * limit of the source, to be added to the buffer in a {@link Packet}. */
+    synchronized FrameBuffer copyOf(ByteBuffer source) {
+        if (pool == null) {
+            pool = new FrameBufferPool(
+                    (int) Math.max(1, capacityBytes / FrameBufferPool.DEFAULT_SLOT_SIZE),
+                    FrameBufferPool.DEFAULT_SLOT_SIZE, isDirect);
+        }
+        return pool.copyOf(source);
+    }
+
+    /** Adds the packet, dropping expired and old packets if there is no space for it.
+     *
+     * @return false if the packet does not fit even into the empty buffer, or has expired,
+     *         then it is dropped */
+    synchronized boolean add(Packet packet, Instant now) {
+        final int length = packet.frame.length();
+        if (length > capacityBytes || !packet.expiry.isAfter(now)) {
+            drop(packet);
+            return false;
+        }
+        if (bytes + length > capacityBytes) { removeExpired(now); }
+        while (bytes + length > capacityBytes) { drop(remove(packets.iterator().next())); }
+        packets.add(packet);
+        List<Packet> ofArea = byArea.get(packet.area);
+        if (ofArea == null) {
+            ofArea = new ArrayList<>();
+            byArea.put(packet.area, ofArea);
+        }
+        ofArea.add(packet);
+        bytes += length;
+        if (sweepTime == null || packet.expiry.isBefore(sweepTime)) {
+            scheduleSweep(packet.expiry, now);
+        }
+        return true;
+    }
+
+    /** Returns the destination areas of buffered packets that the neighbour is closer to than we
+     * are, usually none. */
+    synchronized List<Area> areasCloserTo(Position neighbour, Position me) {
+        List<Area> areas = Collections.emptyList();
+        for (Area area : byArea.keySet()) {
+            final Position center = area.center();
+            if (neighbour.distanceInMetersTo(center) < me.distanceInMetersTo(center)) {
+                if (areas.isEmpty()) { areas = new ArrayList<>(); }
+                areas.add(area);
+            }
+        }
+        return areas;
+    }
+
+    /** Removes and returns all live packets for the area, oldest first. Expired ones are dropped. */
+    synchronized List<Packet> take(Area area, Instant now) {
+        final List<Packet> ofArea = byArea.remove(area);
+        if (ofArea == null) { return Collections.emptyList(); }
+        final List<Packet> taken = new ArrayList<>(ofArea.size());
+        for (Packet packet : ofArea) {
+            packets.remove(packet);
+            bytes -= packet.frame.length();
+            if (packet.expiry.isAfter(now)) {
+                taken.add(packet);
+            } else {
+                drop(packet);
+            }
+        }
+        return taken;
+    }
+
+    /** Drops packets whose lifetime is over.
+     *
+     * @return the earliest expiry of the remaining packets, or null if there are none */
+    synchronized Instant removeExpired(Instant now) {
+        Instant earliest = null;
+        for (Iterator<Packet> it = packets.iterator(); it.hasNext(); ) {
+            final Packet packet = it.next();
+            if (!packet.expiry.isAfter(now)) {
+                it.remove();
+                removeFromArea(packet);
+                bytes -= packet.frame.length();
+                drop(packet);
+            } else if (earliest == null || packet.expiry.isBefore(earliest)) {
+                earliest = packet.expiry;
+            }
+        }
+        return earliest;
+    }
+
+    /** Drops all packets. */
+    synchronized void clear() {
+        for (Packet packet : packets) { drop(packet); }
+        packets.clear();
+        byArea.clear();
+        bytes = 0;
+        if (sweep != null) { sweep.cancel(); }
+        sweep     = null;
+        sweepTask = null;
+        sweepTime = null;
+    }
+
+    private void scheduleSweep(Instant time, Instant now) {
+        if (sweep != null) { sweep.cancel(); }
+        sweepTime = time;
+        sweepTask = new Runnable() {
+            @Override public void run() { onSweepTimer(this); }
+        };
+        sweep = timer.schedule(sweepTask, Math.max(0, Duration.between(now, time).toMillis()),
+                TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void onSweepTimer(Runnable task) {
+        if (task != sweepTask) { return; }  // Cancelled too late.
+        sweep     = null;
+        sweepTask = null;
+        sweepTime = null;
+        final Instant now = timer.clock().instant();
+        final Instant earliest = removeExpired(now);
+        if (earliest != null) { scheduleSweep(earliest, now); }
+    }
+
+    synchronized int size() { return packets.size(); }
+
+    synchronized long bytes() { return bytes; }
+
+    /** Returns the number of packets dropped for lack of space or lifetime. */
+    synchronized long dropped() { return dropped; }
+
+    /** Removes the packet, which is in the buffer. */
+    private Packet remove(Packet packet) {
+        packets.remove(packet);
+        removeFromArea(packet);
+        bytes -= packet.frame.length();
+        return packet;
+    }
+
+    private void removeFromArea(Packet packet) {
+        final List<Packet> ofArea = byArea.get(packet.area);
+        ofArea.remove(packet);  // Usually the first one, packets leave mostly in order.
+        if (ofArea.isEmpty()) { byArea.remove(packet.area); }
+    }
+
+    private void drop(Packet packet) {
+        dropped++;
+        packet.frame.release();
+    }
+}
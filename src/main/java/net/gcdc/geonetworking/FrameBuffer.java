@@ -0,0 +1,58 @@
+package net.gcdc.geonetworking;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** Reference-counted buffer for one link layer frame, usually taken from a
+ * {@link FrameBufferPool}.
+ *
+ * The frame is the content of {@link #buffer()} between 0 and its limit. A new frame has a
+ * reference count of one. Everyone who keeps the frame beyond the current call (e.g. a forwarding
+ * timer or a transmit queue) has to {@link #retain()} it, and {@link #release()} it when done.
+ * When the count drops to zero, the buffer goes back to the pool and may be reused for another
+ * frame, so nobody may touch it after their last release.
+ */
+public final class FrameBuffer {
+
+    private final ByteBuffer      buffer;
+    private final FrameBufferPool pool;  // null if not pooled.
+    private final AtomicInteger   referenceCount = new AtomicInteger(0);
+
+    FrameBuffer(ByteBuffer buffer, FrameBufferPool pool) {
+        this.buffer = buffer;
+        this.pool   = pool;
+    }
+
+    /** Makes the buffer ready for a new frame of given length. */
+    void reset(int length) {
+        buffer.clear();
+        buffer.limit(length);
+        referenceCount.set(1);
+    }
+
+    public ByteBuffer buffer() { return buffer; }
+
+    public int referenceCount() { return referenceCount.get(); }
+
+    /** Returns the length of the frame in bytes. */
+    public int length() { return buffer.limit(); }
+
+    public FrameBuffer retain() {
+        while (true) {
+            final int count = referenceCount.get();
+            if (count <= 0) {
+                throw new IllegalStateException("Retaining a released frame buffer");
+            }
+            if (referenceCount.compareAndSet(count, count + 1)) { return this; }
+        }
+    }
+
+    public void release() {
+        final int count = referenceCount.decrementAndGet();
+        if (count == 0) {
+            if (pool != null) { pool.recycle(this); }
+        } else if (count < 0) {
+            throw new IllegalStateException("Frame buffer released more times than retained");
+        }
+    }
+}
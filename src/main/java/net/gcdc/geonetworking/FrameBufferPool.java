@@ -0,0 +1,71 @@
+package net.gcdc.geonetworking;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Pool of reusable {@link FrameBuffer}s, cut from one slab of memory.
+ *
+ * All slots have the same size. A frame that does not fit into a slot, or that is requested when
+ * all slots are in use, gets a buffer of its own which is left to the garbage collector; such
+ * frames are counted in {@link #misses()}. The free list is array-based, so taking and returning
+ * a buffer does not allocate.
+ */
+public final class FrameBufferPool {
+
+    /** Slot size that fits any ITS-G5 frame (maximum 802.11 MSDU is 2304 bytes) with a typical
+     * CAM or DENM payload. */
+    public static final int DEFAULT_SLOT_SIZE = 2048;
+
+    private final int                        slotSize;
+    private final boolean                    isDirect;
+    private final BlockingQueue<FrameBuffer> freeBuffers;
+    private final AtomicLong                 misses = new AtomicLong(0);
+
+    public FrameBufferPool(int slots, int slotSize, boolean isDirect) {
+        this.slotSize    = slotSize;
+        this.isDirect    = isDirect;
+        this.freeBuffers = new ArrayBlockingQueue<>(Math.max(1, slots));
+        ByteBuffer slab  = allocate(slots * slotSize);
+        for (int i = 0; i < slots; i++) {
+            slab.limit((i + 1) * slotSize).position(i * slotSize);
+            freeBuffers.add(new FrameBuffer(slab.slice(), this));
+        }
+    }
+
+    private ByteBuffer allocate(int capacity) {
+        return isDirect ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+
+    /** Returns a frame buffer with reference count 1, position 0 and limit at given length. */
+    public FrameBuffer acquire(int length) {
+        FrameBuffer frame = length <= slotSize ? freeBuffers.poll() : null;
+        if (frame == null) {
+            misses.incrementAndGet();
+            frame = new FrameBuffer(allocate(length), null);
+        }
+        frame.reset(length);
+        return frame;
+    }
+
+    /** Returns a frame buffer with a copy of the bytes between position and limit of the source.
+     * Position of the source is not changed. */
+    public FrameBuffer copyOf(ByteBuffer source) {
+        final int position = source.position();
+        final FrameBuffer frame = acquire(source.remaining());
+        frame.buffer().put(source);
+        source.position(position);
+        return frame;
+    }
+
+    void recycle(FrameBuffer frame) {
+        freeBuffers.offer(frame);
+    }
+
+    /** Returns the number of free slots. */
+    public int available() { return freeBuffers.size(); }
+
+    /** Returns the number of frames that could not be served from the pool. */
+    public long misses() { return misses.get(); }
+}
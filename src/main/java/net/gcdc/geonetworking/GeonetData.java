@@ -7,6 +7,11 @@ import java.util.Arrays;
  *
  * The class contains both payload and information needed to populate all Geonetworking headers.
  *
+ * Copies made with {@code with...} methods get their own copy of the payload array, but
+ * {@link BtpPacket}s made from this data share it, see {@link BtpPacket#fromGeonetData}. Do not
+ * change its content after creating GeonetData, and use {@link #payloadView()} where a read-only
+ * access is enough.
+ *
  * The class is declared as final, just because there was no need for subclasses yet.
  * If you remove final, make sure to take good care of {@link #equals(Object)} and
  * {@link #hashCode()}, because in one possible implementation idea there was a plan to store
@@ -44,6 +49,11 @@ public final class GeonetData {
                 this.payload.clone());
     }
 
+    /** Returns a read-only view of the payload, without copying it. */
+    public PayloadView payloadView() {
+        return PayloadView.of(payload);
+    }
+
     @Override
     public int hashCode() {
         final int prime = 31;
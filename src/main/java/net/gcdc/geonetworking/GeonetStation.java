@@ -6,16 +6,22 @@ import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
-import java.util.Map;
+import java.util.List;
 import java.util.Random;
-import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
 
 import net.gcdc.geonetworking.Destination.Geobroadcast;
 
@@ -29,11 +35,13 @@ import org.threeten.bp.Instant;
 public class GeonetStation implements Runnable, AutoCloseable {
 
     private StationConfig                         config;
-    private LinkLayer                             linkLayer;
+    private ByteBufferLinkLayer                   linkLayer;
     private PositionProvider                      positionProvider;
-    private final LinkedBlockingQueue<GeonetData> queueUpward = new LinkedBlockingQueue<>();
-    private final Collection<GeonetDataListener>  listeners = new ArrayList<>();
-    private int                                   nextFreeSequenceNumber = 0;
+    private final UpwardQueue                     queueUpward;
+    private final Collection<GeonetDataListener>  listeners = new CopyOnWriteArrayList<>();
+    private final Collection<BufferedPublisher<GeonetData>> publishers =
+            new CopyOnWriteArrayList<>();
+    private final AtomicInteger                   nextFreeSequenceNumber = new AtomicInteger(0);
     private final MacAddress senderMac;
 
     private LocationTable locationTable;
@@ -44,15 +52,50 @@ public class GeonetStation implements Runnable, AutoCloseable {
     private final static MacAddress EMPTY_MAC = new MacAddress(0);
     private final static int ETHER_HEADER_LENGTH = 14;
 
-    // Common scheduler for beacon, Duplicate packet detection and Contention-based forwarding.
-    // Change to custom-clock scheduler for non-real-time time. (Dependency injection?)
-    private final ScheduledExecutorService scheduler =
-            Executors.newSingleThreadScheduledExecutor();
+    // Frames are received into one buffer reused by the receiving thread, and sent from pooled
+    // buffers, since send() is called from application threads and from timers, and forwarded
+    // frames wait in the contention set. With batched receive, the receive buffer holds several
+    // frames one after another.
+    private final ByteBuffer receiveBuffer;
+    private final int[]      receiveLengths;
+
+    // Header views, location table updates and upward deliveries of the receiving thread, or of
+    // each receive worker if frames are handled by workers sharded by sender.
+    private final ReceiveContext  receiveContext;
+    private final ReceiveWorker[] receiveWorkers;   // Empty if frames are handled by run().
+    private final FrameBufferPool workerFramePool;  // Frames waiting for workers, null if none.
+    private final AtomicLong      droppedReceivedFrames = new AtomicLong(0);
+    private volatile boolean      isClosed = false;
+
+    private final FrameBufferPool     framePool;
+    private final TransmitQueue       transmitQueue;  // null if frames are sent directly.
+
+    // Recently used header templates, a set of HEADER_TEMPLATE_WAYS for each destination type
+    // and upper protocol, see headerTemplate.
+    private final static int UPPER_PROTOCOL_TYPES = UpperProtocolType.values().length;
+    private final static int HEADER_TEMPLATE_WAYS = 4;
+    private final AtomicReferenceArray<HeaderTemplate> headerTemplates = new AtomicReferenceArray<>(
+            DestinationType.values().length * UPPER_PROTOCOL_TYPES * HEADER_TEMPLATE_WAYS);
+    private final AtomicInteger                        headerTemplateMisses = new AtomicInteger(0);
+
+    // Common clock and timers for beacon, Duplicate packet detection, Contention-based forwarding
+    // and Location Table, possibly shared with other stations (see StationRuntime), then it is
+    // not closed with the station. Virtual time with VirtualTimeScheduler.
+    private final TimerService timer;
+    private final boolean      isTimerOwned;
+
+    // Calls listeners wrapped in AsyncGeonetDataListener, null if listeners are called directly.
+    private final ExecutorService listenerExecutor;
+    private final boolean         isListenerExecutorOwned;
 
     private boolean isPromiscuous = true;
- // Do we need concurrent?
-    private final Map<PacketId, ScheduledFuture<?>> contentionSet = new ConcurrentHashMap<>();
-    private final Set<PacketId> seenPackets = new HashSet<>();
+    // Both are used by receive workers, timers and the receiving thread.
+    private final ConcurrentMap<PacketId, ContentionTask> contentionSet = new ConcurrentHashMap<>();
+    private final DuplicateDetector duplicateDetector;
+    // Packets waiting for a neighbour closer to their area, null if they are broadcast instead.
+    private final ForwardingBuffer  forwardingBuffer;
+    // Geounicast packets waiting for the position of their destination.
+    private final LocationService   locationService;
 
     
     public GeonetStation(StationConfig config, LinkLayer linkLayer, PositionProvider positionProvider) {
@@ -60,96 +103,228 @@ public class GeonetStation implements Runnable, AutoCloseable {
     }
 
     public GeonetStation(StationConfig config, LinkLayer linkLayer, PositionProvider positionProvider, MacAddress senderMac) {
+        this(config, linkLayer, positionProvider, senderMac, null, null);
+    }
+
+    /** Creates a station that runs its timers and listeners on executors shared with other
+     * stations. The executors stay running when the station is closed.
+     *
+     * @param timer clock and timers for beacon, duplicate detection, forwarding and location
+     *        table expiry, or null for real-time timers of this station
+     * @param listenerExecutor for listeners if {@link StationConfig#getListenerQueueCapacity()}
+     *        is positive, or null for a pool of this station
+     */
+    public GeonetStation(StationConfig config, LinkLayer linkLayer,
+            PositionProvider positionProvider, MacAddress senderMac,
+            TimerService timer, ExecutorService listenerExecutor) {
         this.config = config;
+        this.isTimerOwned = timer == null;
+        this.timer = timer == null ? new HashedWheelTimer(HashedWheelTimer.DEFAULT_TICK_NANOS,
+                TimeUnit.NANOSECONDS, "geonet-timer") : timer;
         if (senderMac.value() != 0) {
             config.setItsGnLocalGnAddr(new Address(false, StationType.Passenger_Car, 752, senderMac.value()).value());
         }
-        this.linkLayer = linkLayer;
+        this.linkLayer = LinkLayerAdapter.of(linkLayer);
+        final int batchSize = Math.max(1, config.getReceiveBatchSize());
+        this.receiveBuffer = allocateBuffer((batchSize == 1 ? 1 : 2) *
+                ByteBufferLinkLayer.MAX_FRAME_LENGTH);
+        this.receiveLengths = new int[batchSize];
+        this.framePool = new FrameBufferPool(config.getFrameBufferPoolSize(),
+                FrameBufferPool.DEFAULT_SLOT_SIZE, this.linkLayer.prefersDirectBuffers());
+        this.transmitQueue = config.getTransmitQueueCapacity() > 0 ?
+                new TransmitQueue(this.linkLayer, config.getTransmitQueueCapacity()).start() : null;
+        this.isListenerExecutorOwned = listenerExecutor == null;
+        this.listenerExecutor = config.getListenerQueueCapacity() <= 0 ? null :
+                listenerExecutor != null ? listenerExecutor :
+                Executors.newCachedThreadPool(new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger(0);
+                    @Override public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "geonet-listener-" + count.getAndIncrement());
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+        this.queueUpward = new UpwardQueue(config.getUpwardQueueCapacity(),
+                config.getUpwardQueueOverflowPolicy());
         this.positionProvider = positionProvider;
         this.senderMac = senderMac;
         this.locationTable = new LocationTable(new ConfigProvider() {
             @Override public StationConfig config() { return GeonetStation.this.config;}
+        }, this.timer);
+        this.duplicateDetector =
+                config.getDuplicateDetection() == DuplicateDetector.Mode.PER_SOURCE ?
+                locationTable.duplicateDetector() : new DuplicatePacketTable(1000);
+        this.locationService = new LocationService(locationTable, this.timer,
+                new LocationService.Sender() {
+                    @Override public void sendRequest(Address target) {
+                        sendLocationServiceRequest(target);
+                    }
+                    @Override public void sendBuffered(GeonetData data, Instant timeAdded) {
+                        sendAfterLocationService(data, timeAdded);
+                    }
+                }, config.getItsGnLocationServiceRetransmitTimer(),
+                config.getItsGnLocationServiceMaxRetrans(),
+                1024L * config.getItsGnLocationServicePacketBufferSize());
+        locationTable.addListener(new LocationTableListener() {
+            @Override public void notifyEntryChanged(LocationTable.Entry entry) {
+                locationService.onLocationTableChanged();
+            }
+            @Override public void notifyStructureChanged() {
+                locationService.onLocationTableChanged();
+            }
         });
+        this.forwardingBuffer = config.getItsGnBcForwardingPacketBufferSize() <= 0 ? null :
+                new ForwardingBuffer(1024L * config.getItsGnBcForwardingPacketBufferSize(),
+                        this.linkLayer.prefersDirectBuffers(), this.timer);
+        if (forwardingBuffer != null) {
+            locationTable.addListener(new LocationTableListener() {
+                @Override public void notifyEntryChanged(LocationTable.Entry entry) {
+                    flushForwardingBuffer(entry);
+                }
+                @Override public void notifyStructureChanged() { }  // Removals release nothing.
+            });
+        }
+        this.receiveContext = new ReceiveContext(batchSize);
+        final int workers = Math.max(0, config.getReceiveWorkers());
+        this.workerFramePool = workers == 0 ? null : new FrameBufferPool(
+                workers * config.getReceiveWorkerQueueCapacity(),
+                FrameBufferPool.DEFAULT_SLOT_SIZE, false);
+        this.receiveWorkers = new ReceiveWorker[workers];
+        for (int i = 0; i < workers; i++) {
+            receiveWorkers[i] = new ReceiveWorker(i, config.getReceiveWorkerQueueCapacity(),
+                    batchSize);
+            receiveWorkers[i].thread.start();
+        }
         logger.info("Initialized station with GN address {} and MAC address {}", config.getItsGnLoacalGnAddr(), this.senderMac);
     }
 
     // Common function to get the current time.
     private Instant timeInstantNow() {
-        return Instant.now();  // Add clock here for non-real-time.
+        return timer.clock().instant();
     }
 
+    /** Returns the next sequence number, wraps at 65535. Called from any sending thread. */
     private short sequenceNumber() {
-        short result = (short) nextFreeSequenceNumber;
-        nextFreeSequenceNumber++;
-        if (nextFreeSequenceNumber > (1 << 16) - 1) { nextFreeSequenceNumber = 0; }
-        return result;
+        return (short) nextFreeSequenceNumber.getAndIncrement();
+    }
+
+    /** Returns the header template for the data, encoding a new one if none of the last few
+     * used for this type and protocol matches, so that a few applications with different traffic
+     * classes or lifetimes, and the defaults of Location Service packets, each keep theirs.
+     * Called from any sending thread. */
+    private HeaderTemplate headerTemplate(GeonetData data) {
+        final Destination destination = data.destination;
+        final byte trafficClass = data.trafficClass.isPresent() ?
+                data.trafficClass.get().asByte() : config.getItsGnDefaultTrafficClass();
+        final double lifetimeSeconds = destination.maxLifetimeSeconds().isPresent() ?
+                destination.maxLifetimeSeconds().get() : config.getItsGnDefaultPacketLifetime();
+        final byte remainingHopLimit = destination.remainingHopLimit().isPresent() ?
+                destination.remainingHopLimit().get() : (byte) config.getItsGnDefaultHopLimit();
+        final byte maximumHopLimit = destination.maxHopLimit().isPresent() ?
+                destination.maxHopLimit().get() : (byte) config.getItsGnDefaultHopLimit();
+        final Area area = destination instanceof Geobroadcast ?
+                ((Geobroadcast) destination).area() : null;
+        return headerTemplate(data.protocol, destination.typeAndSubtype(), trafficClass,
+                lifetimeSeconds, remainingHopLimit, maximumHopLimit, area);
     }
 
-    private BasicHeader basicHeader(GeonetData data) {
-        return new BasicHeader(
-                (byte) config.getItsGnProtocolVersion(),
-                BasicHeader.NextHeader.COMMON_HEADER,
-                BasicHeader.Lifetime.fromSeconds(data.destination.maxLifetimeSeconds().orElse(
-                        (double) config.getItsGnDefaultPacketLifetime())),
-                data.destination.remainingHopLimit().orElse((byte) config.getItsGnDefaultHopLimit()));
+    /** Returns the header template for Location Service packets, with default parameters. */
+    private HeaderTemplate headerTemplate(DestinationType type) {
+        return headerTemplate(UpperProtocolType.ANY, type,
+                config.getItsGnDefaultTrafficClass(), config.getItsGnDefaultPacketLifetime(),
+                (byte) config.getItsGnDefaultHopLimit(), (byte) config.getItsGnDefaultHopLimit(),
+                null);
     }
 
-    private CommonHeader commonHeader(GeonetData data) {
-        return new CommonHeader(
-                data.protocol,
-                data.destination.typeAndSubtype(),
-                data.trafficClass.orElse(TrafficClass.fromByte(config.getItsGnDefaultTrafficClass())),
-                config.getItsGnIsMobile() == 1,
-                (short) data.payload.length,
-                data.destination.maxHopLimit().orElse((byte) config.getItsGnDefaultHopLimit()));
+    private HeaderTemplate headerTemplate(UpperProtocolType protocol, DestinationType type,
+            byte trafficClass, double lifetimeSeconds, byte remainingHopLimit,
+            byte maximumHopLimit, Area area) {
+        final int version = config.getItsGnProtocolVersion();
+        final boolean isMobile = config.getItsGnIsMobile() == 1;
+
+        final int set = (type.ordinal() * UPPER_PROTOCOL_TYPES + protocol.ordinal()) *
+                HEADER_TEMPLATE_WAYS;
+        for (int way = 0; way < HEADER_TEMPLATE_WAYS; way++) {
+            final HeaderTemplate template = headerTemplates.get(set + way);
+            if (template != null && template.matches(trafficClass, lifetimeSeconds, remainingHopLimit,
+                    maximumHopLimit, area, version, isMobile)) {
+                return template;
+            }
+        }
+        final HeaderTemplate template = new HeaderTemplate(protocol, type,
+                trafficClass, lifetimeSeconds, remainingHopLimit, maximumHopLimit, area,
+                version, isMobile, linkLayer.hasEthernetHeader() ? senderMac : null);
+        // The way to replace comes from a counter of all misses, good enough to spread them.
+        final int way = headerTemplateMisses.getAndIncrement() & (HEADER_TEMPLATE_WAYS - 1);
+        headerTemplates.set(set + way, template);
+        return template;
     }
 
+    /** Returns the number of header templates encoded, see {@link #headerTemplate}. */
+    int headerTemplateMisses() { return headerTemplateMisses.get(); }
+
     /** Adds a listener for GeonetData indications (received messages from link layer).
      *
-     * Listeners do not disable queue-based solution, so someone have to empty that queue using
-     * {@link #receive()} to avoid out-of-memory problems.
+     * Listeners do not disable queue-based solution. If nobody empties that queue using
+     * {@link #receive()}, it fills up and indications are dropped (or receiving blocks) according
+     * to {@link StationConfig#getUpwardQueueOverflowPolicy()}.
+     *
+     * If {@link StationConfig#getListenerQueueCapacity()} is positive, the listener is wrapped in
+     * an {@link AsyncGeonetDataListener} and called from a separate pool, otherwise it is called
+     * on the receiving thread and must return quickly.
      **/
     public void addGeonetDataListener(GeonetDataListener listener) {
-        listeners.add(listener);
+        listeners.add(listenerExecutor == null ? listener : new AsyncGeonetDataListener(
+                listener, config.getListenerQueueCapacity(), listenerExecutor));
     }
 
     public void removeGeonetDataListener(GeonetDataListener listener) {
-        listeners.remove(listener);
+        for (GeonetDataListener l : listeners) {
+            if (l == listener || (l instanceof AsyncGeonetDataListener &&
+                    ((AsyncGeonetDataListener) l).delegate() == listener)) {
+                listeners.remove(l);
+                return;
+            }
+        }
+    }
+
+    /** Returns the queue in front of the listener, for its lag and drop counters, if the
+     * listener was wrapped by {@link #addGeonetDataListener(GeonetDataListener)}. */
+    public Optional<AsyncGeonetDataListener> asyncListener(GeonetDataListener listener) {
+        for (GeonetDataListener l : listeners) {
+            if (l instanceof AsyncGeonetDataListener &&
+                    ((AsyncGeonetDataListener) l).delegate() == listener) {
+                return Optional.of((AsyncGeonetDataListener) l);
+            }
+        }
+        return Optional.empty();
+    }
+
+    /** Returns a new publisher of GeonetData indications, an alternative to {@link #receive()}
+     * and listeners with flow control: each subscriber gets as many indications as it requests,
+     * and the rest wait in its buffer or are dropped, see {@link BufferedPublisher}.
+     *
+     * The publisher completes when the station is closed, or can be closed on its own.
+     */
+    public BufferedPublisher<GeonetData> publisher(Executor executor, int bufferCapacity) {
+        BufferedPublisher<GeonetData> publisher = new BufferedPublisher<>(executor, bufferCapacity);
+        publishers.add(publisher);
+        return publisher;
     }
 
     public void send(GeonetData data) throws IOException {
 
         logger.debug("Sending message, hasEtherHeader: {}, sender mac {}", linkLayer.hasEthernetHeader(), senderMac);
 
-        BasicHeader basicHeader = basicHeader(data);
-        CommonHeader commonHeader = commonHeader(data);
         LongPositionVector senderPosition = data.sender.orElse(positionProvider.getLatestPosition());
         LongPositionVector positionVector = senderPosition.address().isPresent() ?
                 senderPosition : senderPosition.withAddress(new Address(config.getItsGnLoacalGnAddr()));
 
-        GeonetData completeData = data.withSender(Optional.of(positionVector));
-
         switch (data.destination.typeAndSubtype()) {
             case SINGLE_HOP: {
-                int mediaInfo = 0x0000; // Reserved 32-bit field for media-dependent operations.
-                                        // Set to 0 if not used. Can be used for DCC-related
-                                        // information in ITS-G5 (ETSI TS 102 636-4-2).
-
-                ByteBuffer llPayload = ByteBuffer.allocate(
-                        (linkLayer.hasEthernetHeader() ? ETHER_HEADER_LENGTH : 0) +
-                        40 + data.payload.length);
-                if (linkLayer.hasEthernetHeader()) {
-                    llPayload.put(BROADCAST_MAC.asBytes());
-                    llPayload.put(senderMac.asBytes());
-                    llPayload.putShort(GN_ETHER_TYPE);
-                }
-                basicHeader.putTo(llPayload);    // octets 0-3
-                commonHeader.putTo(llPayload);   // octets 4-11
-                positionVector.putTo(llPayload); // octets 12-35
-                llPayload.putInt(mediaInfo);     // octets 36-39
-                llPayload.put(data.payload);
-
-                sendToLowerLayer(llPayload);
+                // Reserved 32-bit field for media-dependent operations after LPV is left 0.
+                // Can be used for DCC-related information in ITS-G5 (ETSI TS 102 636-4-2).
+                sendWithTemplate(data, BROADCAST_MAC, (short) 0, positionVector);
                 beaconService.skipNextBeacon();  // Beacon is redundant with Single Hop Broadcast.
                 break;
             }
@@ -162,36 +337,27 @@ public class GeonetStation implements Runnable, AutoCloseable {
                 MacAddress dstMac = BROADCAST_MAC;
                 if (linkLayer.hasEthernetHeader()) {
                     Area area = ((Destination.Geobroadcast)data.destination).area();
-                    if (!area.contains(position())) {
-                        logger.debug("Area {} don't contains me {}", area, position());
+                    Position myPosition = position();
+                    if (!area.contains(myPosition)) {
+                        logger.debug("Area {} don't contains me {}", area, myPosition);
                         Optional<MacAddress> betterDstMac = locationTable.closerThanMeTo(
-                            area.center(), position(), new HashSet<MacAddress>());
+                            area.center(), myPosition, new HashSet<MacAddress>());
                         if (betterDstMac.isPresent()) { dstMac = betterDstMac.get(); }
                     }
                 }
-                ByteBuffer llPayload = packGeobroadcast(dstMac, senderMac, completeData, sequenceNumber());
-
-                sendToLowerLayer(llPayload);
+                sendWithTemplate(data, dstMac, sequenceNumber(), positionVector);
                 break;
             }
-            case BEACON:
+            case BEACON: {
                 logger.debug("Send, BEACON, hasEtherHeader: {}", linkLayer.hasEthernetHeader());
-                ByteBuffer llPayload = ByteBuffer.allocate(
-                        (linkLayer.hasEthernetHeader() ? ETHER_HEADER_LENGTH : 0) +
-                        36);
-                if (linkLayer.hasEthernetHeader()) {
-                    llPayload.put(BROADCAST_MAC.asBytes());
-                    llPayload.put(senderMac.asBytes());
-                    llPayload.putShort(GN_ETHER_TYPE);
-                }
-                basicHeader.putTo(llPayload);    // octets 0-3
-                commonHeader.putTo(llPayload);   // octets 4-11
-                positionVector.putTo(llPayload); // octets 12-35
-
-                sendToLowerLayer(llPayload);
+                sendWithTemplate(data, BROADCAST_MAC, (short) 0, positionVector);
+                break;
+            }
+            case GEOUNICAST: {
+                sendGeoUnicast(data, positionVector);
                 break;
-            case GEOUNICAST:
-            case LOCATION_SERVICE_REPLY:
+            }
+            case LOCATION_SERVICE_REPLY:    // Sent by the station itself.
             case LOCATION_SERVICE_REQUEST:
             case MULTI_HOP:  // Topologically Scoped Broadcast (TSB)
             case ANY:
@@ -202,83 +368,79 @@ public class GeonetStation implements Runnable, AutoCloseable {
         }
     }
 
-    /** Interface to lower layer (Ethernet/ITS-G5/802.11p, Link Layer) */
-    private void onReceiveFromLowerLayer(byte[] payload) throws InterruptedException {
-        logger.debug("GN Received payload of size {}", payload.length);
-        // Do we want to clone payload before we start reading from it?
-        ByteBuffer buffer = ByteBuffer.wrap(payload).asReadOnlyBuffer();  // I promise not to write.
+    /** Interface to lower layer (Ethernet/ITS-G5/802.11p, Link Layer)
+     *
+     * The buffer is reused for the next frame, so nothing may keep a reference to it.
+     *
+     * Location table updates and indications to upper layer are collected into the context,
+     * see {@link ReceiveContext#flush()}. Called from the receiving thread or from a worker.
+     */
+    private void onReceiveFromLowerLayer(ByteBuffer buffer, ReceiveContext context) {
+        logger.debug("GN Received payload of size {}", buffer.remaining());
+        // I promise not to write into the buffer.
+        final int frameStart = buffer.position();  // Forwarding copies the frame from here.
         try {
-            byte[] llDstAddress = new byte[6];  // Initialized to 0.
-            byte[] llSrcAddress = new byte[6];
+            long llSrcAddress = 0;  // If there is no Ethernet header, source MAC is 0.
             if (linkLayer.hasEthernetHeader()) {
-                buffer.get(llDstAddress);
                 // Should be either me or broadcast.
-                MacAddress dstMac = MacAddress.fromBytes(llDstAddress);
-                if (!isPromiscuous  && !dstMac.equals(senderMac) &&
-                        !dstMac.equals(BROADCAST_MAC)) {
+                final long dstMac = MacAddress.valueAt(buffer, frameStart);
+                if (!isPromiscuous && dstMac != senderMac.value() &&
+                        dstMac != BROADCAST_MAC.value()) {
                     return;
                 }
-                buffer.get(llSrcAddress);
-                short ethertype = buffer.getShort();
+                llSrcAddress = MacAddress.valueAt(buffer, frameStart + 6);
+                short ethertype = buffer.getShort(frameStart + 12);
                 if (ethertype != GN_ETHER_TYPE) {
                     logger.warn("Ethertype is not Geonetworking (no filtering in LinkLayer?)");
                     return;
                 }
             }
+            // Offsets below are from the start of Geonetworking packet (start of Basic Header).
+            final int gnStart = frameStart + (linkLayer.hasEthernetHeader() ? ETHER_HEADER_LENGTH : 0);
 
-            BasicHeader  basicHeader  = BasicHeader.getFrom(buffer);
+            BasicHeaderView basicHeader = context.basicHeader.wrap(buffer, gnStart);
             if (basicHeader.version() != config.getItsGnProtocolVersion()) {
                 logger.warn("Unrecognized protocol version: " + basicHeader.version());
                 return;
             }
-            CommonHeader commonHeader = CommonHeader.getFrom(buffer);
+            CommonHeaderView commonHeader = context.commonHeader.wrap(buffer, gnStart + BasicHeader.LENGTH);
+            final int extendedHeader = gnStart + BasicHeader.LENGTH + CommonHeader.LENGTH;
 
             switch (commonHeader.typeAndSubtype()) {
                 case SINGLE_HOP: {
-                    LongPositionVector senderLpv = LongPositionVector.getFrom(buffer);
-                    @SuppressWarnings("unused")
-                    int reserved = buffer.getInt();  // 32 bit media-dependent info.
-                    byte[] upperPayload = new byte[commonHeader.payloadLength()];
-                    buffer.slice().get(upperPayload, 0, commonHeader.payloadLength());
+                    LongPositionVectorView senderLpv = context.lpv.wrap(buffer, extendedHeader);
+                    // 32 bit media-dependent info after the position vector.
+                    byte[] upperPayload = payload(buffer, extendedHeader + 28, commonHeader);
                     GeonetData indication = new GeonetData(
                             commonHeader.nextHeader(),
                             Destination.singleHop().withMaxLifetimeSeconds(
                                     basicHeader.lifetime().asSeconds()),
                             Optional.of(commonHeader.trafficClass()),
-                            Optional.of(senderLpv),
+                            Optional.of(senderLpv.toLongPositionVector()),
                             upperPayload
                             );
-                    sendToUpperLayer(indication);
-                    // If there is no Ethernet header, llSrcAddress is all 0.
-                    locationTable.updateFromDirectMessage(senderLpv.address().get(),
-                            MacAddress.fromBytes(llSrcAddress), senderLpv);
+                    context.upwardBatch.add(indication);
+                    context.locationUpdates.updateFromDirectMessage(senderLpv, llSrcAddress);
                     break;
                 }
                 case MULTI_HOP: {  // TODO: test case.
-                    short sequenceNumber = buffer.getShort();
-                    buffer.getShort();  // Reserved 16-bit.
-                    LongPositionVector senderLpv = LongPositionVector.getFrom(buffer);
-                    byte[] upperPayload = new byte[commonHeader.payloadLength()];
-                    buffer.slice().get(upperPayload, 0, commonHeader.payloadLength());
+                    LongPositionVectorView senderLpv = context.lpv.wrap(buffer, extendedHeader + 4);
+                    if (isDuplicate(senderLpv, buffer.getShort(extendedHeader),  // Reserved after.
+                            basicHeader.lifetime())) { break; }
+                    context.locationUpdates.updateFromForwardedMessage(senderLpv);
 
                     Destination.TopoScopedBroadcast destination = Destination.toposcopedbroadcast()
                             .withMaxLifetimeSeconds(basicHeader.lifetime().asSeconds())
                             .withMaxHopLimit(commonHeader.maximumHopLimit())
                             .withRemainingHopLimit(basicHeader.remainingHopLimit());
-                    GeonetData indication = new GeonetData(
+                    context.upwardBatch.add(new GeonetData(
                             commonHeader.nextHeader(),
                             destination,
                             Optional.of(commonHeader.trafficClass()),
-                            Optional.of(senderLpv),
-                            upperPayload
-                            );
-                    if (!isDuplicate(indication, sequenceNumber)) {
-                        sendToUpperLayer(indication);
-                    }
-                    locationTable.updateFromForwardedMessage(senderLpv.address().get(), senderLpv);
-                    forwardIfNecessary(indication, sequenceNumber, MacAddress.fromBytes(llSrcAddress));
-                    markAsSeen(indication, sequenceNumber);  // Duplicate packet detection.
-
+                            Optional.of(senderLpv.toLongPositionVector()),
+                            payload(buffer, extendedHeader + 28, commonHeader)
+                            ));
+                    // TSB is not forwarded yet.
                     break;
                 }
                 case GEOBROADCAST_CIRCLE:
@@ -288,74 +450,115 @@ public class GeonetStation implements Runnable, AutoCloseable {
                 case GEOANYCAST_ELLIPSE:
                 case GEOANYCAST_RECTANGLE:
                 {
-                    short sequenceNumber = buffer.getShort();
-                    buffer.getShort();  // Reserved 16-bit.
-                    LongPositionVector senderLpv = LongPositionVector.getFrom(buffer);
-                    Area area = Area.getFrom(buffer, Area.Type.fromCode(commonHeader.typeAndSubtype().subtype()));
-                    buffer.getShort();  // Reserved 16-bit.
-                    byte[] upperPayload = new byte[commonHeader.payloadLength()];
-                    buffer.slice().get(upperPayload, 0, commonHeader.payloadLength());
-
-                    Destination.Geobroadcast destination = Destination.geobroadcast(area)
-                            .withMaxLifetimeSeconds(basicHeader.lifetime().asSeconds())
-                            .withRemainingHopLimit(basicHeader.remainingHopLimit())
-                            .withMaxHopLimit(commonHeader.maximumHopLimit());
-                    GeonetData indication = new GeonetData(
-                            commonHeader.nextHeader(),
-                            destination,
-                            Optional.of(commonHeader.trafficClass()),
-                            Optional.of(senderLpv),
-                            upperPayload
-                            );
-                    if (area.contains(position()) && !isDuplicate(indication, sequenceNumber)) {
-                        sendToUpperLayer(indication);
+                    // Decisions are made in stages, from the fields at fixed offsets, and the
+                    // packet is decoded only if it goes to upper layer. Most of the frames in a
+                    // flooding storm are duplicates and end at the first stage.
+                    LongPositionVectorView senderLpv = context.lpv.wrap(buffer, extendedHeader + 4);
+                    final short sequenceNumber = buffer.getShort(extendedHeader);  // Reserved after.
+                    if (isDuplicate(senderLpv, sequenceNumber, basicHeader.lifetime())) {
+                        // Someone else forwarded it, we don't have to (Contention-based forwarding).
+                        if (!contentionSet.isEmpty()) {
+                            ContentionTask contending =
+                                    contentionSet.remove(new PacketId(senderLpv, sequenceNumber));
+                            if (contending != null) { contending.cancel(); }
+                        }
+                        break;
+                    }
+                    context.locationUpdates.updateFromForwardedMessage(senderLpv);
+
+                    final DestinationType type = commonHeader.typeAndSubtype();
+                    AreaView area = context.area.wrap(buffer, extendedHeader + 28,
+                            Area.Type.fromCode(type.subtype()));
+                    final Position myPosition = position();
+                    final boolean isInside = area.contains(myPosition);
+                    if (isInside) {
+                        // Reserved 16-bit after the area.
+                        byte[] upperPayload = payload(buffer, extendedHeader + 44, commonHeader);
+                        Destination.Geobroadcast destination = (type.isGeoanycast() ?
+                                    Destination.geoanycast(area.toArea()) :
+                                    Destination.geobroadcast(area.toArea()))
+                                .withMaxLifetimeSeconds(basicHeader.lifetime().asSeconds())
+                                .withRemainingHopLimit(basicHeader.remainingHopLimit())
+                                .withMaxHopLimit(commonHeader.maximumHopLimit());
+                        context.upwardBatch.add(new GeonetData(
+                                commonHeader.nextHeader(),
+                                destination,
+                                Optional.of(commonHeader.trafficClass()),
+                                Optional.of(senderLpv.toLongPositionVector()),
+                                upperPayload
+                                ));
+                    }
+                    // Do not forward GeoAnycast if we are one of the recipients.
+                    if (!(isInside && type.isGeoanycast())) {
+                        forwardIfNecessary(new PacketId(senderLpv, sequenceNumber), area,
+                                isInside, basicHeader.remainingHopLimit(), llSrcAddress,
+                                myPosition, buffer, frameStart);
                     }
-                                        
-                    locationTable.updateFromForwardedMessage(senderLpv.address().get(), senderLpv);
-                    forwardIfNecessary(indication, sequenceNumber, MacAddress.fromBytes(llSrcAddress));
-                    markAsSeen(indication, sequenceNumber);  // Duplicate packet detection.
                     break;
                 }
                 case BEACON: {
-                    LongPositionVector senderLpv = LongPositionVector.getFrom(buffer);
-                    locationTable.updateFromDirectMessage(senderLpv.address().get(),
-                            MacAddress.fromBytes(llSrcAddress), senderLpv);
+                    // Nothing goes to upper layer, so nothing is created here.
+                    context.locationUpdates.updateFromDirectMessage(
+                            context.lpv.wrap(buffer, extendedHeader), llSrcAddress);
+                    break;
+                }
+                case LOCATION_SERVICE_REQUEST: {
+                    LongPositionVectorView senderLpv = context.lpv.wrap(buffer, extendedHeader + 4);
+                    if (isDuplicate(senderLpv, buffer.getShort(extendedHeader),  // Reserved after.
+                            basicHeader.lifetime())) { break; }
+                    context.locationUpdates.updateFromForwardedMessage(senderLpv);
+
+                    // Requested GN address after the position vector.
+                    final long requestedAddress = buffer.getLong(extendedHeader + 28);
+                    final long myMac = (new Address(config.getItsGnLoacalGnAddr())).lowLevelAddress();
+                    if (new Address(requestedAddress).lowLevelAddress() == myMac) {
+                        sendLocationServiceReply(senderLpv.toLongPositionVector());
+                    }
+                    // LS Request is not forwarded yet.
                     break;
                 }
-                case LOCATION_SERVICE_REQUEST:
-                case LOCATION_SERVICE_REPLY:
-                    // Do nothing.
-                    // At the moment we don't maintain Location Table.
-                    logger.info("Ignoring Location Service {}",
-                            commonHeader.typeAndSubtype().toString());
+                case LOCATION_SERVICE_REPLY: {
+                    LongPositionVectorView senderLpv = context.lpv.wrap(buffer, extendedHeader + 4);
+                    if (isDuplicate(senderLpv, buffer.getShort(extendedHeader),  // Reserved after.
+                            basicHeader.lifetime())) { break; }
+                    context.locationUpdates.updateFromForwardedMessage(senderLpv);
+
+                    // Destination address is the first field of Short Position Vector.
+                    final long destinationAddress = buffer.getLong(extendedHeader + 28);
+                    final long myMac = (new Address(config.getItsGnLoacalGnAddr())).lowLevelAddress();
+                    if (new Address(destinationAddress).lowLevelAddress() == myMac) {
+                        // The Location Service sends the packets waiting for the sender as soon
+                        // as its position is in the table.
+                        context.locationUpdates.apply();
+                    }
+                    // LS Reply is not forwarded yet.
                     break;
+                }
                 case GEOUNICAST: {
-                    short sequenceNumber = buffer.getShort();
-                    buffer.getShort();  // Reserved 16-bit.
-                    LongPositionVector senderLpv = LongPositionVector.getFrom(buffer);
-                    ShortPositionVector destSpv = ShortPositionVector.getFrom(buffer);
-                    byte[] upperPayload = new byte[commonHeader.payloadLength()];
-                    buffer.slice().get(upperPayload, 0, commonHeader.payloadLength());
-
-                    Destination.GeoUnicast destination = Destination.geounicast(destSpv.address())
-                            .withMaxLifetimeSeconds(basicHeader.lifetime().asSeconds())
-                            .withRemainingHopLimit(basicHeader.remainingHopLimit())
-                            .withMaxHopLimit(commonHeader.maximumHopLimit());
-                    GeonetData indication = new GeonetData(
-                            commonHeader.nextHeader(),
-                            destination,
-                            Optional.of(commonHeader.trafficClass()),
-                            Optional.of(senderLpv),
-                            upperPayload
-                            );
+                    LongPositionVectorView senderLpv = context.lpv.wrap(buffer, extendedHeader + 4);
+                    if (isDuplicate(senderLpv, buffer.getShort(extendedHeader),  // Reserved after.
+                            basicHeader.lifetime())) { break; }
+                    context.locationUpdates.updateFromForwardedMessage(senderLpv);
+
+                    // Destination address is the first field of Short Position Vector.
+                    final long destinationAddress = buffer.getLong(extendedHeader + 28);
                     final long myMac = (new Address(config.getItsGnLoacalGnAddr())).lowLevelAddress();
-                    if (destSpv.address().lowLevelAddress() == myMac
-                            && !isDuplicate(indication, sequenceNumber)) {
-                        sendToUpperLayer(indication);
+                    if (new Address(destinationAddress).lowLevelAddress() == myMac) {
+                        buffer.position(extendedHeader + 28);
+                        ShortPositionVector destSpv = ShortPositionVector.getFrom(buffer);
+                        Destination.GeoUnicast destination = Destination.geounicast(destSpv.address())
+                                .withMaxLifetimeSeconds(basicHeader.lifetime().asSeconds())
+                                .withRemainingHopLimit(basicHeader.remainingHopLimit())
+                                .withMaxHopLimit(commonHeader.maximumHopLimit());
+                        context.upwardBatch.add(new GeonetData(
+                                commonHeader.nextHeader(),
+                                destination,
+                                Optional.of(commonHeader.trafficClass()),
+                                Optional.of(senderLpv.toLongPositionVector()),
+                                payload(buffer, extendedHeader + 48, commonHeader)
+                                ));
                     }
-                    locationTable.updateFromForwardedMessage(senderLpv.address().get(), senderLpv);
-                    //forwardIfNecessary(indication, sequenceNumber, MacAddress.fromBytes(llSrcAddress));
-                    markAsSeen(indication, sequenceNumber);  // Duplicate packet detection.
+                    // GUC is not forwarded yet.
                     break;
                 }
                 case ANY:
@@ -364,85 +567,224 @@ public class GeonetStation implements Runnable, AutoCloseable {
                     logger.info("Ignoring {}", commonHeader.typeAndSubtype().toString());
                     break;
             }
-        } catch (BufferUnderflowException | IllegalArgumentException ex) {
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException ex) {
             logger.warn("Can't parse the packet, ignoring.", ex);
         }
     }
 
-    
+    /** Returns a copy of upper layer payload that starts at offset in the buffer. */
+    private static byte[] payload(ByteBuffer buffer, int offset, CommonHeaderView commonHeader) {
+        byte[] upperPayload = new byte[commonHeader.payloadLength() & 0xffff];
+        buffer.position(offset);
+        buffer.get(upperPayload);
+        return upperPayload;
+    }
 
-    private void sendForwardedPacket(GeonetData data, int sequenceNumber, Instant timeAdded, MacAddress dstMac) {
+    /** Sends a received Geobroadcast frame further, with updated lifetime, remaining hop limit
+     * and MAC addresses.
+     *
+     * The frame is a copy of the received one, taken with {@link #copyOfReceived}, and is patched
+     * in place instead of being packed again from GeonetData. Frame has Ethernet header, since
+     * forwarding does not work without it. The caller still owns the frame and releases it.
+     */
+    private void sendForwardedPacket(FrameBuffer frame, Instant timeAdded, MacAddress dstMac) {
         if (!linkLayer.hasEthernetHeader()) { return; }  // Forwarding does not work without MAC.
+        final ByteBuffer llPayload = frame.buffer();
+        final int lifetimeIndex = ETHER_HEADER_LENGTH + 2;  // Octet 2 of Basic Header.
+        final int hopLimitIndex = ETHER_HEADER_LENGTH + 3;  // Octet 3 of Basic Header.
         double queuingTimeInSeconds = Duration.between(timeAdded, timeInstantNow()).toMillis() * 0.001;
-        double newLifetime = data.destination.maxLifetimeSeconds().get() - queuingTimeInSeconds;
-        byte newHops = (byte)(data.destination.remainingHopLimit().get() - 1);
+        double newLifetime = BasicHeader.Lifetime.fromByte(llPayload.get(lifetimeIndex)).asSeconds()
+                - queuingTimeInSeconds;
+        byte newHops = (byte)(llPayload.get(hopLimitIndex) - 1);
         if (newLifetime <= 0 || newHops < 2) { return; }
-        Geobroadcast destination = ((Geobroadcast) data.destination)
-                .withMaxHopLimit(newHops).withMaxLifetimeSeconds(newLifetime);
-        GeonetData newData = data.withDestination(destination);
-        ByteBuffer llPayload = packGeobroadcast(dstMac, senderMac, newData, sequenceNumber);
+        llPayload.put(lifetimeIndex, BasicHeader.Lifetime.fromSeconds(newLifetime).asByte());
+        llPayload.put(hopLimitIndex, newHops);
+        dstMac.putTo(llPayload, 0);
+        senderMac.putTo(llPayload, 6);
 
         try {
-            sendToLowerLayer(llPayload);
+            sendToLowerLayer(frame);
         } catch (IOException e) {
             logger.error("Exception in sending forwarded packet", e);
         }
 
     }
 
-    private ByteBuffer packGeobroadcast(MacAddress dstMac, MacAddress srcMac, GeonetData data, int sequenceNumber) {
-        ByteBuffer llPayload = ByteBuffer.allocate(
-            (linkLayer.hasEthernetHeader() ? ETHER_HEADER_LENGTH : 0) + 56 + data.payload.length);
+    /** Sends a Geounicast packet towards the position of its destination in the Location Table,
+     * to the neighbour closest to it, or broadcast if no neighbour is closer than we are. If the
+     * position is not known, the packet waits for the Location Service. */
+    private void sendGeoUnicast(GeonetData data, LongPositionVector sender) throws IOException {
+        final Address destination = ((Destination.GeoUnicast) data.destination).address();
+        final Optional<LocationTable.Entry> entry = locationTable.entry(destination);
+        // With a position, the packet goes out even if a request is still pending, the packets
+        // waiting for it are released by LocationService.onLocationTableChanged.
+        if (!entry.isPresent() || entry.get().position() == null) {
+            locationService.enqueue(destination, data);
+            return;
+        }
+        final LongPositionVector destinationPosition = entry.get().position();
+        MacAddress dstMac = BROADCAST_MAC;
+        if (linkLayer.hasEthernetHeader()) {
+            Optional<MacAddress> betterDstMac = locationTable.closerThanMeTo(
+                    destinationPosition.position(), position(), new HashSet<MacAddress>());
+            if (betterDstMac.isPresent()) { dstMac = betterDstMac.get(); }
+        }
+        HeaderTemplate template = headerTemplate(data);
+        FrameBuffer frame = framePool.acquire(template.length() + data.payload.length);
+        try {
+            ByteBuffer llPayload = frame.buffer();
+            template.putTo(llPayload, dstMac, sequenceNumber(), sender, data.payload.length);
+            template.putDestination(llPayload, 0,
+                    ShortPositionVector.of(destination, destinationPosition));
+            llPayload.put(data.payload);
+            sendToLowerLayer(frame);
+        } finally {
+            frame.release();
+        }
+    }
+
+    /** Sends a Geounicast packet from the Location Service buffer, with the time it waited
+     * taken from its lifetime. */
+    private void sendAfterLocationService(GeonetData data, Instant timeAdded) {
+        final Destination.GeoUnicast destination = (Destination.GeoUnicast) data.destination;
+        final double lifetimeSeconds = destination.maxLifetimeSeconds().isPresent() ?
+                destination.maxLifetimeSeconds().get() : config.getItsGnDefaultPacketLifetime();
+        final double queuingTimeInSeconds =
+                Duration.between(timeAdded, timeInstantNow()).toMillis() * 0.001;
+        if (lifetimeSeconds - queuingTimeInSeconds <= 0) { return; }
+        try {
+            send(new GeonetData(data.protocol,
+                    destination.withMaxLifetimeSeconds(lifetimeSeconds - queuingTimeInSeconds),
+                    data.trafficClass, data.sender, data.payload));
+        } catch (IOException e) {
+            logger.error("Exception in sending buffered Geounicast packet", e);
+        }
+    }
+
+    /** Broadcasts a Location Service Request for the address. */
+    private void sendLocationServiceRequest(Address target) {
+        HeaderTemplate template = headerTemplate(DestinationType.LOCATION_SERVICE_REQUEST);
+        FrameBuffer frame = framePool.acquire(template.length());
+        try {
+            ByteBuffer llPayload = frame.buffer();
+            template.putTo(llPayload, BROADCAST_MAC, sequenceNumber(), myPositionVector(), 0);
+            template.putDestination(llPayload, 0, target);
+            sendToLowerLayer(frame);
+        } catch (IOException e) {
+            logger.error("Exception in sending Location Service Request", e);
+        } finally {
+            frame.release();
+        }
+    }
 
+    /** Sends a Location Service Reply with our position to the requester, like Geounicast. */
+    private void sendLocationServiceReply(LongPositionVector requester) {
+        MacAddress dstMac = BROADCAST_MAC;
         if (linkLayer.hasEthernetHeader()) {
-            llPayload.put(dstMac.asBytes());
-            llPayload.put(senderMac.asBytes());
-            llPayload.putShort(GN_ETHER_TYPE);
+            Optional<MacAddress> betterDstMac = locationTable.closerThanMeTo(
+                    requester.position(), position(), new HashSet<MacAddress>());
+            if (betterDstMac.isPresent()) { dstMac = betterDstMac.get(); }
+        }
+        HeaderTemplate template = headerTemplate(DestinationType.LOCATION_SERVICE_REPLY);
+        FrameBuffer frame = framePool.acquire(template.length());
+        try {
+            ByteBuffer llPayload = frame.buffer();
+            template.putTo(llPayload, dstMac, sequenceNumber(), myPositionVector(), 0);
+            template.putDestination(llPayload, 0,
+                    ShortPositionVector.of(requester.address().get(), requester));
+            sendToLowerLayer(frame);
+        } catch (IOException e) {
+            logger.error("Exception in sending Location Service Reply", e);
+        } finally {
+            frame.release();
         }
-        basicHeader(data).putTo(llPayload);               // Octets  0- 3
-        commonHeader(data).putTo(llPayload);              // Octets  4-11
-        llPayload.putShort((short)sequenceNumber);        // Octets 12-13
-        llPayload.putShort((short)0);        // Reserved. // Octets 14-15
-        data.sender.get().putTo(llPayload);               // Octets 16-39
-        ((Geobroadcast)data.destination).area().putTo(llPayload);  // Octets 40-53
-        llPayload.putShort((short)0);        // Reserved. // Octets 54-55
-        llPayload.put(data.payload);
-        return llPayload;
     }
 
+    /** Returns our position vector, with our GN address. */
+    private LongPositionVector myPositionVector() {
+        LongPositionVector position = positionProvider.getLatestPosition();
+        return position.address().isPresent() ? position :
+                position.withAddress(new Address(config.getItsGnLoacalGnAddr()));
+    }
 
-    private void contentionBasedForwarding(final GeonetData data, final short sequenceNumber,
-            final MacAddress lastForwarderMac) {
-        // Packet can arrive from another forwarder, but will have the same sequence number,
-        // the same source position vector (even with timestamp), but different remaining hop limit
-        // different lifetime, different source MAC.
-        final PacketId packetId = new PacketId(data.sender.get().timestamp(), sequenceNumber,
-                data.sender.get().address().get());
-        if (contentionSet.containsKey(packetId)) {
-            contentionSet.get(packetId).cancel(false);
-            contentionSet.remove(packetId);
-            return;
+    /** Packs the data into a pooled frame with its header template and sends it. */
+    private void sendWithTemplate(GeonetData data, MacAddress dstMac, short sequenceNumber,
+            LongPositionVector sender) throws IOException {
+        HeaderTemplate template = headerTemplate(data);
+        FrameBuffer frame = framePool.acquire(template.length() + data.payload.length);
+        try {
+            ByteBuffer llPayload = frame.buffer();
+            template.putTo(llPayload, dstMac, sequenceNumber, sender, data.payload.length);
+            llPayload.put(data.payload);
+            sendToLowerLayer(frame);
+        } finally {
+            frame.release();
         }
+    }
 
-        if (isDuplicate(data, sequenceNumber)) {
-            logger.debug("Packet has been seen, but is not in the contention set. Discarding.");
-            return;
+    /** Returns a pooled copy of the frame in the buffer between frameStart and limit.
+     * Position of the buffer is not changed. */
+    private FrameBuffer copyOfReceived(ByteBuffer buffer, int frameStart) {
+        final int position = buffer.position();
+        buffer.position(frameStart);
+        try {
+            return framePool.copyOf(buffer);
+        } finally {
+            buffer.position(position);
+        }
+    }
+
+    /** Packet in the contention set of Contention-based forwarding, waiting for its timer.
+     *
+     * Owns a copy of the received frame, which is released either after sending or when the
+     * timer is cancelled because someone else forwarded the packet first. */
+    private final class ContentionTask implements Runnable {
+        private final PacketId              packetId;
+        private final FrameBuffer           frame;
+        private final Instant               timeAdded;
+        private volatile TimerService.Timeout timeout;  // Set before the task is in the set.
+        private volatile boolean            hasRun = false;
+
+        public ContentionTask(PacketId packetId, FrameBuffer frame, Instant timeAdded) {
+            this.packetId  = packetId;
+            this.frame     = frame;
+            this.timeAdded = timeAdded;
         }
 
-        if(data.destination.remainingHopLimit().orElse((byte) 1) < 2) { return; }
+        @Override public void run() {
+            hasRun = true;
+            contentionSet.remove(packetId, this);  // May not be there yet, see below.
+            try {
+                sendForwardedPacket(frame, timeAdded, BROADCAST_MAC);
+            } finally {
+                frame.release();
+            }
+        }
+
+        /** Cancels the timer, the frame is released unless the timer has already fired. */
+        public void cancel() {
+            if (timeout.cancel()) { frame.release(); }
+        }
+    }
 
-        if (((Geobroadcast)data.destination).area().contains(position())) {
+    private void contentionBasedForwarding(PacketId packetId, AreaView area, boolean isInside,
+            long lastForwarderMac, Position myPosition, ByteBuffer buffer, int frameStart) {
+        // Packet can arrive from another forwarder, but will have the same sequence number,
+        // the same source position vector (even with timestamp), but different remaining hop limit
+        // different lifetime, different source MAC. Such duplicates cancel the contention, see
+        // onReceiveFromLowerLayer.
+        if (isInside) {
             long   maxTimeout  = config.getItsGnGeoBroadcastCbfMaxTime();        // In milliseconds.
             long   minTimeout  = config.getItsGnGeoBroadcastCbfMinTime();        // In milliseconds.
             double maxDistance = config.getItsGnDefaultMaxCommunicationRange();  // In meters.
 
 
-            Position lastForwarderPosition = locationTable.getPosition(lastForwarderMac);
+            Position lastForwarderPosition = locationTable.getPosition(new MacAddress(lastForwarderMac));
 
             // If the message was forwarded by someone who never sent a beacon or SHB, assume that
             // it is out of range and the distance is maxDistance.
             double lastDistance = lastForwarderPosition == null ? maxDistance :
-                    position().distanceInMetersTo(lastForwarderPosition);
+                    myPosition.distanceInMetersTo(lastForwarderPosition);
 
             // If distance is 0, then timeout is maxTimeout.
             // If distance is maxDistance or more, then timeout is minTimeout.
@@ -450,44 +792,102 @@ public class GeonetStation implements Runnable, AutoCloseable {
             long timeoutMillis = lastDistance >= maxDistance ? minTimeout :
                     (long) (maxTimeout - (maxTimeout - minTimeout) * (lastDistance / maxDistance));
 
-            final Instant schedulingInstant = timeInstantNow();
-
-            ScheduledFuture<?> sendingFuture = scheduler.schedule(
-                    new Runnable() { @Override public void run() {
-                        sendForwardedPacket(data, sequenceNumber, schedulingInstant, BROADCAST_MAC); }; },
-                    timeoutMillis, TimeUnit.MILLISECONDS);
-
-            contentionSet.put(packetId, sendingFuture);
+            // Schedule before putting into the contention set, so that whoever finds the task
+            // there can cancel its timer. If the timer fires in between, the task removes itself.
+            ContentionTask task = new ContentionTask(packetId, copyOfReceived(buffer, frameStart),
+                    timeInstantNow());
+            task.timeout = timer.schedule(task, timeoutMillis, TimeUnit.MILLISECONDS);
+            contentionSet.put(packetId, task);
+            if (task.hasRun) { contentionSet.remove(packetId, task); }
 
         } else {
-            greedyForwarding(data, sequenceNumber, lastForwarderMac);
+            greedyForwarding(area, lastForwarderMac, myPosition, buffer, frameStart);
         }
     }
 
-    private void simpleForwarding(GeonetData indication, int sequenceNumber, MacAddress lastForwarderMac) {
-        Area destinationArea = ((Geobroadcast)indication.destination).area();
-        if (destinationArea.contains(position())) {  // We're inside - broadcast to all!
-            sendForwardedPacket(indication, sequenceNumber, timeInstantNow(), BROADCAST_MAC);
+    private void simpleForwarding(AreaView area, boolean isInside, long lastForwarderMac,
+            Position myPosition, ByteBuffer buffer, int frameStart) {
+        if (isInside) {  // We're inside - broadcast to all!
+            forwardNow(buffer, frameStart, BROADCAST_MAC);
         } else {
-            Position lastForwarderPosition = locationTable.getPosition(lastForwarderMac);
-            if (lastForwarderPosition != null && destinationArea.contains(lastForwarderPosition)) {
+            Position lastForwarderPosition = locationTable.getPosition(new MacAddress(lastForwarderMac));
+            if (lastForwarderPosition != null && area.contains(lastForwarderPosition)) {
                 // Last forwarder is already inside, we drop the packet.
             } else {  // Last forwarder is outside (as we are) or never sent SHB or beacon.
-                greedyForwarding(indication, sequenceNumber, lastForwarderMac);
+                greedyForwarding(area, lastForwarderMac, myPosition, buffer, frameStart);
+            }
+        }
+    }
+
+    private void greedyForwarding(AreaView area, long lastForwarderMac, Position myPosition,
+            ByteBuffer buffer, int frameStart) {
+        Optional<MacAddress> neighborMac = locationTable.closerThanMeTo(area.center(), myPosition,
+                new HashSet<MacAddress>(Arrays.asList(new MacAddress(lastForwarderMac))));
+        if (neighborMac.isPresent()) {
+            forwardNow(buffer, frameStart, neighborMac.get());
+            return;
+        }
+        // No neighbour is closer. Buffer and wait for one if the traffic class allows
+        // store-carry-forward, see flushForwardingBuffer, otherwise fall back to broadcast.
+        final byte trafficClass =
+                buffer.get(frameStart + ETHER_HEADER_LENGTH + BasicHeader.LENGTH + 2);
+        if (forwardingBuffer != null && TrafficClass.fromByte(trafficClass).isStoreCarryForward()) {
+            final Instant now = timeInstantNow();
+            final double lifetimeSeconds = BasicHeader.Lifetime.fromByte(
+                    buffer.get(frameStart + ETHER_HEADER_LENGTH + 2)).asSeconds();
+            final int position = buffer.position();
+            buffer.position(frameStart);
+            final FrameBuffer frame = forwardingBuffer.copyOf(buffer);  // Not from the send pool.
+            buffer.position(position);
+            forwardingBuffer.add(new ForwardingBuffer.Packet(frame, area.toArea(),
+                    lastForwarderMac, now, now.plusMillis((long) (1000 * lifetimeSeconds))), now);
+        } else {
+            forwardNow(buffer, frameStart, BROADCAST_MAC);
+        }
+    }
+
+    /** Forwards buffered packets to neighbours that are closer to their areas than we are, if
+     * the new or changed entry is such a neighbour for some of them. Called on changes in the
+     * Location Table, from the receiving thread, receive workers or the timer. */
+    private void flushForwardingBuffer(LocationTable.Entry entry) {
+        if (!entry.isNeighbour() || entry.position() == null || entry.macAddress() == null ||
+                forwardingBuffer.size() == 0 || isClosed) { return; }
+        final Position myPosition = position();
+        final Instant now = timeInstantNow();
+        for (Area area : forwardingBuffer.areasCloserTo(entry.position().position(), myPosition)) {
+            final Position center = area.center();
+            for (ForwardingBuffer.Packet packet : forwardingBuffer.take(area, now)) {
+                Optional<MacAddress> neighborMac = locationTable.closerThanMeTo(center,
+                        myPosition, Collections.singleton(new MacAddress(packet.lastForwarderMac)));
+                if (neighborMac.isPresent()) {
+                    try {
+                        sendForwardedPacket(packet.frame, packet.timeAdded, neighborMac.get());
+                    } finally {
+                        packet.frame.release();
+                    }
+                } else {
+                    forwardingBuffer.add(packet, now);  // Only the last forwarder is closer.
+                }
             }
         }
     }
 
-    private void greedyForwarding(GeonetData indication, int sequenceNumber, MacAddress lastForwarderMac) {
-        Optional<MacAddress> neighborMac = locationTable.closerThanMeTo(
-                ((Geobroadcast)indication.destination).area().center(),
-                position(), new HashSet<MacAddress>(Arrays.asList(lastForwarderMac)));
-        // Fall back to broadcast if no neighbor is fond. Alternative is to buffer and wait.
-        MacAddress dstMac = neighborMac.orElse(BROADCAST_MAC);
-        sendForwardedPacket(indication, sequenceNumber, timeInstantNow(), dstMac);
+    private void forwardNow(ByteBuffer buffer, int frameStart, MacAddress dstMac) {
+        FrameBuffer frame = copyOfReceived(buffer, frameStart);
+        try {
+            sendForwardedPacket(frame, timeInstantNow(), dstMac);
+        } finally {
+            frame.release();
+        }
     }
 
-    private void forwardIfNecessary(GeonetData indication, short sequenceNumber, MacAddress lastForwarderMac) {
+    /** Forwards a received Geobroadcast or Geoanycast packet if needed.
+     *
+     * The decision is made from the headers in the buffer, the frame is in the buffer from
+     * frameStart to limit, and is copied only if it is sent. Duplicates never get here. */
+    private void forwardIfNecessary(PacketId packetId, AreaView area, boolean isInside,
+            byte remainingHopLimit, long lastForwarderMac, Position myPosition,
+            ByteBuffer buffer, int frameStart) {
         // We can't forward if we don't know who was the last forwarder.
         // Packets have only the original sender, so for the last forwarder we need MAC address from LL.
         if (!linkLayer.hasEthernetHeader()) { return; }
@@ -495,28 +895,18 @@ public class GeonetStation implements Runnable, AutoCloseable {
         // Do not forward if remaining hop limit (RHL) is too low.
         // TODO: is it 1 or 0 which is too low? Beacons are sent with RHL=1, but they are never
         // forwarded. Does this imply that anything with RHL=1 should not be forwarded?
-        if (indication.destination.remainingHopLimit().orElse((byte) config.getItsGnDefaultHopLimit())
-                <= 1) {
-            return;
-        }
-
-        // Do not forward GeoAnycast if we are one of the recipients.
-        Destination.Geobroadcast destination = (Geobroadcast)indication.destination;
-        if (destination.isAnycast() && destination.area().contains(position())) {
-            return;
-        }
+        if (remainingHopLimit <= 1) { return; }
 
         switch (config.getItsGnGeoBroadcastForwardingAlgorithm()) {
             case 0:
                 logger.debug("Fwd alg set to 0 (unspecified), forwarding disabled");
                 break;
             case 1:
-                if (!isDuplicate(indication, sequenceNumber)) {
-                    simpleForwarding(indication, sequenceNumber, lastForwarderMac);
-                }
+                simpleForwarding(area, isInside, lastForwarderMac, myPosition, buffer, frameStart);
                 break;
             case 2:
-                contentionBasedForwarding(indication, sequenceNumber, lastForwarderMac);
+                contentionBasedForwarding(packetId, area, isInside, lastForwarderMac, myPosition,
+                        buffer, frameStart);
                 break;
             default:
                 logger.error("Unsupported forwarding algorithm: {}. Forwarding disabled.",
@@ -525,14 +915,40 @@ public class GeonetStation implements Runnable, AutoCloseable {
         }
     }
 
+    /** Returns the transmit queue, if frames are sent through one, see
+     * {@link StationConfig#getTransmitQueueCapacity()}. */
+    public Optional<TransmitQueue> transmitQueue() {
+        return transmitQueue == null ? Optional.<TransmitQueue>empty() : Optional.of(transmitQueue);
+    }
+
+    /** Returns the queue behind {@link #receive()}, for its overflow counters. */
+    public UpwardQueue upwardQueue() {
+        return queueUpward;
+    }
+
     /** Returns the position of this station, from {@link #positionProvider}. */
     public Position position() {
         return positionProvider.getLatestPosition().position();
     }
 
-    /** Interface to lower layer (Ethernet/ITS-G5/802.11p, Link Layer) */
-    private void sendToLowerLayer(ByteBuffer payload) throws IOException {
-        linkLayer.send(payload.array());
+    private ByteBuffer allocateBuffer(int capacity) {
+        return linkLayer.prefersDirectBuffers() ?
+                ByteBuffer.allocateDirect(capacity) :
+                ByteBuffer.allocate(capacity);
+    }
+
+    /** Interface to lower layer (Ethernet/ITS-G5/802.11p, Link Layer)
+     *
+     * Sends the whole frame, from 0 to its limit, or queues it for the writer thread if there is
+     * a {@link TransmitQueue}. The frame stays owned by the caller. */
+    private void sendToLowerLayer(FrameBuffer frame) throws IOException {
+        if (transmitQueue != null) {
+            transmitQueue.offer(frame);
+            return;
+        }
+        ByteBuffer payload = frame.buffer();
+        payload.rewind();
+        linkLayer.send(payload);
     }
 
     /** Private interface to send to upper layer (BTP, Transport Layer).
@@ -542,10 +958,21 @@ public class GeonetStation implements Runnable, AutoCloseable {
      *
      * Provides an ability to refactor queue solution to a reactive-style solution later.
      * */
-    private void sendToUpperLayer(GeonetData indication) throws InterruptedException {
-        queueUpward.put(indication);
+    private void sendToUpperLayer(List<GeonetData> indications) throws InterruptedException {
+        queueUpward.putAll(indications);
+        for (BufferedPublisher<GeonetData> p : publishers) {
+            if (p.isClosed()) {
+                publishers.remove(p);
+                continue;
+            }
+            for (GeonetData indication : indications) {
+                p.offer(indication);
+            }
+        }
         for (GeonetDataListener l : listeners) {
-            l.onGeonetDataReceived(indication);
+            for (GeonetData indication : indications) {
+                l.onGeonetDataReceived(indication);
+            }
         }
     }
 
@@ -558,23 +985,186 @@ public class GeonetStation implements Runnable, AutoCloseable {
         return queueUpward.take();
     }
 
+    /** Receives and handles all frames that are already available, without waiting for more.
+     *
+     * This is an alternative to {@link #run()} for link layers in non-blocking mode, where
+     * receive returns 0 when there is nothing to receive (see {@link LinkLayerDatagramChannel}),
+     * so that one selector loop can drive many channels. With a blocking link layer this method
+     * blocks like {@link #run()} does.
+     *
+     * @return number of frames handled */
+    public int poll() throws IOException, InterruptedException {
+        int frames = 0;
+        int batch = receiveBatch();
+        while (batch > 0) {
+            frames += batch;
+            batch = receiveBatch();
+        }
+        return frames;
+    }
+
+    /** Receives a batch of up to {@link StationConfig#getReceiveBatchSize()} frames and handles
+     * them, or hands them over to receive workers.
+     *
+     * Frames are handled one by one, but location table updates are applied and indications are
+     * sent to upper layer once for the whole batch.
+     *
+     * @return number of frames in the batch */
+    private int receiveBatch() throws IOException, InterruptedException {
+        receiveBuffer.clear();
+        final int frames = linkLayer.receive(receiveBuffer, receiveLengths);
+        int start = 0;
+        for (int i = 0; i < frames; i++) {
+            receiveBuffer.limit(start + receiveLengths[i]).position(start);
+            if (receiveWorkers.length == 0) {
+                onReceiveFromLowerLayer(receiveBuffer, receiveContext);
+            } else {
+                dispatch(receiveBuffer);
+            }
+            start += receiveLengths[i];
+        }
+        if (receiveWorkers.length == 0) { receiveContext.flush(); }
+        return frames;
+    }
+
+    /** Hands the frame in the buffer over to the worker of its sender, or drops it if that
+     * worker is too far behind. */
+    private void dispatch(ByteBuffer buffer) {
+        ReceiveWorker worker = receiveWorkers[shardOf(buffer)];
+        FrameBuffer frame = workerFramePool.copyOf(buffer);
+        if (!worker.offer(frame)) {
+            frame.release();
+            droppedReceivedFrames.incrementAndGet();
+        }
+    }
+
+    /** Returns the index of the worker for the frame in the buffer, by GN address of the source.
+     *
+     * All packets from one source go to one worker, so they are handled in order, and duplicates,
+     * contention and location table entry of a source are only touched by that worker. Frames too
+     * short to have a source go to the first worker, which drops them. */
+    private int shardOf(ByteBuffer buffer) {
+        final int gnStart = buffer.position() +
+                (linkLayer.hasEthernetHeader() ? ETHER_HEADER_LENGTH : 0);
+        final int extendedHeader = gnStart + BasicHeader.LENGTH + CommonHeader.LENGTH;
+        if (buffer.limit() < extendedHeader + 4 + Address.LENGTH) { return 0; }
+        final byte typeAndSubtype = buffer.get(gnStart + BasicHeader.LENGTH + 1);
+        // Source position vector starts the extended header of Beacon and SHB, other packets
+        // have sequence number and 16 reserved bits before it.
+        final boolean hasSequenceNumber = typeAndSubtype != DestinationType.BEACON.asByte() &&
+                typeAndSubtype != DestinationType.SINGLE_HOP.asByte();
+        final long address = buffer.getLong(extendedHeader + (hasSequenceNumber ? 4 : 0));
+        final int hash = (int) (address ^ (address >>> 32)) * 0x9E3779B9;  // Spread low bits.
+        return (hash >>> 1) % receiveWorkers.length;
+    }
+
+    /** Returns the number of received frames dropped because a receive worker was too far
+     * behind, see {@link StationConfig#getReceiveWorkers()}. */
+    public long droppedReceivedFrames() {
+        return droppedReceivedFrames.get();
+    }
+
+    /** State of a thread that handles received frames.
+     *
+     * Holds header views, location table updates and indications to upper layer collected for
+     * a batch of frames. */
+    private final class ReceiveContext {
+        final BasicHeaderView        basicHeader  = new BasicHeaderView();
+        final CommonHeaderView       commonHeader = new CommonHeaderView();
+        final LongPositionVectorView lpv          = new LongPositionVectorView();
+        final AreaView               area         = new AreaView();
+        final LocationTable.Batch    locationUpdates;
+        final List<GeonetData>       upwardBatch  = new ArrayList<>();
+
+        ReceiveContext(int batchSize) {
+            locationUpdates = locationTable.batch(batchSize);
+        }
+
+        /** Applies location table updates and sends indications of the batch to upper layer. */
+        void flush() throws InterruptedException {
+            locationUpdates.apply();
+            if (!upwardBatch.isEmpty()) {
+                try {
+                    sendToUpperLayer(upwardBatch);
+                } finally {
+                    upwardBatch.clear();
+                }
+            }
+        }
+    }
+
+    /** Thread that handles received frames from a share of sources, see {@link #shardOf}.
+     *
+     * The receiving thread copies frames into pooled buffers and offers them to the queue of
+     * the worker; the worker handles them in order, and flushes its context after a batch or
+     * when the queue is empty. */
+    private final class ReceiveWorker implements Runnable {
+        private final MpscArrayQueue<FrameBuffer> queue;
+        private final ReceiveContext              context;
+        private final int                         batchSize;
+        private final Thread                      thread;
+        private volatile boolean                  isParked = false;
+
+        ReceiveWorker(int index, int queueCapacity, int batchSize) {
+            this.queue     = new MpscArrayQueue<>(queueCapacity);
+            this.context   = new ReceiveContext(batchSize);
+            this.batchSize = batchSize;
+            this.thread    = new Thread(this, "geonet-receive-" + index);
+            this.thread.setDaemon(true);
+        }
+
+        /** Takes over the frame, returns false if the queue is full. */
+        boolean offer(FrameBuffer frame) {
+            if (!queue.offer(frame)) { return false; }
+            if (isParked) { LockSupport.unpark(thread); }
+            return true;
+        }
+
+        @Override public void run() {
+            int handled = 0;
+            try {
+                while (!isClosed) {
+                    final FrameBuffer frame = queue.poll();
+                    if (frame == null) {
+                        if (handled > 0) { context.flush(); handled = 0; }
+                        isParked = true;
+                        if (queue.isEmpty() && !isClosed) { LockSupport.park(this); }
+                        isParked = false;
+                        if (Thread.interrupted()) { break; }
+                        continue;
+                    }
+                    try {
+                        final ByteBuffer buffer = frame.buffer();
+                        buffer.rewind();
+                        onReceiveFromLowerLayer(buffer, context);
+                    } finally {
+                        frame.release();
+                    }
+                    if (++handled == batchSize) { context.flush(); handled = 0; }
+                }
+            } catch (InterruptedException e) {
+                logger.error("Receive worker interrupted while handing over to upper layer", e);
+            } finally {
+                for (FrameBuffer frame = queue.poll(); frame != null; frame = queue.poll()) {
+                    frame.release();
+                }
+            }
+        }
+    }
+
+    /** Receives and handles frames until the link layer is closed.
+     *
+     * Needs a link layer in blocking mode, see {@link #poll()} for non-blocking ones. */
     @Override
     public void run() {
         while (true) {
-            byte[] payload = new byte[] {};
             try {
-                payload = linkLayer.receive();
+                receiveBatch();
             } catch (IOException e) {
                 logger.error("Geonetworking station got an IO exception, shutting down", e);
                 break;
             } catch (InterruptedException e) {
-                logger.error("Geonetworking station got an InterruptedException in LinkLayer receive, shutting down", e);
-                break;
-            }
-            try {
-                onReceiveFromLowerLayer(payload);
-            } catch (InterruptedException e) {
-                logger.error("Geonetworking station got an InterruptedException in handling the received message, shutting down", e);
+                logger.error("Geonetworking station got an InterruptedException in LinkLayer receive or in handling the received message, shutting down", e);
                 break;
             }
         }
@@ -582,37 +1172,53 @@ public class GeonetStation implements Runnable, AutoCloseable {
 
     @Override
     public void close() {
+        isClosed = true;
         beaconService.stop();
+        for (ReceiveWorker worker : receiveWorkers) {
+            LockSupport.unpark(worker.thread);
+            try {
+                worker.thread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        for (ContentionTask task : contentionSet.values()) {
+            task.cancel();
+        }
+        contentionSet.clear();
+        if (forwardingBuffer != null) { forwardingBuffer.clear(); }
+        locationService.close();
+        if (transmitQueue != null) { transmitQueue.close(); }
         try {
             linkLayer.close();
         } catch (Exception e) {
             logger.error("Exception in LinkLayer close()", e);
         }
-        scheduler.shutdownNow();
+        locationTable.close();
+        if (isTimerOwned) { timer.close(); }
+        for (BufferedPublisher<GeonetData> p : publishers) { p.close(); }
+        if (listenerExecutor != null && isListenerExecutorOwned) { listenerExecutor.shutdown(); }
     }
 
-    private class PacketId {
-        private final Instant timestamp;
-        private final Short sequenceNumber;
-        private final Address sender;
+    /** Packet identity for contention set, from raw header fields. */
+    private static final class PacketId {
+        private final long  sender;     // GN address of the source.
+        private final int   timestamp;  // TAI milliseconds mod 2^32 from source position vector.
+        private final short sequenceNumber;
 
-        public PacketId(Instant timestamp, short sequenceNumber, Address sender) {
-            this.timestamp = timestamp;
+        public PacketId(LongPositionVectorView senderLpv, short sequenceNumber) {
+            this.sender         = senderLpv.addressValue();
+            this.timestamp      = senderLpv.timestampMillisMod32();
             this.sequenceNumber = sequenceNumber;
-            this.sender = sender;
-        }
-
-        private GeonetStation getOuterType() {
-            return GeonetStation.this;
         }
 
         @Override public int hashCode() {
             final int prime = 31;
             int result = 1;
-            result = prime * result + getOuterType().hashCode();
-            result = prime * result + ((sender == null) ? 0 : sender.hashCode());
-            result = prime * result + ((sequenceNumber == null) ? 0 : sequenceNumber.hashCode());
-            result = prime * result + ((timestamp == null) ? 0 : timestamp.hashCode());
+            result = prime * result + (int) (sender ^ (sender >>> 32));
+            result = prime * result + sequenceNumber;
+            result = prime * result + timestamp;
             return result;
         }
 
@@ -621,18 +1227,16 @@ public class GeonetStation implements Runnable, AutoCloseable {
             if (obj == null) return false;
             if (getClass() != obj.getClass()) return false;
             PacketId other = (PacketId) obj;
-            if (!getOuterType().equals(other.getOuterType())) return false;
-            if (sender == null) {
-                if (other.sender != null) return false;
-            } else if (!sender.equals(other.sender)) return false;
-            if (sequenceNumber == null) {
-                if (other.sequenceNumber != null) return false;
-            } else if (!sequenceNumber.equals(other.sequenceNumber)) return false;
-            if (timestamp == null) {
-                if (other.timestamp != null) return false;
-            } else if (!timestamp.equals(other.timestamp)) return false;
+            if (sender != other.sender) return false;
+            if (sequenceNumber != other.sequenceNumber) return false;
+            if (timestamp != other.timestamp) return false;
             return true;
         }
+
+        @Override public String toString() {
+            return "PacketId[" + new Address(sender) + ", sn " + (sequenceNumber & 0xffff) +
+                    ", tst " + (timestamp & 0xFFFF_FFFFL) + "]";
+        }
     }
 
     /**
@@ -663,28 +1267,21 @@ public class GeonetStation implements Runnable, AutoCloseable {
      * so we add timestamp too. It's just a moderate computation and memory overhead, we'll keep
      * a lot of GN addresses and sequence numbers anyway.
      *
+     * With {@link DuplicateDetector.Mode#PER_SOURCE}, the standard's comparison is extended with
+     * a window of sequence numbers instead, which keeps parallel broadcasts, see
+     * {@link SequenceWindow}.
      */
-    private boolean isDuplicate(GeonetData data, short sequenceNumber) {
-        final PacketId packetId = new PacketId(data.sender.get().timestamp(), sequenceNumber,
-                data.sender.get().address().get());
-        return seenPackets.contains(packetId);
-    }
-
-    private void markAsSeen(GeonetData data, short sequenceNumber) {
-        final PacketId packetId = new PacketId(data.sender.get().timestamp(), sequenceNumber,
-                data.sender.get().address().get());
-        boolean isDuplicate = seenPackets.contains(packetId);
-        if (!isDuplicate) {
-            seenPackets.add(packetId);
-            long lifetimeMillis = (long) (1000 * data.destination.maxLifetimeSeconds().orElse(
-                    BasicHeader.Lifetime.MAX_VALUE.asSeconds()));
-            scheduler.schedule(
-                new Runnable() { @Override public void run() { seenPackets.remove(packetId); } },
-                lifetimeMillis, TimeUnit.MILLISECONDS
-            );
-        } else {
-            logger.debug("Duplicate! From {}, sn {}", data.sender.get().address().get(), sequenceNumber);
+    private boolean isDuplicate(LongPositionVectorView sender, short sequenceNumber,
+            BasicHeader.Lifetime lifetime) {
+        // Marks it as seen too, see DuplicateDetector.
+        if (duplicateDetector.markSeen(sender.addressValue(), sender.timestampMillisMod32(),
+                sequenceNumber, timer.clock().millis(), (long) (1000 * lifetime.asSeconds()))) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Duplicate! {}", new PacketId(sender, sequenceNumber));
+            }
+            return true;
         }
+        return false;
     }
 
     private interface BeaconService {
@@ -695,12 +1292,17 @@ public class GeonetStation implements Runnable, AutoCloseable {
 
     private final BeaconService beaconService = new BeaconService () {
 
-        private Instant nextBeaconTime = timeInstantNow();
-        private boolean isActive = false;  // TODO: Handle synchronization properly.
+        private volatile Instant nextBeaconTime = Instant.MIN;  // Timer is not set yet here.
+        private volatile boolean isActive = false;  // Stopped from another thread.
+        private volatile TimerService.Timeout nextBeacon = null;
 
         @Override public void start() { isActive = true; scheduleNextBeacon(); }
 
-        @Override public void stop()  { isActive = false; }
+        @Override public void stop()  {
+            isActive = false;
+            final TimerService.Timeout timeout = nextBeacon;
+            if (timeout != null) { timeout.cancel(); }  // Timers can be shared, don't leave it.
+        }
 
         @Override public void skipNextBeacon() {
             nextBeaconTime = timeInstantNow().plusMillis(randomDelayMs());
@@ -725,7 +1327,7 @@ public class GeonetStation implements Runnable, AutoCloseable {
         }
 
         private void scheduleNextBeacon() {
-            scheduler.schedule(
+            nextBeacon = timer.schedule(
                 new Runnable() { @Override public void run() {
                     if (isActive) { maybeSendBeacon(); scheduleNextBeacon(); } }; },
                 randomDelayMs(),
@@ -0,0 +1,265 @@
+package net.gcdc.geonetworking;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.threeten.bp.Clock;
+
+/** Timer service on a hierarchical hashed timing wheel, for many timers that are mostly
+ * cancelled or renewed: duplicate detection entries, location table entries, contention-based
+ * forwarding.
+ *
+ * Time is divided into ticks. Timers due in less than 256 ticks are in one of 256 slots of the
+ * first wheel, by their tick; timers due later are in the coarser wheels above it (256 slots of
+ * 256 ticks, of 65536 ticks, of 2^24 ticks), and move one wheel down when the wheel below comes
+ * around to them. Scheduling and cancelling are O(1) from any thread: they only queue the
+ * timer, and the wheel thread puts it into or unlinks it from its slot. Every tick, the wheel
+ * thread runs all timers of the current slot, one after another.
+ *
+ * Timers run on the wheel thread, not earlier than their delay, and at most one tick later
+ * (unless tasks run long). The thread sleeps while there are no timers, and skips ticks with
+ * nothing to do: it wakes up only for the next slot of the first wheel that has timers, or for
+ * the next cascade from the coarser wheels (every 256 ticks), or when a new timer is scheduled.
+ * So a station whose only timer is the beacon a few seconds ahead wakes up a few times per
+ * second, not every tick.
+ */
+public final class HashedWheelTimer implements TimerService {
+
+    private final static Logger logger = LoggerFactory.getLogger(HashedWheelTimer.class);
+
+    public final static long DEFAULT_TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final static int  WHEEL_BITS = 8;
+    private final static int  WHEEL_SIZE = 1 << WHEEL_BITS;
+    private final static int  WHEEL_MASK = WHEEL_SIZE - 1;
+    private final static int  LEVELS     = 4;
+    private final static long MAX_DELTA  = (1L << (WHEEL_BITS * LEVELS)) - 1;  // In ticks.
+
+    private final long              tickNanos;
+    private final long              startNanos;
+    private final Slot[][]          wheels = new Slot[LEVELS][WHEEL_SIZE];  // Only wheel thread.
+    private final Queue<WheelTimeout> added     = new ConcurrentLinkedQueue<>();
+    private final Queue<WheelTimeout> cancelled = new ConcurrentLinkedQueue<>();
+    private final Clock             clock = Clock.systemUTC();
+    private final Thread            thread;
+    private long                    tick = 0;   // Next tick to process, only wheel thread.
+    private long                    lastTick = -1;  // Last processed tick, only wheel thread.
+    private int                     count = 0;  // Timers in the wheels, only wheel thread.
+    private volatile long           processedTicks = 0;  // Written only by wheel thread.
+    private volatile boolean        isParkedLong = false;  // For more than the next tick.
+    private volatile boolean        isClosed = false;
+
+    /** Timers due in the same tick (at the lowest wheel) or the same range of ticks. */
+    private static final class Slot {
+        WheelTimeout head;
+        WheelTimeout tail;
+
+        void add(WheelTimeout t) {
+            t.slot = this;
+            t.prev = tail;
+            t.next = null;
+            if (tail == null) { head = t; } else { tail.next = t; }
+            tail = t;
+        }
+
+        void remove(WheelTimeout t) {
+            if (t.prev == null) { head = t.next; } else { t.prev.next = t.next; }
+            if (t.next == null) { tail = t.prev; } else { t.next.prev = t.prev; }
+            t.slot = null;
+            t.prev = null;
+            t.next = null;
+        }
+
+        /** Removes all timers from the slot and returns the first, linked to the rest. */
+        WheelTimeout removeAll() {
+            WheelTimeout first = head;
+            head = null;
+            tail = null;
+            return first;
+        }
+    }
+
+    private final class WheelTimeout implements Timeout {
+        private final static int PENDING = 0, CANCELLED = 1, EXPIRED = 2;
+        final Runnable      task;
+        final long          expiryTick;
+        final AtomicInteger state = new AtomicInteger(PENDING);
+        Slot                slot;  // The rest only wheel thread.
+        WheelTimeout        prev;
+        WheelTimeout        next;
+
+        WheelTimeout(Runnable task, long expiryTick) {
+            this.task       = task;
+            this.expiryTick = expiryTick;
+        }
+
+        @Override public boolean cancel() {
+            if (!state.compareAndSet(PENDING, CANCELLED)) { return false; }
+            cancelled.add(this);
+            return true;
+        }
+    }
+
+    public HashedWheelTimer() {
+        this(DEFAULT_TICK_NANOS, TimeUnit.NANOSECONDS, "geonet-wheel-timer");
+    }
+
+    public HashedWheelTimer(long tickDuration, TimeUnit unit, String threadName) {
+        this.tickNanos = Math.max(1, unit.toNanos(tickDuration));
+        for (Slot[] wheel : wheels) {
+            for (int i = 0; i < WHEEL_SIZE; i++) { wheel[i] = new Slot(); }
+        }
+        this.startNanos = System.nanoTime();
+        this.thread = new Thread(new Runnable() {
+            @Override public void run() { runWheel(); }
+        }, threadName);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    @Override
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        final long deadline = System.nanoTime() - startNanos + Math.max(0, unit.toNanos(delay));
+        // The tick whose end is at or after the deadline, so timers never fire early.
+        final WheelTimeout timeout = new WheelTimeout(task, (deadline + tickNanos - 1) / tickNanos);
+        if (isClosed) {
+            timeout.state.set(WheelTimeout.CANCELLED);
+            return timeout;
+        }
+        added.add(timeout);
+        if (isParkedLong) { LockSupport.unpark(thread); }
+        return timeout;
+    }
+
+    @Override
+    public Clock clock() { return clock; }
+
+    private void runWheel() {
+        while (!isClosed) {
+            final long now = System.nanoTime() - startNanos;
+            if (count == 0 && added.isEmpty()) {
+                // Nothing to wait for, skip ahead instead of ticking through empty slots.
+                tick = Math.max(tick, now / tickNanos);
+                lastTick = tick - 1;
+                isParkedLong = true;
+                if (added.isEmpty() && !isClosed) { LockSupport.park(this); }
+                isParkedLong = false;
+                continue;
+            }
+            if (tick > lastTick + 1 && !added.isEmpty()) {
+                // Woken up by a new timer while skipping empty ticks, it may be due earlier.
+                tick = Math.min(tick, Math.max(lastTick + 1, now / tickNanos));
+            }
+            final long tickEnd = tick * tickNanos;
+            if (now < tickEnd) {
+                final boolean isLong = tick > lastTick + 1;
+                isParkedLong = isLong;
+                if (!isLong || added.isEmpty()) { LockSupport.parkNanos(this, tickEnd - now); }
+                isParkedLong = false;
+                continue;
+            }
+            processTick();
+            processedTicks++;
+            lastTick = tick;
+            tick = nextBusyTick(tick);
+        }
+        logger.debug("Wheel timer stopped with {} timers", count);
+    }
+
+    private void processTick() {
+        removeCancelled();
+        if ((tick & WHEEL_MASK) == 0) { cascade(); }
+        addNew();
+        removeCancelled();  // Cancelled while being added.
+        WheelTimeout t = wheels[0][(int) (tick & WHEEL_MASK)].removeAll();
+        while (t != null) {
+            final WheelTimeout next = t.next;
+            t.slot = null;
+            t.prev = null;
+            t.next = null;
+            count--;
+            if (t.state.compareAndSet(WheelTimeout.PENDING, WheelTimeout.EXPIRED)) {
+                try {
+                    t.task.run();
+                } catch (RuntimeException e) {
+                    logger.error("Exception in timer task", e);
+                }
+            }
+            t = next;
+        }
+    }
+
+    /** Returns the first tick after the given one with timers in the first wheel, or where the
+     * coarser wheels cascade, whichever is first. Ticks before it have nothing to do. */
+    private long nextBusyTick(long processed) {
+        removeCancelled();  // Cancelled timers would keep their slots busy.
+        long next = processed + 1;
+        while ((next & WHEEL_MASK) != 0 && wheels[0][(int) (next & WHEEL_MASK)].head == null) {
+            next++;
+        }
+        return next;
+    }
+
+    /** Returns the number of ticks processed so far, for tests. */
+    long processedTicks() { return processedTicks; }
+
+    /** Moves timers of the next slot of each coarser wheel that comes around one wheel down. */
+    private void cascade() {
+        for (int level = 1; level < LEVELS; level++) {
+            final int index = (int) ((tick >>> (WHEEL_BITS * level)) & WHEEL_MASK);
+            WheelTimeout t = wheels[level][index].removeAll();
+            while (t != null) {
+                final WheelTimeout next = t.next;
+                place(t);
+                t = next;
+            }
+            if (index != 0) { break; }  // The wheel above has not come around.
+        }
+    }
+
+    private void addNew() {
+        for (WheelTimeout t = added.poll(); t != null; t = added.poll()) {
+            if (t.state.get() != WheelTimeout.PENDING) { continue; }
+            place(t);
+            count++;
+        }
+    }
+
+    private void removeCancelled() {
+        for (WheelTimeout t = cancelled.poll(); t != null; t = cancelled.poll()) {
+            if (t.slot != null) {  // Not if it is still in added.
+                t.slot.remove(t);
+                count--;
+            }
+        }
+    }
+
+    /** Puts the timer into the slot for its expiry tick, relative to the current tick. */
+    private void place(WheelTimeout t) {
+        final long expiry = Math.max(t.expiryTick, tick);  // Overdue ones expire now.
+        final long delta  = Math.min(expiry - tick, MAX_DELTA);
+        final long target = tick + delta;
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= (1L << (WHEEL_BITS * (level + 1)))) { level++; }
+        wheels[level][(int) ((target >>> (WHEEL_BITS * level)) & WHEEL_MASK)].add(t);
+    }
+
+    /** Stops the wheel thread; timers that have not fired are dropped. */
+    @Override
+    public void close() {
+        isClosed = true;
+        LockSupport.unpark(thread);
+        if (Thread.currentThread() != thread) {
+            try {
+                thread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package net.gcdc.geonetworking;
+
+import java.nio.ByteBuffer;
+
+/** Encoded headers of a sent packet, with per-packet fields left to be patched in.
+ *
+ * Packets of the same type, protocol, traffic class, lifetime, hop limits (and area, for
+ * Geobroadcast) have the same Ethernet, Basic, Common and extended headers, except for sequence
+ * number, source position vector and payload length, and destination MAC for forwarding to
+ * a neighbour. A template keeps these bytes encoded, so sending is a copy and a few puts.
+ *
+ * Templates are immutable and can be shared between sending threads.
+ */
+final class HeaderTemplate {
+    private final static int ETHER_HEADER_LENGTH = 14;
+
+    // Parameters the headers were encoded from, see matches().
+    private final byte    trafficClass;
+    private final double  lifetimeSeconds;
+    private final byte    remainingHopLimit;
+    private final byte    maximumHopLimit;
+    private final Area    area;  // Only for Geobroadcast and Geoanycast, null otherwise.
+    private final int     version;
+    private final boolean isMobile;
+
+    private final byte[]  bytes;
+    private final boolean hasEthernetHeader;
+    private final int     payloadLengthIndex;
+    private final int     sequenceNumberIndex;  // -1 if the packet has no sequence number.
+    private final int     positionVectorIndex;
+    private final int     destinationIndex;     // -1 if the packet has no destination field.
+
+    /**
+     * @param senderMac source MAC address for Ethernet header, or null for no Ethernet header
+     */
+    HeaderTemplate(UpperProtocolType protocol, DestinationType type, byte trafficClass,
+            double lifetimeSeconds, byte remainingHopLimit, byte maximumHopLimit, Area area,
+            int version, boolean isMobile, MacAddress senderMac) {
+        this.trafficClass      = trafficClass;
+        this.lifetimeSeconds   = lifetimeSeconds;
+        this.remainingHopLimit = remainingHopLimit;
+        this.maximumHopLimit   = maximumHopLimit;
+        this.area              = area;
+        this.version           = version;
+        this.isMobile          = isMobile;
+        this.hasEthernetHeader = senderMac != null;
+
+        final int gnStart = hasEthernetHeader ? ETHER_HEADER_LENGTH : 0;
+        final int extendedHeader = gnStart + BasicHeader.LENGTH + CommonHeader.LENGTH;
+        switch (type) {
+            case SINGLE_HOP:  // LPV and 32-bit media-dependent info.
+            case BEACON:      // LPV only.
+                bytes = new byte[extendedHeader + LongPositionVector.LENGTH +
+                                 (type == DestinationType.SINGLE_HOP ? 4 : 0)];
+                sequenceNumberIndex = -1;
+                positionVectorIndex = extendedHeader;
+                destinationIndex    = -1;
+                break;
+            case GEOBROADCAST_CIRCLE:
+            case GEOBROADCAST_ELLIPSE:
+            case GEOBROADCAST_RECTANGLE:
+            case GEOANYCAST_CIRCLE:
+            case GEOANYCAST_ELLIPSE:
+            case GEOANYCAST_RECTANGLE:
+                // Sequence number, reserved 16-bit, LPV, area and reserved 16-bit.
+                bytes = new byte[extendedHeader + 4 + LongPositionVector.LENGTH + AreaView.LENGTH + 2];
+                sequenceNumberIndex = extendedHeader;
+                positionVectorIndex = extendedHeader + 4;
+                destinationIndex    = -1;
+                break;
+            case GEOUNICAST:
+            case LOCATION_SERVICE_REPLY:
+                // Sequence number, reserved 16-bit, LPV and destination Short Position Vector.
+                bytes = new byte[extendedHeader + 4 + LongPositionVector.LENGTH +
+                                 ShortPositionVector.LENGTH];
+                sequenceNumberIndex = extendedHeader;
+                positionVectorIndex = extendedHeader + 4;
+                destinationIndex    = positionVectorIndex + LongPositionVector.LENGTH;
+                break;
+            case LOCATION_SERVICE_REQUEST:
+                // Sequence number, reserved 16-bit, LPV and requested GN address.
+                bytes = new byte[extendedHeader + 4 + LongPositionVector.LENGTH + Address.LENGTH];
+                sequenceNumberIndex = extendedHeader;
+                positionVectorIndex = extendedHeader + 4;
+                destinationIndex    = positionVectorIndex + LongPositionVector.LENGTH;
+                break;
+            default:
+                throw new IllegalArgumentException("No header template for " + type);
+        }
+        payloadLengthIndex = gnStart + BasicHeader.LENGTH + 4;  // Octets 4-5 of Common Header.
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        if (hasEthernetHeader) {
+            new MacAddress(0xff_ff_ff_ff_ff_ffL).putTo(buffer);  // Patched, broadcast by default.
+            senderMac.putTo(buffer);
+            buffer.putShort(GeonetStation.GN_ETHER_TYPE);
+        }
+        new BasicHeader(
+                (byte) version,
+                BasicHeader.NextHeader.COMMON_HEADER,
+                BasicHeader.Lifetime.fromSeconds(lifetimeSeconds),
+                remainingHopLimit).putTo(buffer);
+        new CommonHeader(
+                protocol,
+                type,
+                TrafficClass.fromByte(trafficClass),
+                isMobile,
+                (short) 0,  // Patched.
+                maximumHopLimit).putTo(buffer);
+        if (area != null) {
+            buffer.position(positionVectorIndex + LongPositionVector.LENGTH);
+            area.putTo(buffer);
+        }
+    }
+
+    /** Returns true if headers encoded with these parameters would be the same. */
+    boolean matches(byte trafficClass, double lifetimeSeconds, byte remainingHopLimit,
+            byte maximumHopLimit, Area area, int version, boolean isMobile) {
+        return this.trafficClass == trafficClass &&
+                this.lifetimeSeconds == lifetimeSeconds &&
+                this.remainingHopLimit == remainingHopLimit &&
+                this.maximumHopLimit == maximumHopLimit &&
+                (this.area == area || (this.area != null && this.area.equals(area))) &&
+                this.version == version &&
+                this.isMobile == isMobile;
+    }
+
+    /** Returns length of all headers, payload starts after them. */
+    int length() { return bytes.length; }
+
+    /** Writes the headers with per-packet fields into the buffer at its position, and leaves
+     * the position after the headers.
+     *
+     * @param dstMac destination MAC address, ignored without Ethernet header
+     * @param sequenceNumber ignored for packets without sequence number (SHB, Beacon)
+     */
+    ByteBuffer putTo(ByteBuffer buffer, MacAddress dstMac, short sequenceNumber,
+            LongPositionVector sender, int payloadLength) {
+        final int start = buffer.position();
+        buffer.put(bytes);
+        if (hasEthernetHeader) { dstMac.putTo(buffer, start); }
+        buffer.putShort(start + payloadLengthIndex, (short) payloadLength);
+        if (sequenceNumberIndex >= 0) {
+            buffer.putShort(start + sequenceNumberIndex, sequenceNumber);
+        }
+        buffer.position(start + positionVectorIndex);
+        sender.putTo(buffer);
+        buffer.position(start + bytes.length);
+        return buffer;
+    }
+
+    /** Writes the destination position vector of Geounicast or LS Reply into the headers that
+     * start at given index. Position of the buffer is not changed. */
+    ByteBuffer putDestination(ByteBuffer buffer, int start, ShortPositionVector destination) {
+        destination.putTo(destinationField(buffer, start));
+        return buffer;
+    }
+
+    /** Writes the requested address of LS Request into the headers that start at given index.
+     * Position of the buffer is not changed. */
+    ByteBuffer putDestination(ByteBuffer buffer, int start, Address requested) {
+        requested.putTo(destinationField(buffer, start));
+        return buffer;
+    }
+
+    private ByteBuffer destinationField(ByteBuffer buffer, int start) {
+        if (destinationIndex < 0) {
+            throw new IllegalStateException("Packet has no destination field");
+        }
+        ByteBuffer field = buffer.duplicate();
+        field.position(start + destinationIndex);
+        return field;
+    }
+}
@@ -0,0 +1,79 @@
+package net.gcdc.geonetworking;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/** Adapts an old array-based {@link LinkLayer} to the {@link ByteBufferLinkLayer} interface.
+ *
+ * The adapter has to copy every frame between arrays and buffers, so it does not save any
+ * allocations. It is only there to keep old implementations working.
+ */
+public final class LinkLayerAdapter implements ByteBufferLinkLayer {
+
+    private final LinkLayer linkLayer;
+
+    private LinkLayerAdapter(LinkLayer linkLayer) {
+        this.linkLayer = linkLayer;
+    }
+
+    /** Returns the link layer itself if it already implements {@link ByteBufferLinkLayer}, or a
+     * new adapter otherwise. */
+    public static ByteBufferLinkLayer of(LinkLayer linkLayer) {
+        return linkLayer instanceof ByteBufferLinkLayer ?
+                (ByteBufferLinkLayer) linkLayer :
+                new LinkLayerAdapter(linkLayer);
+    }
+
+    @Override
+    public int receive(ByteBuffer buffer) throws IOException, InterruptedException {
+        byte[] frame = linkLayer.receive();
+        int length = Math.min(frame.length, buffer.remaining());
+        buffer.put(frame, 0, length);
+        return length;
+    }
+
+    /** Old link layers have no way to tell if more frames are queued, so receives one frame. */
+    @Override
+    public int receive(ByteBuffer buffer, int[] lengths) throws IOException, InterruptedException {
+        lengths[0] = receive(buffer);
+        return 1;
+    }
+
+    @Override
+    public void send(ByteBuffer frame) throws IOException {
+        if (frame.hasArray() && frame.arrayOffset() + frame.position() == 0 &&
+                frame.remaining() == frame.array().length) {
+            linkLayer.send(frame.array());  // The whole array is the frame, no need to copy.
+            frame.position(frame.limit());
+        } else {
+            byte[] payload = new byte[frame.remaining()];
+            frame.get(payload);
+            linkLayer.send(payload);
+        }
+    }
+
+    @Override
+    public byte[] receive() throws IOException, InterruptedException {
+        return linkLayer.receive();
+    }
+
+    @Override
+    public void send(byte[] payload) throws IOException {
+        linkLayer.send(payload);
+    }
+
+    @Override
+    public boolean prefersDirectBuffers() {
+        return false;
+    }
+
+    @Override
+    public boolean hasEthernetHeader() {
+        return linkLayer.hasEthernetHeader();
+    }
+
+    @Override
+    public void close() throws Exception {
+        linkLayer.close();
+    }
+}
@@ -0,0 +1,204 @@
+package net.gcdc.geonetworking;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** UDP link layer, same as {@link LinkLayerUdpToEthernet}, but built on NIO DatagramChannel.
+ *
+ * Works best with direct buffers, which avoids the copy between the Java heap and native memory
+ * on every datagram (see {@link #prefersDirectBuffers()}).
+ *
+ * The channel itself is always non-blocking. In blocking mode, {@link #receive(ByteBuffer)} waits
+ * on a private selector until a frame arrives, so it can be used with {@link GeonetStation#run()},
+ * and {@link #send(ByteBuffer)} waits on another one while the socket send buffer is full.
+ * In non-blocking mode, {@link #receive(ByteBuffer)} returns 0 if there is nothing to receive,
+ * {@link #send(ByteBuffer)} drops the frame if the socket send buffer is full (counted in
+ * {@link #dropped()}), and the channel can be registered with a selector that one event loop
+ * shares with other channels:
+ *
+ * <pre>
+ * LinkLayerDatagramChannel link = new LinkLayerDatagramChannel(4000, udp2eth, true, false);
+ * GeonetStation station = new GeonetStation(config, link, positionProvider);
+ * link.register(selector, station);
+ * ...
+ * selector.select();
+ * for (SelectionKey key : selector.selectedKeys()) {
+ *     ((GeonetStation) key.attachment()).poll();
+ * }
+ * selector.selectedKeys().clear();
+ * </pre>
+ */
+public class LinkLayerDatagramChannel extends AbstractByteBufferLinkLayer {
+    private final static Logger logger = LoggerFactory.getLogger(LinkLayerDatagramChannel.class);
+
+    private final SocketAddress   remoteAddress;
+    private final boolean         hasEthernetHeader;
+    private final boolean         isBlocking;
+    private final DatagramChannel channel;
+    private final Selector        receiveSelector;  // Only in blocking mode.
+    private final Selector        sendSelector;     // Only in blocking mode, guarded by itself.
+    private final AtomicLong      dropped = new AtomicLong(0);
+
+    public LinkLayerDatagramChannel(int localPort, SocketAddress remoteAddress,
+            boolean hasEthernetHeader, boolean isBlocking) throws IOException {
+        this.remoteAddress     = remoteAddress;
+        this.hasEthernetHeader = hasEthernetHeader;
+        this.isBlocking        = isBlocking;
+        this.channel           = DatagramChannel.open();
+        channel.bind(new InetSocketAddress(localPort));
+        channel.configureBlocking(false);
+        if (isBlocking) {
+            receiveSelector = Selector.open();
+            channel.register(receiveSelector, SelectionKey.OP_READ);
+            sendSelector = Selector.open();
+            channel.register(sendSelector, SelectionKey.OP_WRITE);
+        } else {
+            receiveSelector = null;
+            sendSelector    = null;
+        }
+    }
+
+    /** Creates a link layer in blocking mode. */
+    public LinkLayerDatagramChannel(int localPort, SocketAddress remoteAddress,
+            boolean hasEthernetHeader) throws IOException {
+        this(localPort, remoteAddress, hasEthernetHeader, true);
+    }
+
+    /** Registers the channel for reading with the given selector.
+     *
+     * Only available in non-blocking mode.
+     *
+     * @param attachment object to attach to the selection key, e.g. the station to poll */
+    public SelectionKey register(Selector selector, Object attachment)
+            throws ClosedChannelException {
+        if (isBlocking) {
+            throw new IllegalStateException("Can't register a link layer in blocking mode");
+        }
+        return channel.register(selector, SelectionKey.OP_READ, attachment);
+    }
+
+    /** Receives the next Geonetworking frame into the buffer.
+     *
+     * Frames with another ethertype are dropped in place, by reading the ethertype at offset 12
+     * of the frame and resetting the position of the buffer.
+     *
+     * @return length of the frame, or 0 in non-blocking mode if no frame is available */
+    @Override
+    public int receive(ByteBuffer buffer) throws IOException, InterruptedException {
+        int length = receiveNow(buffer);
+        while (length == 0 && isBlocking) {
+            awaitFrame();
+            length = receiveNow(buffer);
+        }
+        return length;
+    }
+
+    /** Receives the first frame like {@link #receive(ByteBuffer)}, then drains frames that are
+     * already in the socket receive buffer, without waiting for more. */
+    @Override
+    public int receive(ByteBuffer buffer, int[] lengths) throws IOException, InterruptedException {
+        lengths[0] = receive(buffer);
+        if (lengths[0] == 0) { return 0; }
+        int frames = 1;
+        while (frames < lengths.length && buffer.remaining() >= MAX_FRAME_LENGTH) {
+            lengths[frames] = receiveNow(buffer);
+            if (lengths[frames] == 0) { break; }
+            frames++;
+        }
+        return frames;
+    }
+
+    /** Receives the next Geonetworking frame if there is one, returns 0 otherwise. */
+    private int receiveNow(ByteBuffer buffer) throws IOException {
+        final int start = buffer.position();
+        while (true) {
+            SocketAddress source = channel.receive(buffer);
+            if (source == null) { return 0; }
+            final int length = buffer.position() - start;
+            if (length == 0 || (hasEthernetHeader && !isGeonetworking(buffer, start, length))) {
+                logger.debug("Ignoring non-Geonetworking packet");
+                buffer.position(start);
+                continue;
+            }
+            return length;
+        }
+    }
+
+    private void awaitFrame() throws IOException, InterruptedException {
+        try {
+            receiveSelector.select();
+            receiveSelector.selectedKeys().clear();
+        } catch (ClosedSelectorException e) {  // Closed while waiting.
+            throw new ClosedChannelException();
+        }
+        if (Thread.interrupted()) { throw new InterruptedException(); }
+        if (!channel.isOpen()) { throw new ClosedChannelException(); }
+    }
+
+    /** Sends the frame.
+     *
+     * If the socket send buffer is full, in blocking mode the sending thread waits until the
+     * channel is writable again, in non-blocking mode the frame is dropped, like a frame lost on
+     * the air, and counted in {@link #dropped()}.
+     *
+     * @throws InterruptedIOException if the thread is interrupted while waiting */
+    @Override
+    public void send(ByteBuffer frame) throws IOException {
+        while (channel.send(frame, remoteAddress) == 0 && frame.hasRemaining()) {
+            if (!isBlocking) {
+                dropped.incrementAndGet();
+                frame.position(frame.limit());
+                return;
+            }
+            awaitWritable();
+        }
+    }
+
+    /** Returns the number of frames dropped in non-blocking mode because the socket send buffer
+     * was full. */
+    public long dropped() { return dropped.get(); }
+
+    private void awaitWritable() throws IOException {
+        synchronized (sendSelector) {
+            try {
+                sendSelector.select();
+                sendSelector.selectedKeys().clear();
+            } catch (ClosedSelectorException e) {  // Closed while waiting.
+                throw new ClosedChannelException();
+            }
+        }
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedIOException("Interrupted while waiting to send");
+        }
+        if (!channel.isOpen()) { throw new ClosedChannelException(); }
+    }
+
+    @Override
+    public boolean prefersDirectBuffers() {
+        return true;
+    }
+
+    @Override
+    public boolean hasEthernetHeader() {
+        return hasEthernetHeader;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+        if (receiveSelector != null) { receiveSelector.close(); }
+        if (sendSelector != null) { sendSelector.close(); }
+    }
+}
@@ -0,0 +1,306 @@
+package net.gcdc.geonetworking;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** Link layer that replays Geonetworking frames from a pcap or pcapng capture file.
+ *
+ * Only Ethernet captures are supported (link type 1), and only frames with the Geonetworking
+ * ethertype are replayed, all other frames are skipped. The file is memory-mapped and frames are
+ * copied straight from the mapping into the receive buffer.
+ *
+ * Frames are replayed with their original timing, with the timing sped up or slowed down by a
+ * factor, or as fast as possible (speed {@link #AS_FAST_AS_POSSIBLE}), to measure the maximum
+ * receive throughput of a station. At the end of the file, the number of frames and frames per
+ * second are logged, and receive throws {@link EOFException}, which stops
+ * {@link GeonetStation#run()}.
+ *
+ * Frames sent to this link layer are discarded.
+ */
+public class LinkLayerPcapReplay extends AbstractByteBufferLinkLayer {
+    private final static Logger logger = LoggerFactory.getLogger(LinkLayerPcapReplay.class);
+
+    /** Speed to replay frames without waiting between them. */
+    public static final double AS_FAST_AS_POSSIBLE = 0;
+
+    private static final int  LINKTYPE_ETHERNET   = 1;
+    private static final int  PCAP_MAGIC_MICROS   = 0xa1b2c3d4;
+    private static final int  PCAP_MAGIC_NANOS    = 0xa1b23c4d;
+    private static final int  PCAPNG_SECTION      = 0x0a0d0d0a;
+    private static final int  PCAPNG_BYTE_ORDER   = 0x1a2b3c4d;
+    private static final int  PCAPNG_INTERFACE    = 1;
+    private static final int  PCAPNG_SIMPLE       = 3;
+    private static final int  PCAPNG_ENHANCED     = 6;
+    private static final int  OPTION_END          = 0;
+    private static final int  OPTION_TSRESOL      = 9;
+    private static final long NO_TIMESTAMP        = Long.MIN_VALUE;
+
+    private final MappedByteBuffer data;
+    private final ByteBuffer       view;  // Frame contents, always big endian.
+    private final boolean          isPcapng;
+    private final double           speed;
+
+    // State of the reader.
+    private int   position;           // Of the next record or block.
+    private int   frameOffset;        // Of the current frame, set by nextFrame().
+    private int   frameLength;
+    private long  frameNanos;         // Capture time of the current frame.
+    private int   frameRecordStart;   // Start of the record or block of the current frame.
+    private long  pcapUnitsPerSecond; // Resolution of timestamps in a pcap file.
+    private boolean isPcapEthernet;
+    private final List<Long> interfaceUnitsPerSecond = new ArrayList<>();  // pcapng, null if
+                                                                           // not Ethernet.
+    // Replay statistics and timing.
+    private long  frames = 0;
+    private long  firstFrameNanos = NO_TIMESTAMP;
+    private long  startNanos;
+    private volatile boolean isClosed = false;
+
+    /**
+     * @param speed 1 for original timing, 2 for twice as fast, {@link #AS_FAST_AS_POSSIBLE} to
+     *        replay without waiting
+     */
+    public LinkLayerPcapReplay(File file, double speed) throws IOException {
+        if (speed < 0) { throw new IllegalArgumentException("Negative speed: " + speed); }
+        this.speed = speed;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            if (raf.length() > Integer.MAX_VALUE) {
+                throw new IOException("Capture files over 2 GB are not supported: " + file);
+            }
+            data = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+        }
+        view = data.duplicate().order(ByteOrder.BIG_ENDIAN);
+        if (data.limit() < 24) { throw new IOException("Not a capture file: " + file); }
+        final int magic = data.getInt(0);
+        if (magic == PCAPNG_SECTION) {
+            isPcapng = true;
+            position = 0;
+        } else {
+            isPcapng = false;
+            if (magic != PCAP_MAGIC_MICROS && magic != PCAP_MAGIC_NANOS) {
+                data.order(ByteOrder.LITTLE_ENDIAN);
+            }
+            final int ordered = data.getInt(0);
+            if (ordered == PCAP_MAGIC_MICROS) {
+                pcapUnitsPerSecond = 1_000_000;
+            } else if (ordered == PCAP_MAGIC_NANOS) {
+                pcapUnitsPerSecond = 1_000_000_000;
+            } else {
+                throw new IOException("Not a pcap or pcapng file: " + file);
+            }
+            isPcapEthernet = data.getInt(20) == LINKTYPE_ETHERNET;
+            if (!isPcapEthernet) {
+                logger.warn("Link type of {} is {}, not Ethernet, nothing to replay", file,
+                        data.getInt(20));
+            }
+            position = 24;
+        }
+    }
+
+    /** Replays with original timing. */
+    public LinkLayerPcapReplay(File file) throws IOException {
+        this(file, 1);
+    }
+
+    /** Returns the number of frames replayed so far. */
+    public long frames() { return frames; }
+
+    /** Finds the next Geonetworking frame, returns false at the end of the file. */
+    private boolean nextFrame() {
+        while (isPcapng ? nextPcapngFrame() : nextPcapFrame()) {
+            if (isGeonetworking(view, frameOffset, frameLength)) { return true; }
+        }
+        return false;
+    }
+
+    private boolean nextPcapFrame() {
+        while (position + 16 <= data.limit()) {
+            final long seconds  = data.getInt(position) & 0xffff_ffffL;
+            final long fraction = data.getInt(position + 4) & 0xffff_ffffL;
+            final int  captured = data.getInt(position + 8);
+            frameRecordStart = position;
+            frameOffset = position + 16;
+            position = frameOffset + captured;
+            if (captured < 0 || position > data.limit()) { return false; }  // Truncated file.
+            if (!isPcapEthernet) { continue; }
+            frameLength = captured;
+            frameNanos  = seconds * 1_000_000_000L + fraction * (1_000_000_000L / pcapUnitsPerSecond);
+            return true;
+        }
+        return false;
+    }
+
+    private boolean nextPcapngFrame() {
+        while (position + 12 <= data.limit()) {
+            final int blockStart = position;
+            if (data.getInt(blockStart) == PCAPNG_SECTION) {
+                // Byte order is given by the byte-order magic of each section.
+                data.order(ByteOrder.BIG_ENDIAN);
+                if (data.getInt(blockStart + 8) != PCAPNG_BYTE_ORDER) {
+                    data.order(ByteOrder.LITTLE_ENDIAN);
+                }
+                interfaceUnitsPerSecond.clear();
+            }
+            final int type        = data.getInt(blockStart);
+            final int totalLength = data.getInt(blockStart + 4);
+            if (totalLength < 12 || blockStart + totalLength > data.limit()) { return false; }
+            position = blockStart + totalLength;
+            if (type == PCAPNG_INTERFACE) {
+                readInterface(blockStart, totalLength);
+            } else if (type == PCAPNG_ENHANCED) {
+                final int interfaceId = data.getInt(blockStart + 8);
+                final Long units = interfaceId < interfaceUnitsPerSecond.size() ?
+                        interfaceUnitsPerSecond.get(interfaceId) : null;
+                if (units == null) { continue; }
+                final long timestamp = ((data.getInt(blockStart + 12) & 0xffff_ffffL) << 32) |
+                                        (data.getInt(blockStart + 16) & 0xffff_ffffL);
+                frameLength = data.getInt(blockStart + 20);
+                frameRecordStart = blockStart;
+                frameOffset = blockStart + 28;
+                frameNanos  = toNanos(timestamp, units);
+                return true;
+            } else if (type == PCAPNG_SIMPLE) {
+                if (interfaceUnitsPerSecond.isEmpty() || interfaceUnitsPerSecond.get(0) == null) {
+                    continue;
+                }
+                frameRecordStart = blockStart;
+                frameOffset = blockStart + 12;
+                frameLength = Math.min(data.getInt(blockStart + 8), totalLength - 16);
+                frameNanos  = NO_TIMESTAMP;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Reads link type and timestamp resolution of an Interface Description Block. */
+    private void readInterface(int blockStart, int totalLength) {
+        final int linkType = data.getShort(blockStart + 8) & 0xffff;
+        long units = 1_000_000;  // Default resolution is microseconds.
+        int option = blockStart + 16;
+        final int end = blockStart + totalLength - 4;
+        while (option + 4 <= end) {
+            final int code   = data.getShort(option) & 0xffff;
+            final int length = data.getShort(option + 2) & 0xffff;
+            if (code == OPTION_END) { break; }
+            if (code == OPTION_TSRESOL && length >= 1) {
+                final int resolution = data.get(option + 4);
+                final int exponent = resolution & 0x7f;
+                units = (resolution & 0x80) == 0 ? pow(10, exponent) : 1L << Math.min(62, exponent);
+            }
+            option += 4 + ((length + 3) & ~3);
+        }
+        interfaceUnitsPerSecond.add(linkType == LINKTYPE_ETHERNET ? Long.valueOf(units) : null);
+    }
+
+    private static long pow(long base, int exponent) {
+        long result = 1;
+        for (int i = 0; i < exponent && result <= Long.MAX_VALUE / base; i++) { result *= base; }
+        return result;
+    }
+
+    private static long toNanos(long timestamp, long unitsPerSecond) {
+        final long seconds  = timestamp / unitsPerSecond;
+        final long fraction = timestamp % unitsPerSecond;
+        return seconds * 1_000_000_000L + (long) (fraction * (1e9 / unitsPerSecond));
+    }
+
+    /** Returns the next Geonetworking frame, at its time in the replay.
+     *
+     * @throws EOFException at the end of the capture */
+    @Override
+    public int receive(ByteBuffer buffer) throws IOException, InterruptedException {
+        if (isClosed) { throw new ClosedChannelException(); }
+        if (!nextFrame()) { throw endOfCapture(); }
+        awaitFrameTime();
+        return copyFrame(buffer);
+    }
+
+    /** Returns the next frame like {@link #receive(ByteBuffer)}, and then the frames that are
+     * already due, up to the size of the batch. In {@link #AS_FAST_AS_POSSIBLE} mode, all frames
+     * are due. */
+    @Override
+    public int receive(ByteBuffer buffer, int[] lengths) throws IOException, InterruptedException {
+        lengths[0] = receive(buffer);
+        int count = 1;
+        while (count < lengths.length && buffer.remaining() >= MAX_FRAME_LENGTH) {
+            if (!nextFrame()) { break; }  // The next receive reports the end of capture.
+            if (speed != AS_FAST_AS_POSSIBLE && frameNanos != NO_TIMESTAMP &&
+                    replayNanos(frameNanos) > System.nanoTime()) {
+                // Not due yet, read it again on the next receive. Only its own block is read
+                // again: blocks before it, e.g. Interface Descriptions, have been applied already.
+                position = frameRecordStart;
+                break;
+            }
+            lengths[count++] = copyFrame(buffer);
+        }
+        return count;
+    }
+
+    private int copyFrame(ByteBuffer buffer) {
+        final int length = Math.min(frameLength, buffer.remaining());
+        view.limit(frameOffset + length).position(frameOffset);
+        buffer.put(view);
+        view.clear();
+        frames++;
+        return length;
+    }
+
+    /** Returns the time on System.nanoTime() scale when the frame captured at given time is due. */
+    private long replayNanos(long capturedNanos) {
+        return startNanos + (long) ((capturedNanos - firstFrameNanos) / speed);
+    }
+
+    private void awaitFrameTime() throws InterruptedException {
+        if (firstFrameNanos == NO_TIMESTAMP) {
+            firstFrameNanos = frameNanos == NO_TIMESTAMP ? 0 : frameNanos;
+            startNanos = System.nanoTime();
+            return;
+        }
+        if (speed == AS_FAST_AS_POSSIBLE || frameNanos == NO_TIMESTAMP) { return; }
+        final long waitNanos = replayNanos(frameNanos) - System.nanoTime();
+        if (waitNanos > 0) { TimeUnit.NANOSECONDS.sleep(waitNanos); }
+    }
+
+    private EOFException endOfCapture() {
+        final double seconds = frames == 0 ? 0 : (System.nanoTime() - startNanos) * 1e-9;
+        logger.info("Replayed {} frames in {} s, {} frames per second", frames,
+                String.format("%.3f", seconds),
+                String.format("%.0f", seconds > 0 ? frames / seconds : 0.0));
+        return new EOFException("End of capture, replayed " + frames + " frames");
+    }
+
+    /** Discards the frame, replay is receive-only. */
+    @Override
+    public void send(ByteBuffer frame) {
+        frame.position(frame.limit());
+    }
+
+    @Override
+    public boolean prefersDirectBuffers() {
+        return true;
+    }
+
+    @Override
+    public boolean hasEthernetHeader() {
+        return true;
+    }
+
+    @Override
+    public void close() {
+        isClosed = true;
+    }
+}
@@ -0,0 +1,252 @@
+package net.gcdc.geonetworking;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.SocketOption;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** UDP link layer that receives on several sockets bound to the same port with SO_REUSEPORT.
+ *
+ * The kernel spreads incoming datagrams over the sockets by a hash of the source address and
+ * port, so all frames from one sender arrive on the same socket, in order. Every socket has its
+ * own reader thread, which receives the frames straight into pooled {@link FrameBuffer}s and puts
+ * them into one queue. The station thread takes frames from that queue in
+ * {@link #receive(ByteBuffer)}, so reading from sockets and filtering ethertypes happen on
+ * several cores, in parallel with the station handling the frames.
+ *
+ * This only helps with several senders, i.e. several source addresses or ports. A udp2eth bridge
+ * that sends everything from one source port ends up on one socket and one reader, however many
+ * sockets there are; such a bridge has to be run with several source ports (e.g. one per radio
+ * interface, or chosen by a hash of the source MAC address) to use more than one reader.
+ * Handling of the frames is spread over cores by the receive workers of the station (see
+ * {@link StationConfig#getReceiveWorkers()}), not by this link layer; each frame is copied once
+ * more, from the pooled frame into the buffer of the station.
+ *
+ * SO_REUSEPORT is available from Java 9, and is looked up by reflection. Where it is missing,
+ * only one socket is opened. When the queue is full, frames are dropped and counted in
+ * {@link #dropped()}, and so are datagrams too long for a {@link #SLOT_SIZE} slot.
+ */
+public class LinkLayerReusePort extends AbstractByteBufferLinkLayer {
+    private final static Logger logger = LoggerFactory.getLogger(LinkLayerReusePort.class);
+
+    /** Number of frames that fit into the queue between reader threads and the station. */
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+    /** Longest datagram received, longer ones are dropped. Fits any ITS-G5 frame. */
+    public static final int SLOT_SIZE = 2 * FrameBufferPool.DEFAULT_SLOT_SIZE;
+
+    private final SocketAddress               remoteAddress;
+    private final boolean                     hasEthernetHeader;
+    private final DatagramChannel[]           channels;
+    private final Thread[]                    readers;
+    private final FrameBufferPool             pool;
+    private final MpscArrayQueue<FrameBuffer> queue;
+    private final AtomicLong                  dropped = new AtomicLong(0);
+    private volatile Thread                   consumer = null;
+    private volatile boolean                  isConsumerParked = false;
+    private volatile boolean                  isClosed = false;
+
+    /**
+     * @param localPort port to receive on, or 0 for an ephemeral one, see {@link #localPort()}
+     * @param sockets number of sockets and reader threads, usually the number of cores to use
+     */
+    public LinkLayerReusePort(int localPort, SocketAddress remoteAddress,
+            boolean hasEthernetHeader, int sockets, int queueCapacity) throws IOException {
+        this.remoteAddress     = remoteAddress;
+        this.hasEthernetHeader = hasEthernetHeader;
+        this.queue             = new MpscArrayQueue<>(queueCapacity);
+        final int count = Math.max(1, sockets);
+        this.pool              = new FrameBufferPool(queue.capacity() + count, SLOT_SIZE, false);
+
+        final SocketOption<Boolean> reusePort = reusePortOption();
+        if (reusePort == null && sockets > 1) {
+            logger.warn("SO_REUSEPORT is not available, receiving on one socket instead of {}",
+                    sockets);
+        }
+        this.channels = new DatagramChannel[reusePort == null ? 1 : count];
+        this.readers  = new Thread[channels.length];
+        int port = localPort;
+        try {
+            for (int i = 0; i < channels.length; i++) {
+                channels[i] = DatagramChannel.open();
+                if (reusePort != null) { channels[i].setOption(reusePort, true); }
+                channels[i].bind(new InetSocketAddress(port));
+                port = ((InetSocketAddress) channels[i].getLocalAddress()).getPort();  // If 0.
+            }
+        } catch (IOException e) {
+            closeChannels();
+            throw e;
+        }
+        for (int i = 0; i < channels.length; i++) {
+            final DatagramChannel channel = channels[i];
+            readers[i] = new Thread(new Runnable() {
+                @Override public void run() { readLoop(channel); }
+            }, "geonet-reuseport-" + port + "-" + i);
+            readers[i].setDaemon(true);
+            readers[i].start();
+        }
+    }
+
+    public LinkLayerReusePort(int localPort, SocketAddress remoteAddress,
+            boolean hasEthernetHeader, int sockets) throws IOException {
+        this(localPort, remoteAddress, hasEthernetHeader, sockets, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /** Returns StandardSocketOptions.SO_REUSEPORT, or null if this Java does not have it. */
+    @SuppressWarnings("unchecked")
+    private static SocketOption<Boolean> reusePortOption() {
+        try {
+            Field field = Class.forName("java.net.StandardSocketOptions").getField("SO_REUSEPORT");
+            SocketOption<Boolean> option = (SocketOption<Boolean>) field.get(null);
+            try (DatagramChannel probe = DatagramChannel.open()) {
+                return probe.supportedOptions().contains(option) ? option : null;
+            }
+        } catch (ReflectiveOperationException | IOException e) {
+            return null;
+        }
+    }
+
+    /** Returns the port the sockets are bound to. */
+    public int localPort() throws IOException {
+        return ((InetSocketAddress) channels[0].getLocalAddress()).getPort();
+    }
+
+    /** Returns the number of sockets, which is 1 if SO_REUSEPORT is not available. */
+    public int sockets() { return channels.length; }
+
+    /** Returns the number of frames dropped because the station did not keep up. */
+    public long dropped() { return dropped.get(); }
+
+    /** Receives datagrams into pooled frames and queues them. A frame that is not queued is
+     * reused for the next datagram. */
+    private void readLoop(DatagramChannel channel) {
+        FrameBuffer frame = pool.acquire(SLOT_SIZE);
+        try {
+            while (!isClosed) {
+                final ByteBuffer buffer = frame.buffer();
+                buffer.clear();
+                try {
+                    channel.receive(buffer);
+                } catch (IOException e) {
+                    if (!isClosed) { logger.error("Exception in receiving, stopping reader", e); }
+                    break;
+                }
+                buffer.flip();
+                final int length = buffer.remaining();
+                if (length == buffer.capacity()) {  // Possibly truncated.
+                    dropped.incrementAndGet();
+                    logger.debug("Dropping a datagram of {} bytes or more", length);
+                    continue;
+                }
+                if (length == 0 || (hasEthernetHeader && !isGeonetworking(buffer, 0, length))) {
+                    logger.debug("Ignoring non-Geonetworking packet");
+                    continue;
+                }
+                if (!queue.offer(frame)) {
+                    dropped.incrementAndGet();
+                    logger.debug("Receive queue is full, dropping a frame");
+                    continue;
+                }
+                if (isConsumerParked) { LockSupport.unpark(consumer); }
+                frame = pool.acquire(SLOT_SIZE);
+            }
+        } finally {
+            frame.release();
+        }
+    }
+
+    /** Takes the next frame from the queue, waiting if there is none.
+     *
+     * Only one thread (the station) may receive. Frames longer than the space in the buffer are
+     * truncated. */
+    @Override
+    public int receive(ByteBuffer buffer) throws IOException, InterruptedException {
+        consumer = Thread.currentThread();
+        FrameBuffer frame = queue.poll();
+        while (frame == null) {
+            if (isClosed) { throw new ClosedChannelException(); }
+            isConsumerParked = true;
+            if (queue.isEmpty() && !isClosed) { LockSupport.park(this); }
+            isConsumerParked = false;
+            if (Thread.interrupted()) { throw new InterruptedException(); }
+            frame = queue.poll();
+        }
+        return copyAndRelease(frame, buffer);
+    }
+
+    /** Takes the first frame like {@link #receive(ByteBuffer)}, then all frames that are already
+     * in the queue, without waiting for more. */
+    @Override
+    public int receive(ByteBuffer buffer, int[] lengths) throws IOException, InterruptedException {
+        lengths[0] = receive(buffer);
+        int frames = 1;
+        while (frames < lengths.length && buffer.remaining() >= MAX_FRAME_LENGTH) {
+            FrameBuffer frame = queue.poll();
+            if (frame == null) { break; }
+            lengths[frames] = copyAndRelease(frame, buffer);
+            frames++;
+        }
+        return frames;
+    }
+
+    private static int copyAndRelease(FrameBuffer frame, ByteBuffer buffer) {
+        try {
+            ByteBuffer source = frame.buffer();
+            source.rewind();
+            if (source.remaining() > buffer.remaining()) {
+                source.limit(buffer.remaining());
+            }
+            final int length = source.remaining();
+            buffer.put(source);
+            return length;
+        } finally {
+            frame.release();
+        }
+    }
+
+    /** Sends from the first socket, so the source port is the local port. */
+    @Override
+    public void send(ByteBuffer frame) throws IOException {
+        channels[0].send(frame, remoteAddress);
+    }
+
+    @Override
+    public boolean hasEthernetHeader() {
+        return hasEthernetHeader;
+    }
+
+    private void closeChannels() throws IOException {
+        IOException exception = null;
+        for (DatagramChannel channel : channels) {
+            if (channel == null) { continue; }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                exception = e;
+            }
+        }
+        if (exception != null) { throw exception; }
+    }
+
+    /** Closes all sockets and stops the reader threads. A waiting receive throws
+     * ClosedChannelException. */
+    @Override
+    public void close() throws IOException {
+        isClosed = true;
+        try {
+            closeChannels();
+        } finally {
+            final Thread waiting = consumer;
+            if (waiting != null) { LockSupport.unpark(waiting); }
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package net.gcdc.geonetworking;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** Link layer to a bridge on the same machine, over two {@link SharedMemoryRing}s in
+ * memory-mapped files, one per direction.
+ *
+ * This avoids the loopback UDP stack when the radio bridge runs on the same host as the station.
+ * The bridge maps the same two files, with the roles swapped: it consumes the transmit ring of
+ * the station and produces into its receive ring. The ring protocol is described in
+ * {@link SharedMemoryRing}.
+ *
+ * Receive waits by spinning and sleeping, see {@link SharedMemoryRing#await(int)}, or, if the
+ * bridge supports it, sleeps on a {@link SharedMemoryRing.Signal} until a frame arrives. A
+ * receive waiting on a signal notices {@link #close()} within
+ * {@link SharedMemoryRing#MAX_SIGNAL_WAIT_MILLIS}. Sending never
+ * blocks: if the bridge does not keep up and the ring is full, the frame is dropped and counted
+ * in {@link #dropped()}, as a UDP socket would drop it.
+ */
+public class LinkLayerSharedMemory extends AbstractByteBufferLinkLayer {
+    private final static Logger logger = LoggerFactory.getLogger(LinkLayerSharedMemory.class);
+
+    /** Size of the data area of each ring, in bytes. */
+    public static final int DEFAULT_CAPACITY = 1 << 20;
+
+    private final SharedMemoryRing transmitRing;
+    private final SharedMemoryRing receiveRing;
+    private final boolean          hasEthernetHeader;
+    private final AtomicLong       dropped  = new AtomicLong(0);
+    private volatile boolean       isClosed = false;
+
+    /** Creates the link layer with signals to and from the bridge.
+     *
+     * @param transmitSignal producer side of the signal that wakes up the bridge, or null
+     * @param receiveSignal consumer side of the signal the bridge wakes us up with, or null */
+    public LinkLayerSharedMemory(File transmitFile, File receiveFile, int capacity,
+            boolean hasEthernetHeader, SharedMemoryRing.Signal transmitSignal,
+            SharedMemoryRing.Signal receiveSignal) throws IOException {
+        this.transmitRing      = SharedMemoryRing.producer(transmitFile, capacity, transmitSignal);
+        this.receiveRing       = SharedMemoryRing.consumer(receiveFile, capacity, receiveSignal);
+        this.hasEthernetHeader = hasEthernetHeader;
+    }
+
+    public LinkLayerSharedMemory(File transmitFile, File receiveFile, int capacity,
+            boolean hasEthernetHeader) throws IOException {
+        this(transmitFile, receiveFile, capacity, hasEthernetHeader, null, null);
+    }
+
+    public LinkLayerSharedMemory(File transmitFile, File receiveFile, boolean hasEthernetHeader)
+            throws IOException {
+        this(transmitFile, receiveFile, DEFAULT_CAPACITY, hasEthernetHeader);
+    }
+
+    /** Receives the next Geonetworking frame, waiting for it if the ring is empty. */
+    @Override
+    public int receive(ByteBuffer buffer) throws IOException, InterruptedException {
+        int waits = 0;
+        while (true) {
+            final int length = receiveNow(buffer);
+            if (length > 0) { return length; }
+            if (isClosed) { throw new ClosedChannelException(); }
+            if (Thread.interrupted()) { throw new InterruptedException(); }
+            receiveRing.awaitFrame(waits++);
+        }
+    }
+
+    /** Receives the first frame like {@link #receive(ByteBuffer)}, then all frames that are
+     * already in the ring, without waiting for more. */
+    @Override
+    public int receive(ByteBuffer buffer, int[] lengths) throws IOException, InterruptedException {
+        lengths[0] = receive(buffer);
+        int frames = 1;
+        while (frames < lengths.length && buffer.remaining() >= MAX_FRAME_LENGTH) {
+            lengths[frames] = receiveNow(buffer);
+            if (lengths[frames] == 0) { break; }
+            frames++;
+        }
+        return frames;
+    }
+
+    /** Receives the next Geonetworking frame if there is one, returns 0 otherwise. */
+    private int receiveNow(ByteBuffer buffer) {
+        final int start = buffer.position();
+        while (true) {
+            final int length = receiveRing.poll(buffer);
+            if (length < 0) { return 0; }
+            if (length == 0 || (hasEthernetHeader && !isGeonetworking(buffer, start, length))) {
+                logger.debug("Ignoring non-Geonetworking packet");
+                buffer.position(start);
+                continue;
+            }
+            return length;
+        }
+    }
+
+    /** Writes the frame into the transmit ring.
+     *
+     * Synchronized, since the ring has only one producer and the station sends from several
+     * threads. With a {@link TransmitQueue}, the lock is never contended. */
+    @Override
+    public synchronized void send(ByteBuffer frame) throws IOException {
+        if (isClosed) { throw new ClosedChannelException(); }
+        if (frame.remaining() > transmitRing.maxFrameLength()) {
+            throw new IOException("Frame of " + frame.remaining() + " bytes does not fit into the ring");
+        }
+        if (!transmitRing.offer(frame)) {
+            frame.position(frame.limit());
+            dropped.incrementAndGet();
+            logger.debug("Transmit ring is full, dropping a frame");
+        }
+    }
+
+    /** Returns the number of frames dropped because the transmit ring was full. */
+    public long dropped() { return dropped.get(); }
+
+    @Override
+    public boolean prefersDirectBuffers() {
+        return true;
+    }
+
+    @Override
+    public boolean hasEthernetHeader() {
+        return hasEthernetHeader;
+    }
+
+    /** Stops receiving, a waiting receive throws ClosedChannelException. The files stay mapped
+     * until the rings are garbage collected. */
+    @Override
+    public void close() {
+        isClosed = true;
+    }
+}
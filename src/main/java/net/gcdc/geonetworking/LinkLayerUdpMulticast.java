@@ -0,0 +1,199 @@
+package net.gcdc.geonetworking;
+
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** Link layer over an IP multicast group, for several stations on one LAN or on one host.
+ *
+ * All stations that join the same group and port share one emulated channel; the kernel (and
+ * the switches) deliver every frame to all of them, so there is no need for a
+ * {@link net.gcdc.UdpDuplicator} in between.
+ *
+ * Multicast loopback is on, so stations on the same host hear each other. A station does not
+ * receive its own frames:
+ * <ul>
+ * <li>With Ethernet header, frames are recognized by their source MAC address, which is either
+ * the MAC address of the station, or, for a station created without a MAC address, a random
+ * locally administered one (see {@link #macAddress()}) written into the all-zero source field.
+ * <li>Without Ethernet header, frames are recognized by their source, which is the local port of
+ * the sending socket on one of the addresses of this host.
+ * </ul>
+ */
+public class LinkLayerUdpMulticast extends AbstractByteBufferLinkLayer {
+    private final static Logger logger = LoggerFactory.getLogger(LinkLayerUdpMulticast.class);
+
+    private static final int SOURCE_MAC_OFFSET = 6;
+
+    private final InetSocketAddress   groupAddress;
+    private final boolean             hasEthernetHeader;
+    private final DatagramChannel     receiveChannel;
+    private final DatagramChannel     sendChannel;
+    private final int                 sendPort;
+    private final Set<InetAddress>    localAddresses;
+    private final MacAddress          macAddress;
+    private final ByteBuffer          sendBuffer;  // For frames with our MAC, guarded by itself.
+    private volatile long             stationMac = 0;  // Source MAC set by the station, if any.
+
+    /**
+     * @param group multicast group, e.g. 239.0.0.1
+     * @param networkInterface interface to join the group on, e.g. the loopback for one host
+     * @param ttl time-to-live of sent datagrams, 1 keeps them on the local network
+     */
+    public LinkLayerUdpMulticast(InetAddress group, int port, NetworkInterface networkInterface,
+            int ttl, boolean hasEthernetHeader) throws IOException {
+        if (!group.isMulticastAddress()) {
+            throw new IllegalArgumentException("Not a multicast address: " + group);
+        }
+        final StandardProtocolFamily family = group instanceof Inet4Address ?
+                StandardProtocolFamily.INET : StandardProtocolFamily.INET6;
+        this.groupAddress      = new InetSocketAddress(group, port);
+        this.hasEthernetHeader = hasEthernetHeader;
+        this.macAddress        = randomLocalMac();
+        this.sendBuffer        = hasEthernetHeader ?
+                ByteBuffer.allocateDirect(MAX_FRAME_LENGTH) : null;
+
+        this.receiveChannel = DatagramChannel.open(family);
+        this.sendChannel    = DatagramChannel.open(family);
+        try {
+            receiveChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            receiveChannel.bind(new InetSocketAddress(port));
+            receiveChannel.join(group, networkInterface);
+
+            sendChannel.setOption(StandardSocketOptions.IP_MULTICAST_IF, networkInterface);
+            sendChannel.setOption(StandardSocketOptions.IP_MULTICAST_TTL, ttl);
+            sendChannel.setOption(StandardSocketOptions.IP_MULTICAST_LOOP, true);
+            sendChannel.bind(new InetSocketAddress(0));
+            this.sendPort = ((InetSocketAddress) sendChannel.getLocalAddress()).getPort();
+        } catch (IOException e) {
+            receiveChannel.close();
+            sendChannel.close();
+            throw e;
+        }
+        this.localAddresses = localAddresses();
+        logger.info("Joined {} on {}, MAC address {}", groupAddress, networkInterface.getName(),
+                macAddress);
+    }
+
+    /** Creates a link layer with TTL 1. */
+    public LinkLayerUdpMulticast(InetAddress group, int port, NetworkInterface networkInterface,
+            boolean hasEthernetHeader) throws IOException {
+        this(group, port, networkInterface, 1, hasEthernetHeader);
+    }
+
+    /** Returns a random unicast MAC address with the locally administered bit set. */
+    private static MacAddress randomLocalMac() {
+        long value = new Random().nextLong() & 0xffff_ffff_ffffL;
+        value &= ~0x0100_0000_0000L;  // Unicast.
+        value |=  0x0200_0000_0000L;  // Locally administered.
+        return new MacAddress(value);
+    }
+
+    private static Set<InetAddress> localAddresses() throws SocketException {
+        Set<InetAddress> addresses = new HashSet<>();
+        for (NetworkInterface networkInterface :
+                Collections.list(NetworkInterface.getNetworkInterfaces())) {
+            addresses.addAll(Collections.list(networkInterface.getInetAddresses()));
+        }
+        return addresses;
+    }
+
+    /** Returns the MAC address written into frames sent with an all-zero source MAC. */
+    public MacAddress macAddress() { return macAddress; }
+
+    /** Receives the next Geonetworking frame sent by someone else. */
+    @Override
+    public int receive(ByteBuffer buffer) throws IOException {
+        final int start = buffer.position();
+        while (true) {
+            SocketAddress source = receiveChannel.receive(buffer);
+            final int length = buffer.position() - start;
+            if (length == 0 || isOwn(source, buffer, start, length) ||
+                    (hasEthernetHeader && !isGeonetworking(buffer, start, length))) {
+                buffer.position(start);
+                continue;
+            }
+            return length;
+        }
+    }
+
+    /** Reads the source MAC address of the frame, without allocating. */
+    private static long sourceMac(ByteBuffer buffer, int start) {
+        return MacAddress.valueAt(buffer, start + SOURCE_MAC_OFFSET);
+    }
+
+    private boolean isOwn(SocketAddress source, ByteBuffer buffer, int start, int length) {
+        if (hasEthernetHeader) {
+            if (length < ETHER_HEADER_LENGTH) { return false; }
+            final long mac = sourceMac(buffer, start);
+            return mac == macAddress.value() || mac == stationMac;
+        } else {
+            InetSocketAddress address = (InetSocketAddress) source;
+            return address.getPort() == sendPort && localAddresses.contains(address.getAddress());
+        }
+    }
+
+    /** Sends the frame to the group.
+     *
+     * A frame with an all-zero source MAC is sent with {@link #macAddress()} instead, from a copy
+     * in a private buffer, the frame itself is not modified (it may be read-only or shared). Any
+     * other source MAC is remembered, so that frames from it are filtered out as own frames. */
+    @Override
+    public void send(ByteBuffer frame) throws IOException {
+        final int start = frame.position();
+        if (hasEthernetHeader && frame.remaining() >= ETHER_HEADER_LENGTH) {
+            final long mac = sourceMac(frame, start);
+            if (mac == 0) {
+                sendWithMac(frame);
+                return;
+            } else if (mac != stationMac) {
+                stationMac = mac;
+            }
+        }
+        sendChannel.send(frame, groupAddress);
+    }
+
+    private void sendWithMac(ByteBuffer frame) throws IOException {
+        synchronized (sendBuffer) {
+            sendBuffer.clear();
+            sendBuffer.put(frame.duplicate()).flip();
+            macAddress.putTo(sendBuffer, SOURCE_MAC_OFFSET);
+            sendChannel.send(sendBuffer, groupAddress);
+        }
+        frame.position(frame.limit());
+    }
+
+    @Override
+    public boolean prefersDirectBuffers() {
+        return true;
+    }
+
+    @Override
+    public boolean hasEthernetHeader() {
+        return hasEthernetHeader;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            receiveChannel.close();
+        } finally {
+            sendChannel.close();
+        }
+    }
+}
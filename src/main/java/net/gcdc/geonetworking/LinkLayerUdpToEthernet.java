@@ -5,14 +5,12 @@ import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.SocketAddress;
 import java.net.SocketException;
-import java.net.SocketTimeoutException;
 import java.nio.ByteBuffer;
-import java.util.Arrays;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class LinkLayerUdpToEthernet implements LinkLayer, AutoCloseable {
+public class LinkLayerUdpToEthernet extends AbstractByteBufferLinkLayer implements AutoCloseable {
     private final static Logger logger = LoggerFactory.getLogger(LinkLayerUdpToEthernet.class);
 
     final SocketAddress remoteAddress;
@@ -23,8 +21,6 @@ public class LinkLayerUdpToEthernet implements LinkLayer, AutoCloseable {
     final byte[] buffer = new byte[BUFFER_LENGTH];
     final DatagramPacket receptionPacket = new DatagramPacket(buffer, BUFFER_LENGTH);
 
-    private final static int ETHERTYPE_START_BIT = 12;
-
     public LinkLayerUdpToEthernet(int localPort, SocketAddress remoteAddress, boolean hasEthernetHeader)
             throws SocketException {
         this.socket = new DatagramSocket(localPort);
@@ -32,23 +28,42 @@ public class LinkLayerUdpToEthernet implements LinkLayer, AutoCloseable {
         this.hasEthernetHeader = hasEthernetHeader;
     }
 
+    /** Receives directly into the array behind the buffer if there is one, otherwise receives
+     * into an internal array and copies. */
     @Override
-    public byte[] receive() throws IOException, SocketTimeoutException {
+    public int receive(ByteBuffer dst) throws IOException {
+        final boolean hasArray = dst.hasArray();
+        final byte[]  data     = hasArray ? dst.array() : buffer;
+        final int     offset   = hasArray ? dst.arrayOffset() + dst.position() : 0;
+        final int     length   = hasArray ? dst.remaining() : Math.min(dst.remaining(), BUFFER_LENGTH);
+        receptionPacket.setData(data, offset, length);
         socket.receive(receptionPacket);
-        if (hasEthernetHeader) {
-            short ethertype = ByteBuffer.wrap(buffer).getShort(ETHERTYPE_START_BIT);
-            while (ethertype != GeonetStation.GN_ETHER_TYPE) {
-                logger.debug("Ignoring packet with ethertype {}", ethertype);
-                socket.receive(receptionPacket);
-                ethertype = ByteBuffer.wrap(buffer).getShort(12);
-            }
+        while (hasEthernetHeader &&
+                !isGeonetworking(data, offset, receptionPacket.getLength())) {
+            logger.debug("Ignoring non-Geonetworking packet");
+            receptionPacket.setData(data, offset, length);
+            socket.receive(receptionPacket);
+        }
+        final int received = receptionPacket.getLength();
+        if (hasArray) {
+            dst.position(dst.position() + received);
+        } else {
+            dst.put(data, 0, received);
         }
-        return Arrays.copyOfRange(receptionPacket.getData(), 0, receptionPacket.getLength());
+        return received;
     }
 
     @Override
-    public void send(byte[] payload) throws IOException {
-        socket.send(new DatagramPacket(payload, payload.length, remoteAddress));
+    public void send(ByteBuffer frame) throws IOException {
+        if (frame.hasArray()) {
+            socket.send(new DatagramPacket(frame.array(), frame.arrayOffset() + frame.position(),
+                    frame.remaining(), remoteAddress));
+            frame.position(frame.limit());
+        } else {
+            byte[] payload = new byte[frame.remaining()];
+            frame.get(payload);
+            socket.send(new DatagramPacket(payload, payload.length, remoteAddress));
+        }
     }
 
     @Override
@@ -0,0 +1,223 @@
+package net.gcdc.geonetworking;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.threeten.bp.Instant;
+
+/** Location Service, finds positions of Geounicast destinations that are not in the Location
+ * Table (EN 302 636-4-1 V1.2.1).
+ *
+ * There is at most one request in flight per destination: packets sent to the same destination
+ * while its request is pending only wait in the LS packet buffer, so a burst of unicasts to a new
+ * peer sends one LS Request, not one per packet. The request is sent again every
+ * itsGnLocationServiceRetransmitTimer, up to itsGnLocationServiceMaxRetrans times.
+ *
+ * While the request is pending, the entry of the destination has
+ * {@link LocationTable.Entry#locationServicePending()} set (and no position, if it is new). As
+ * soon as the entry has a position, from an LS Reply or from any other packet of the destination
+ * (see {@link #onLocationTableChanged()}), the buffered packets are sent; when the
+ * retransmissions are used up, they are dropped.
+ *
+ * The buffer holds at most its capacity in bytes of payload; when it is full, the oldest packets
+ * for the same destination are dropped first.
+ */
+final class LocationService {
+
+    private final static Logger logger = LoggerFactory.getLogger(LocationService.class);
+
+    /** What the service needs to send, implemented by the station. */
+    interface Sender {
+        /** Sends a new LS Request for the address. */
+        void sendRequest(Address target);
+
+        /** Sends a packet that waited for the position of its destination. */
+        void sendBuffered(GeonetData data, Instant timeAdded);
+    }
+
+    /** Packet in the LS packet buffer. */
+    private static final class Buffered {
+        final GeonetData data;
+        final Instant    timeAdded;
+        Buffered(GeonetData data, Instant timeAdded) {
+            this.data      = data;
+            this.timeAdded = timeAdded;
+        }
+    }
+
+    /** Request in flight, with its retransmit timer and the packets waiting for it. */
+    private final class Request implements Runnable {
+        final Address              target;
+        final ArrayDeque<Buffered> packets = new ArrayDeque<>();
+        int                        retransmissions = 0;
+        TimerService.Timeout       timeout;
+
+        Request(Address target) { this.target = target; }
+
+        @Override public void run() { onRetransmitTimer(this); }
+    }
+
+    private final LocationTable        locationTable;
+    private final TimerService         timer;
+    private final Sender               sender;
+    private final long                 retransmitMillis;
+    private final int                  maxRetransmissions;
+    private final long                 capacityBytes;
+    private final Object               flagLock = new Object();  // See updatePendingFlag().
+    private final Map<Address, Request> requests = new HashMap<>();  // All fields below too.
+    private long                       bytes = 0;
+    private long                       requestsSent = 0;
+    private long                       dropped = 0;
+
+    LocationService(LocationTable locationTable, TimerService timer, Sender sender,
+            long retransmitMillis, int maxRetransmissions, long capacityBytes) {
+        this.locationTable      = locationTable;
+        this.timer              = timer;
+        this.sender             = sender;
+        this.retransmitMillis   = retransmitMillis;
+        this.maxRetransmissions = maxRetransmissions;
+        this.capacityBytes      = capacityBytes;
+    }
+
+    /** Buffers the packet until the position of the target is known, and starts a request for
+     * it unless one is in flight already. */
+    void enqueue(Address target, GeonetData data) {
+        final boolean isNew;
+        synchronized (this) {
+            Request request = requests.get(target);
+            isNew = request == null;
+            if (isNew) {
+                request = new Request(target);
+                requests.put(target, request);
+                request.timeout = timer.schedule(request, retransmitMillis, TimeUnit.MILLISECONDS);
+                requestsSent++;
+            }
+            buffer(request, new Buffered(data, timer.clock().instant()));
+        }
+        if (isNew) {
+            logger.debug("Location Service request for {}", target);
+            updatePendingFlag(target);
+            sender.sendRequest(target);
+        }
+    }
+
+    /** Sends the packets waiting for targets whose positions are in the Location Table now, e.g.
+     * from an LS Reply, or from a beacon or a forwarded packet of the target. Called on every
+     * change of the table, so it returns right away if no request is pending. */
+    void onLocationTableChanged() {
+        final List<Request> done = new ArrayList<>(0);
+        synchronized (this) {
+            if (requests.isEmpty()) { return; }
+            for (Iterator<Request> it = requests.values().iterator(); it.hasNext(); ) {
+                final Request request = it.next();
+                if (isLocated(request.target)) {
+                    it.remove();
+                    request.timeout.cancel();
+                    bytes -= payloadBytes(request.packets);
+                    done.add(request);
+                }
+            }
+        }
+        for (Request request : done) { complete(request); }
+    }
+
+    private void onRetransmitTimer(Request request) {
+        final boolean isLocated = isLocated(request.target);
+        boolean isResent = false;
+        synchronized (this) {
+            if (requests.get(request.target) != request) { return; }  // Done meanwhile.
+            if (isLocated || request.retransmissions >= maxRetransmissions) {
+                requests.remove(request.target);
+                bytes -= payloadBytes(request.packets);
+            } else {
+                request.retransmissions++;
+                request.timeout = timer.schedule(request, retransmitMillis, TimeUnit.MILLISECONDS);
+                requestsSent++;
+                isResent = true;
+            }
+        }
+        if (isResent) {
+            sender.sendRequest(request.target);
+        } else if (isLocated) {
+            complete(request);
+        } else {
+            logger.info("Location Service gave up on {}, dropping {} packets", request.target,
+                    request.packets.size());
+            synchronized (this) { dropped += request.packets.size(); }
+            updatePendingFlag(request.target);
+        }
+    }
+
+    /** Sends the packets of a request that is not in the map anymore. */
+    private void complete(Request request) {
+        updatePendingFlag(request.target);
+        for (Buffered packet : request.packets) {
+            sender.sendBuffered(packet.data, packet.timeAdded);
+        }
+    }
+
+    /** Sets {@link LocationTable.Entry#locationServicePending()} of the target to whether a
+     * request for it is in flight now. Called after every change of the requests, outside of the
+     * monitor, so calls may come in any order; they are serialized, and each one sets the flag
+     * from the requests as they are when it runs, so the last one leaves it right. */
+    private void updatePendingFlag(Address target) {
+        synchronized (flagLock) {
+            final boolean isPending;
+            synchronized (this) { isPending = requests.containsKey(target); }
+            locationTable.setLocationServicePending(target, isPending);
+        }
+    }
+
+    private boolean isLocated(Address target) {
+        Optional<LocationTable.Entry> entry = locationTable.entry(target);
+        return entry.isPresent() && entry.get().position() != null;
+    }
+
+    private void buffer(Request request, Buffered packet) {
+        final int length = packet.data.payload.length;
+        while (bytes + length > capacityBytes && !request.packets.isEmpty()) {
+            bytes -= request.packets.pollFirst().data.payload.length;
+            dropped++;
+        }
+        if (bytes + length > capacityBytes) {
+            dropped++;
+            return;
+        }
+        request.packets.addLast(packet);
+        bytes += length;
+    }
+
+    private static long payloadBytes(Iterable<Buffered> packets) {
+        long sum = 0;
+        for (Buffered packet : packets) { sum += packet.data.payload.length; }
+        return sum;
+    }
+
+    /** Returns the number of destinations with a request in flight. */
+    synchronized int pendingRequests() { return requests.size(); }
+
+    /** Returns the number of LS Requests sent, including retransmissions. */
+    synchronized long requestsSent() { return requestsSent; }
+
+    /** Returns the number of packets dropped for lack of space or because the destination was
+     * not found. */
+    synchronized long dropped() { return dropped; }
+
+    /** Cancels all requests and drops their packets. */
+    void close() {
+        final List<Request> cancelled;
+        synchronized (this) {
+            cancelled = new ArrayList<>(requests.values());
+            requests.clear();
+            bytes = 0;
+        }
+        for (Request request : cancelled) { request.timeout.cancel(); }
+    }
+}
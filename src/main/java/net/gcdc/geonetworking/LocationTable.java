@@ -1,13 +1,11 @@
 package net.gcdc.geonetworking;
 
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
 import java.util.Collection;
-import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
@@ -23,22 +21,41 @@ public class LocationTable {
 
     private final ConfigProvider configProvider;
 
-    private final Collection<LocationTableListener> listeners = new ArrayList<>();
+    private final Collection<LocationTableListener> listeners = new CopyOnWriteArrayList<>();
 
-    // Do these maps have to be synchronized? Collections.synchronizedMap or ConcurrentHashMap?
-    private final Map<Address, Entry> gnMap = new ConcurrentHashMap<>();
-    private final Map<Address, ScheduledFuture<?>> janitorFutures = new ConcurrentHashMap<>();
-    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    // Entries are mostly updated from the receiving thread, or the receive worker of their
+    // address, but also by the Location Service from application and timer threads, and expired
+    // from timer threads. Every change is a compare-and-set of the whole entry, see update().
+    private final ConcurrentMap<Address, Entry> gnMap = new ConcurrentHashMap<>();
+    // Sequence windows of sources seen by duplicate detection before they got an entry, taken
+    // over by the entry when it is created.
+    private final ConcurrentMap<Address, SequenceWindow> newWindows = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Address, Janitor> janitors = new ConcurrentHashMap<>();
+    private final TimerService timer;
+    private final boolean isTimerOwned;  // Closed on close, if not shared.
 
     public LocationTable(ConfigProvider configProvider) {
+        this(configProvider, null);
+    }
+
+    /**
+     * @param timer clock and timers for expiry of entries, possibly shared with other stations,
+     *        or null for real-time timers of this table
+     */
+    public LocationTable(ConfigProvider configProvider, TimerService timer) {
         this.configProvider = configProvider;
+        this.isTimerOwned   = timer == null;
+        this.timer          = timer == null ? new HashedWheelTimer(
+                HashedWheelTimer.DEFAULT_TICK_NANOS, TimeUnit.NANOSECONDS,
+                "geonet-location-table") : timer;
     }
 
 
     /** Entry in a Location Table.
      *
-     * Entry is immutable at the moment. If there will be performance problem, or an inconvenience
-     * in removing old entries, Entry could be made mutable.
+     * Entry is immutable at the moment, apart from its window for duplicate detection, which is
+     * shared by all versions of the entry. If there will be performance problem, or an
+     * inconvenience in removing old entries, Entry could be made mutable.
      *
      * TODO: the flag 'locationServicePending' should set to false if not renewed within
      *  3 × itsGnBeaconServiceRetransmitTimer
@@ -51,7 +68,8 @@ public class LocationTable {
         private final boolean isNeighbour;
         private final int sequenceNumber;
         private final Instant timestamp;
-        
+        private final SequenceWindow sequenceWindow;
+
         private Entry(Builder builder) {
             this.address = builder.address;
             this.macAddress = builder.macAddress;
@@ -60,21 +78,26 @@ public class LocationTable {
             this.isNeighbour = builder.isNeighbour;
             this.sequenceNumber = builder.sequenceNumber;
             this.timestamp = builder.timestamp;
+            this.sequenceWindow = builder.sequenceWindow != null ? builder.sequenceWindow :
+                    new SequenceWindow();
         }
 
 
         public Address address() { return address; }
         public MacAddress macAddress() { return macAddress; }
+        /** Returns the position, or null while the Location Service is looking for it. */
         public LongPositionVector position() { return position; }
         public boolean locationServicePending() { return locationServicePending; }
         public boolean isNeighbour() { return isNeighbour; }
         public int sequenceNumber() { return sequenceNumber; }
         public Instant timestamp() { return timestamp; }
+        SequenceWindow sequenceWindow() { return sequenceWindow; }
 
         public Entry withMacAddress(MacAddress macAddress) { return new Builder(this).macAddress(macAddress).create(); }
         public Entry withPosition(LongPositionVector position) { return new Builder(this).position(position).create(); }
         public Entry withIsNeighbour(boolean isNeighbour) { return new Builder(this).isNeighbour(isNeighbour).create(); }
         public Entry withTimestamp(Instant timestamp) { return new Builder(this).timestamp(timestamp).create(); }
+        public Entry withLocationServicePending(boolean locationServicePending) { return new Builder(this).locationServicePending(locationServicePending).create(); }
 
         
         public Builder builder() { return new Builder(); }
@@ -87,6 +110,7 @@ public class LocationTable {
             private boolean isNeighbour;
             private int sequenceNumber;
             private Instant timestamp;
+            private SequenceWindow sequenceWindow;
 
             boolean created = false;
             private Builder() { }
@@ -98,6 +122,7 @@ public class LocationTable {
                 isNeighbour = entry.isNeighbour;
                 sequenceNumber = entry.sequenceNumber;
                 timestamp = entry.timestamp;
+                sequenceWindow = entry.sequenceWindow;
             }
             public Entry create() { created = true; return new Entry(this); }
 
@@ -108,6 +133,7 @@ public class LocationTable {
             public Builder isNeighbour(boolean isNeighbour) { this.isNeighbour = isNeighbour; return this; }
             public Builder sequenceNumber(int sequenceNumber) { this.sequenceNumber = sequenceNumber; return this; }
             public Builder timestamp(Instant timestamp) { this.timestamp = timestamp; return this; }
+            Builder sequenceWindow(SequenceWindow sequenceWindow) { this.sequenceWindow = sequenceWindow; return this; }
         }
 
         // type: vehicle or rsu
@@ -119,7 +145,7 @@ public class LocationTable {
     /** Returns LongPositionVector or null. */
     public Position getPosition(MacAddress macAddress) {
         for (Entry entry: gnMap.values()) {
-            if (entry.macAddress().equals(macAddress)) {
+            if (macAddress.equals(entry.macAddress()) && entry.position() != null) {
                 return entry.position().position();
             }
         }
@@ -132,6 +158,7 @@ public class LocationTable {
         Entry nearest = null;
         double shortestDistance = me.distanceInMetersTo(destination);
         for (Entry entry: gnMap.values()) {
+            if (entry.position() == null) { continue; }  // Location Service is looking for it.
             final double dist = entry.position().position().distanceInMetersTo(destination);
             if (dist < shortestDistance && entry.macAddress() != null && entry.isNeighbour() &&
                     !blacklist.contains(entry.macAddress())) {
@@ -146,55 +173,287 @@ public class LocationTable {
         }
     }
 
+    /** Returns the entry for the address, if there is one. */
+    public Optional<Entry> entry(Address address) {
+        final Entry entry = gnMap.get(address);
+        return entry == null ? Optional.<Entry>empty() : Optional.of(entry);
+    }
+
+    /** Sets the flag of the Location Service looking for the address. If there is no entry for
+     * the address yet, creates one without a position. */
+    public void setLocationServicePending(Address address, final boolean locationServicePending) {
+        update(address, new Update() {
+            @Override public Entry apply(Entry oldEntry, Entry.Builder builder) {
+                if (oldEntry == null) {
+                    if (!locationServicePending) { return null; }
+                    return builder.locationServicePending(true)
+                            .timestamp(timer.clock().instant()).create();
+                }
+                if (oldEntry.locationServicePending() == locationServicePending) { return null; }
+                return builder.locationServicePending(locationServicePending).create();
+            }
+        });
+    }
+
     public void updateFromDirectMessage(final Address address, final MacAddress macAddress, final LongPositionVector position) {
-        final Entry oldEntry = gnMap.get(address);
-        final Entry entry = (oldEntry == null ? new Entry.Builder() : new Entry.Builder(oldEntry))
-            .address(address)
-            .macAddress(macAddress)
-            .position(position)
-            .isNeighbour(true)
-            .timestamp(Instant.now())
-            .create();
         logger.debug("Adding direct neighbour {}", address.toString());
-        putAndSchedule(entry);
+        update(address, new Update() {
+            @Override public Entry apply(Entry oldEntry, Entry.Builder builder) {
+                return builder
+                    .macAddress(macAddress)
+                    .position(position)
+                    .isNeighbour(true)
+                    .timestamp(timer.clock().instant())
+                    .create();
+            }
+        });
+    }
+
+    /** Change of the entry of an address, see {@link LocationTable#update}. */
+    private static abstract class Update {
+        /** Whether the last update put a new entry into the table, rather than replacing one. */
+        boolean isAdded;
+
+        /** Returns the new entry, or null to keep the old one.
+         *
+         * May be called again if another thread changed the entry meanwhile, so it must not have
+         * side effects.
+         *
+         * @param oldEntry the current entry, or null if there is none
+         * @param builder a builder starting from the current entry, or from an empty entry for
+         *        the address */
+        abstract Entry apply(Entry oldEntry, Entry.Builder builder);
+    }
+
+    /** Replaces the entry of the address with the one from the update, retrying the update if
+     * the entry has changed meanwhile, schedules its expiry and notifies listeners: of the
+     * structure if the entry is new, and of the entry in any case.
+     *
+     * A new entry takes over the sequence window that duplicate detection may have started for
+     * the address. */
+    private void update(Address address, Update update) {
+        final Entry entry = updateWithoutNotification(address, update);
+        if (entry != null) { notifyListeners(entry, update.isAdded); }
+    }
+
+    /** Like {@link #update}, but without notifying listeners.
+     *
+     * @return the new entry, or null if the entry has not changed; then
+     *         {@link Update#isAdded} tells whether it is a new one */
+    private Entry updateWithoutNotification(Address address, Update update) {
+        while (true) {
+            final Entry oldEntry = gnMap.get(address);
+            if (oldEntry != null) {
+                final Entry entry = update.apply(oldEntry, new Entry.Builder(oldEntry));
+                if (entry == null) { return null; }
+                if (gnMap.replace(address, oldEntry, entry)) {
+                    scheduleExpiry(entry);
+                    update.isAdded = false;
+                    return entry;
+                }
+            } else {
+                final SequenceWindow window = newWindows.get(address);
+                final Entry entry = update.apply(null,
+                        new Entry.Builder().address(address).sequenceWindow(window));
+                if (entry == null) { return null; }
+                if (gnMap.putIfAbsent(address, entry) == null) {
+                    if (window != null) { newWindows.remove(address, window); }
+                    scheduleExpiry(entry);
+                    update.isAdded = true;
+                    return entry;
+                }
+            }
+        }
+    }
+
+    /** Returns the duplicate detector that keeps a {@link SequenceWindow} per source in its
+     * entry, see {@link DuplicateDetector.Mode#PER_SOURCE}.
+     *
+     * A source without an entry gets its window right away, and the entry created after the
+     * packet takes it over. Windows expire with their entries. */
+    DuplicateDetector duplicateDetector() {
+        return new DuplicateDetector() {
+            @Override public boolean markSeen(long sourceAddress, int timestamp,
+                    short sequenceNumber, long nowMillis, long lifetimeMillis) {
+                return sequenceWindow(new Address(sourceAddress))
+                        .markSeen(timestamp, sequenceNumber);
+            }
+        };
+    }
+
+    private SequenceWindow sequenceWindow(Address address) {
+        final Entry entry = gnMap.get(address);
+        if (entry != null) { return entry.sequenceWindow(); }
+        final SequenceWindow window = new SequenceWindow();
+        final SequenceWindow oldWindow = newWindows.putIfAbsent(address, window);
+        return oldWindow != null ? oldWindow : window;
+    }
+
+    /** Removes its entry when the entry expires, unless it has been replaced meanwhile. */
+    private final class Janitor implements Runnable {
+        final Entry          entry;
+        TimerService.Timeout timeout;  // Set right after scheduling, before it is in janitors.
+
+        Janitor(Entry entry) { this.entry = entry; }
+
+        @Override public void run() {
+            // Only if not renewed meanwhile, cancel() might have come too late.
+            if (gnMap.remove(entry.address(), entry)) {
+                janitors.remove(entry.address(), this);
+                notifyStructureChanged();
+            }
+        }
     }
 
-    private void putAndSchedule(Entry entry) {
+    /** Schedules removal of the entry, which has just replaced the previous one, and cancels
+     * the removal of the previous one.
+     *
+     * Two threads that replace the entry one after the other may get here in the opposite order,
+     * so the janitor of the previous entry is cancelled only if its entry is not the current one;
+     * a janitor that is not cancelled does no harm, it finds its entry replaced. */
+    private void scheduleExpiry(Entry entry) {
         final Address address = entry.address();
-        ScheduledFuture<?> oldRemovalFuture = janitorFutures.get(address);
-        if (oldRemovalFuture != null) { oldRemovalFuture.cancel(false); }
-        janitorFutures.remove(address);
-        gnMap.put(address, entry);
-        final ScheduledFuture<?> future = executor.schedule(
-                new Runnable() { @Override public void run() {
-                    gnMap.remove(address);
-                    janitorFutures.remove(address);
-                    notifyListeners();} },
-                configProvider.config().getItsGnLifetimeLocTE(),
+        final Janitor janitor = new Janitor(entry);
+        janitor.timeout = timer.schedule(janitor, configProvider.config().getItsGnLifetimeLocTE(),
                 TimeUnit.SECONDS);
-        janitorFutures.put(address, future);
-        notifyListeners();
+        final Janitor previous = janitors.put(address, janitor);
+        if (previous != null && previous.entry != gnMap.get(address)) {
+            previous.timeout.cancel();
+        }
     }
 
-    public void updateFromForwardedMessage(Address address, LongPositionVector position) {
-        final Entry oldEntry = gnMap.get(address);
-        final Entry entry = (oldEntry == null ? new Entry.Builder() : new Entry.Builder(oldEntry))
-            .address(address)
-            .position(position)
-            .timestamp(Instant.now())
-            .create();
+    public void updateFromForwardedMessage(Address address, final LongPositionVector position) {
         logger.debug("Adding non-(SHB/BEACON) entry {}", address.toString());
-        putAndSchedule(entry);
+        update(address, new Update() {
+            @Override public Entry apply(Entry oldEntry, Entry.Builder builder) {
+                return builder
+                    .position(position)
+                    .timestamp(timer.clock().instant())
+                    .create();
+            }
+        });
+    }
+
+    /** Returns a new batch of updates, see {@link Batch}.
+     *
+     * @param capacity maximum number of distinct addresses collected before the batch applies
+     *                 itself */
+    public Batch batch(int capacity) {
+        return new Batch(capacity);
+    }
+
+    /** Updates collected from a batch of received frames, to be applied at once.
+     *
+     * Updates for the same address are merged, so each address gets its entry replaced and its
+     * expiry rescheduled only once per batch, and listeners are notified once per address, after
+     * the whole batch is in the table, instead of once per frame. Until {@link #apply()}, the
+     * table does not see the updates.
+     *
+     * Updates are taken from position vectors in received frames and kept as raw bytes, so that
+     * collecting them allocates nothing; entries are created in {@link #apply()}.
+     *
+     * A batch is meant to be used by one (receiving) thread and reused for many batches.
+     */
+    public final class Batch {
+        private static final long NO_MAC = -1;  // MAC addresses are 48 bit, -1 is never one.
+
+        private final long[] addresses;
+        private final long[] macAddresses;  // NO_MAC if no direct message.
+        private final byte[] positions;     // Raw Long Position Vectors.
+        private final Entry[] changed;      // Entries changed by apply(), to notify listeners.
+        private final boolean[] added;      // Whether changed[i] is a new entry.
+        private int size = 0;
+        private int index;                  // Of the update being applied.
+        private Instant now;
+
+        /** Applies the update at {@link #index}, see {@link LocationTable#update}. */
+        private final Update update = new Update() {
+            @Override public Entry apply(Entry oldEntry, Entry.Builder builder) {
+                builder
+                    .position(LongPositionVector.getFrom(ByteBuffer.wrap(positions,
+                            index * LongPositionVector.LENGTH, LongPositionVector.LENGTH)))
+                    .timestamp(now);
+                if (macAddresses[index] != NO_MAC) {
+                    builder.macAddress(new MacAddress(macAddresses[index])).isNeighbour(true);
+                }
+                return builder.create();
+            }
+        };
+
+        private Batch(int capacity) {
+            addresses    = new long[capacity];
+            macAddresses = new long[capacity];
+            positions    = new byte[capacity * LongPositionVector.LENGTH];
+            changed      = new Entry[capacity];
+            added        = new boolean[capacity];
+        }
+
+        /** Update from SHB or Beacon, sender is a neighbour with the given MAC address. */
+        public void updateFromDirectMessage(LongPositionVectorView position, long macAddress) {
+            int i = indexOf(position.addressValue());
+            macAddresses[i] = macAddress;
+            position.copyTo(positions, i * LongPositionVector.LENGTH);
+        }
+
+        public void updateFromForwardedMessage(LongPositionVectorView position) {
+            int i = indexOf(position.addressValue());
+            position.copyTo(positions, i * LongPositionVector.LENGTH);
+        }
+
+        /** Returns index for the address, adding it if it's not in the batch yet. */
+        private int indexOf(long address) {
+            for (int i = 0; i < size; i++) {
+                if (addresses[i] == address) { return i; }
+            }
+            if (size == addresses.length) { apply(); }
+            addresses[size] = address;
+            macAddresses[size] = NO_MAC;
+            return size++;
+        }
+
+        /** Puts all collected updates into the table and clears the batch. */
+        public void apply() {
+            if (size == 0) { return; }
+            now = timer.clock().instant();
+            for (index = 0; index < size; index++) {
+                changed[index] = updateWithoutNotification(new Address(addresses[index]), update);
+                added[index]   = update.isAdded;
+            }
+            logger.debug("Applied batch of {} location table updates", size);
+            final int applied = size;
+            size = 0;
+            for (int i = 0; i < applied; i++) {
+                if (changed[i] != null) { notifyListeners(changed[i], added[i]); }
+                changed[i] = null;
+            }
+        }
     }
 
     public Collection<LocationTable.Entry> entries() {
         return gnMap.values();
     }
 
+    /** Adds a listener, which is told about new and expired entries with
+     * {@link LocationTableListener#notifyStructureChanged()}, and about every new or changed
+     * entry with {@link LocationTableListener#notifyEntryChanged}. Listeners are called from the
+     * thread that changed the table. */
     public void addListener(LocationTableListener listener) { listeners.add(listener); }
     public void removeListener(LocationTableListener listener) { listeners.remove(listener); }
 
-    private void notifyListeners() {
+    private void notifyListeners(Entry entry, boolean isAdded) {
+        if (isAdded) { notifyStructureChanged(); }
+        for (LocationTableListener listener : listeners) { listener.notifyEntryChanged(entry); }
+    }
+
+    private void notifyStructureChanged() {
         for (LocationTableListener listener : listeners) { listener.notifyStructureChanged(); }
     }
+
+    /** Cancels expiry of entries, and closes the timers unless they are shared. */
+    public void close() {
+        for (Janitor janitor : janitors.values()) { janitor.timeout.cancel(); }
+        janitors.clear();
+        newWindows.clear();
+        if (isTimerOwned) { timer.close(); }
+    }
 }
@@ -55,6 +55,10 @@ public final class LongPositionVector {
     private final static double HEADING_STORE_SCALE = 0.1;   // 0.1 degrees from north.
     private static final long LEAP_SECONDS_SINCE_2004 = 4;  // Let's assume we're always in 2015.
 
+    /** Start of the GN epoch, 2004-01-01 00:00:00 UTC, in Unix milliseconds. */
+    private static final long MILLIS_2004 = OffsetDateTime.of(
+            LocalDateTime.of(2004, Month.JANUARY, 1, 0, 0), ZoneOffset.UTC).toInstant().toEpochMilli();
+
   //private long taiMillisSince2004Mod32;
     public LongPositionVector(
             Address  address,
@@ -190,17 +194,14 @@ public final class LongPositionVector {
      * seconds each time a leap second is added to UTC time scale.
      */
     public static long instantToTaiMillisSince2004Mod32(Instant instantX) {
-        OffsetDateTime gnEpochStart =
-                OffsetDateTime.of(LocalDateTime.of(2004, Month.JANUARY, 1, 0, 0), ZoneOffset.UTC);
-        long millis2004 = gnEpochStart.toInstant().toEpochMilli();
         long millisAtX = instantX.toEpochMilli();
-        long taiMillis = (millisAtX + LEAP_SECONDS_SINCE_2004*1000) - millis2004;
+        long taiMillis = (millisAtX + LEAP_SECONDS_SINCE_2004*1000) - MILLIS_2004;
         return taiMillis % (1L << 32);
     }
 
     /** Returns the nearest to now instant that will have given amount of TAI millis since 2004. */
     public static Instant millisMod32ToInstant(int intMillisX) {
-        long millisX = Long.parseLong(Integer.toBinaryString(intMillisX), 2);  // unsigned int...
+        long millisX = intMillisX & 0xFFFF_FFFFL;  // unsigned int...
         Instant now = Instant.now();
         long millisNow = instantToTaiMillisSince2004Mod32(now);
         long delta = millisNow - millisX;
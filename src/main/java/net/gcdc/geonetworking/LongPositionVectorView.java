@@ -0,0 +1,71 @@
+package net.gcdc.geonetworking;
+
+import java.nio.ByteBuffer;
+
+/** Flyweight over a Long Position Vector in a buffer, reads the fields on demand.
+ *
+ * Address and timestamp are available as raw values, so that e.g. duplicate detection and
+ * location table updates can work without creating Address, Instant and Position objects.
+ * Same rules as for {@link BasicHeaderView}.
+ *
+ * @see LongPositionVector
+ */
+public final class LongPositionVectorView {
+    private final static double SPEED_STORE_SCALE   = 0.01;  // 0.01 meters per second.
+    private final static double HEADING_STORE_SCALE = 0.1;   // 0.1 degrees from north.
+
+    private ByteBuffer buffer;
+    private int        offset;
+
+    /** Points the view to the position vector starting at offset, returns this view. */
+    public LongPositionVectorView wrap(ByteBuffer buffer, int offset) {
+        this.buffer = buffer;
+        this.offset = offset;
+        return this;
+    }
+
+    public int offset() { return offset; }
+
+    /** Returns the value of Geonetworking address, see {@link Address#value()}. */
+    public long addressValue() { return buffer.getLong(offset); }
+
+    /** Returns TAI milliseconds since 2004 mod 2^32, as on the wire. */
+    public int timestampMillisMod32() { return buffer.getInt(offset + 8); }
+
+    public double lattitudeDegrees() { return Position.fromStoreUnit(buffer.getInt(offset + 12)); }
+    public double longitudeDegrees() { return Position.fromStoreUnit(buffer.getInt(offset + 16)); }
+
+    public boolean isPositionConfident() { return (buffer.get(offset + 20) & 0x80) != 0; }
+
+    public double speedMetersPerSecond() {
+        // Bits 0-14 are signed units of speed, shift left and back to extend the sign of bit 14.
+        short speed = (short) ((short) (buffer.getShort(offset + 20) << 1) >> 1);
+        return speed * SPEED_STORE_SCALE;
+    }
+
+    public double headingDegreesFromNorth() {
+        return buffer.getShort(offset + 22) * HEADING_STORE_SCALE;
+    }
+
+    public Address address() { return new Address(addressValue()); }
+
+    public Position position() { return new Position(lattitudeDegrees(), longitudeDegrees()); }
+
+    /** Returns a new LongPositionVector with the same fields. */
+    public LongPositionVector toLongPositionVector() {
+        return new LongPositionVector(
+                address(),
+                LongPositionVector.millisMod32ToInstant(timestampMillisMod32()),
+                position(),
+                isPositionConfident(),
+                speedMetersPerSecond(),
+                headingDegreesFromNorth());
+    }
+
+    /** Copies the raw position vector into dst at index, without changing positions. */
+    public void copyTo(byte[] dst, int index) {
+        for (int i = 0; i < LongPositionVector.LENGTH; i++) {
+            dst[index + i] = buffer.get(offset + i);
+        }
+    }
+}
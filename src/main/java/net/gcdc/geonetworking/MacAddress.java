@@ -37,6 +37,27 @@ public final class MacAddress {
         return Arrays.copyOfRange(ByteBuffer.allocate(8).putLong(address).array(), 2, 8);
     }
 
+    /** Writes 6 bytes of this address into the buffer at its position. */
+    public ByteBuffer putTo(ByteBuffer buffer) {
+        putTo(buffer, buffer.position());
+        buffer.position(buffer.position() + 6);
+        return buffer;
+    }
+
+    /** Writes 6 bytes of this address into the buffer at given index, position is not changed. */
+    public ByteBuffer putTo(ByteBuffer buffer, int index) {
+        for (int i = 0; i < 6; i++) {
+            buffer.put(index + i, (byte) (address >>> (40 - 8 * i)));
+        }
+        return buffer;
+    }
+
+    /** Reads 6 bytes of an address from the buffer at given index, without creating objects.
+     * Position is not changed. */
+    public static long valueAt(ByteBuffer buffer, int index) {
+        return ((buffer.getShort(index) & 0xffffL) << 32) | (buffer.getInt(index + 2) & 0xffff_ffffL);
+    }
+
     public static MacAddress fromBytes(byte[] bytes) {
         if (bytes.length > 6) {
             throw new IllegalArgumentException("Address is too long: " + bytes.length + "bytes");
@@ -0,0 +1,69 @@
+package net.gcdc.geonetworking;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/** Bounded lock-free queue for many producers and one consumer.
+ *
+ * Producers claim a slot by incrementing {@link #tail} and then publish the element into the slot.
+ * The only consumer takes elements in order, clears their slots and advances {@link #head}.
+ * An element that is claimed but not yet published is not visible to {@link #poll()}, which
+ * returns null as if the queue was empty; the producer publishes it right after.
+ *
+ * Neither offer nor poll allocate or take locks. Capacity is rounded up to a power of two.
+ */
+final class MpscArrayQueue<E> {
+
+    private final int                     mask;
+    private final AtomicReferenceArray<E> elements;
+    private final AtomicLong              tail = new AtomicLong(0);  // Next slot to claim.
+    private final AtomicLong              head = new AtomicLong(0);  // Next slot to take.
+
+    public MpscArrayQueue(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) { size <<= 1; }
+        this.mask     = size - 1;
+        this.elements = new AtomicReferenceArray<>(size);
+    }
+
+    public int capacity() { return mask + 1; }
+
+    /** Adds an element, returns false if the queue is full. Safe to call from any thread. */
+    public boolean offer(E element) {
+        if (element == null) { throw new NullPointerException(); }
+        while (true) {
+            final long t = tail.get();
+            if (t - head.get() > mask) { return false; }  // Full.
+            if (tail.compareAndSet(t, t + 1)) {
+                // Volatile write, so that a consumer going to sleep either sees the element or
+                // is seen by the producer as sleeping (see TransmitQueue).
+                elements.set((int) t & mask, element);
+                return true;
+            }
+        }
+    }
+
+    /** Removes and returns the first element, or null if there is none. Only for the consumer. */
+    public E poll() {
+        final long h = head.get();
+        final int index = (int) h & mask;
+        final E element = elements.get(index);
+        if (element == null) { return null; }
+        elements.lazySet(index, null);
+        head.lazySet(h + 1);
+        return element;
+    }
+
+    /** Returns true if there is nothing to take. Only exact when called by the consumer. */
+    public boolean isEmpty() {
+        return elements.get((int) head.get() & mask) == null;
+    }
+
+    /** Returns the approximate number of elements, may be called from any thread. */
+    public int size() {
+        return (int) Math.max(0, Math.min(tail.get() - head.get(), capacity()));
+    }
+}
@@ -0,0 +1,111 @@
+package net.gcdc.geonetworking;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/** Read-only view of a payload: a range of bytes in an array that is shared, not copied.
+ *
+ * Received payload is copied out of the frame once, and after that {@link GeonetData} and
+ * {@link BtpPacket} share the same array. A copy is made only when asked for, with
+ * {@link #toByteArray()} or {@link #copyTo(byte[], int)}.
+ *
+ * The view has no methods to change the bytes, but the array behind it is not protected, so
+ * whoever created the view should not change the array afterwards.
+ */
+public final class PayloadView {
+    private static final PayloadView EMPTY = new PayloadView(new byte[0], 0, 0);
+
+    private final byte[] array;
+    private final int    offset;
+    private final int    length;
+
+    private PayloadView(byte[] array, int offset, int length) {
+        this.array  = array;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /** Returns a view of the whole array, without copying it. */
+    public static PayloadView of(byte[] array) {
+        return array.length == 0 ? EMPTY : new PayloadView(array, 0, array.length);
+    }
+
+    /** Returns a view of length bytes of the array starting at offset, without copying them. */
+    public static PayloadView of(byte[] array, int offset, int length) {
+        if (offset < 0 || length < 0 || offset + length > array.length) {
+            throw new IndexOutOfBoundsException("Range " + offset + "+" + length +
+                    " is out of array of length " + array.length);
+        }
+        return new PayloadView(array, offset, length);
+    }
+
+    public int length() { return length; }
+
+    public byte get(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("Index " + index + ", length " + length);
+        }
+        return array[offset + index];
+    }
+
+    /** Returns a view of a part of this payload, without copying it. */
+    public PayloadView slice(int from, int sliceLength) {
+        if (from < 0 || sliceLength < 0 || from + sliceLength > length) {
+            throw new IndexOutOfBoundsException("Range " + from + "+" + sliceLength +
+                    " is out of payload of length " + length);
+        }
+        return new PayloadView(array, offset + from, sliceLength);
+    }
+
+    /** Returns a read-only buffer over the payload, from position 0 to limit length. */
+    public ByteBuffer asReadOnlyBuffer() {
+        return ByteBuffer.wrap(array, offset, length).slice().asReadOnlyBuffer();
+    }
+
+    /** Writes the payload into the buffer at its position. */
+    public ByteBuffer putTo(ByteBuffer buffer) {
+        return buffer.put(array, offset, length);
+    }
+
+    /** Copies the payload into dst starting at dstOffset. */
+    public void copyTo(byte[] dst, int dstOffset) {
+        System.arraycopy(array, offset, dst, dstOffset, length);
+    }
+
+    /** Returns a copy of the payload. */
+    public byte[] toByteArray() {
+        return Arrays.copyOfRange(array, offset, offset + length);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = 1;
+        for (int i = offset; i < offset + length; i++) {
+            result = 31 * result + array[i];
+        }
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (obj == null)
+            return false;
+        if (getClass() != obj.getClass())
+            return false;
+        PayloadView other = (PayloadView) obj;
+        if (length != other.length)
+            return false;
+        for (int i = 0; i < length; i++) {
+            if (array[offset + i] != other.array[other.offset + i])
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "PayloadView[" + length + " bytes]";
+    }
+}
@@ -42,7 +42,7 @@ public final class Position {
     public double lattitudeDegrees() { return lattitudeDegrees; }
     public double longitudeDegrees() { return longitudeDegrees; }
 
-    private static double fromStoreUnit(int latOrLong) {
+    static double fromStoreUnit(int latOrLong) {
         return latOrLong * STORE_UNIT;
     }
 
@@ -0,0 +1,51 @@
+package net.gcdc.geonetworking;
+
+/** Packets recently seen from one source: the newest timestamp, the highest sequence number,
+ * and a bitmap of which of the {@link #SIZE} sequence numbers up to it have been seen.
+ *
+ * The standard (EN 302 636-4-1 V1.2.1, Annex A) keeps only the last timestamp and sequence
+ * number, and drops a packet that comes after a newer one. Then of two parallel broadcasts from
+ * the same source, the one that is forwarded slower is lost (see the note on duplicates in
+ * {@link GeonetStation}). With the bitmap, an older sequence number is accepted once, as long as
+ * it is within the window.
+ *
+ * A packet with a newer timestamp than all seen is never a duplicate: if its sequence number is
+ * not ahead of the window, the source has restarted or its sequence numbers wrapped around, and
+ * the window starts over. A sequence number behind the window is too old to tell, and is taken
+ * as a duplicate, as the standard does.
+ */
+final class SequenceWindow {
+
+    /** Number of sequence numbers in the window. */
+    final static int SIZE = 64;
+
+    private boolean isEmpty = true;
+    private int     lastTimestamp;  // Newest seen, TAI milliseconds mod 2^32.
+    private short   highest;        // Highest sequence number seen.
+    private long    seen;           // Bit i is set if (highest - i) was seen.
+
+    /** Marks the packet as seen.
+     *
+     * @return true if the packet was seen before, or is too old to tell */
+    synchronized boolean markSeen(int timestamp, short sequenceNumber) {
+        final int ahead = (short) (sequenceNumber - highest);  // Modulo 2^16.
+        final boolean isNewest = isEmpty || timestamp - lastTimestamp > 0;  // Modulo 2^32.
+        if (isNewest) { lastTimestamp = timestamp; }
+        if (isEmpty || ahead <= 0 && isNewest) {
+            isEmpty = false;
+            highest = sequenceNumber;
+            seen    = 1;
+            return false;
+        }
+        if (ahead > 0) {
+            seen    = ahead >= SIZE ? 1 : (seen << ahead) | 1;
+            highest = sequenceNumber;
+            return false;
+        }
+        if (-ahead >= SIZE) { return true; }
+        final long bit = 1L << -ahead;
+        if ((seen & bit) != 0) { return true; }
+        seen |= bit;
+        return false;
+    }
+}
@@ -0,0 +1,428 @@
+package net.gcdc.geonetworking;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** Single-producer single-consumer ring of frames in a memory-mapped file.
+ *
+ * One process writes frames into the ring and another one (or another thread) reads them. There
+ * are no locks and no system calls per frame, only reads and writes to shared memory.
+ *
+ * The protocol is simple enough to be implemented by a bridge in any language:
+ *
+ * <pre>
+ * Offset  Size  Field
+ *      0     4  magic, 0x474E5231 ("GNR1"), written last when the file is initialized
+ *      4     4  capacity of the data area in bytes, a power of two
+ *     64     8  head, total number of bytes read, written only by the consumer
+ *    128     8  tail, total number of bytes written, written only by the producer
+ *    192     4  waiting, 1 while the consumer sleeps on a signal (see below), 0 otherwise
+ *    256     -  data area, capacity bytes
+ * </pre>
+ *
+ * All fields are in the native byte order of the machine. Head and tail only grow, and are
+ * turned into an offset in the data area with {@code position & (capacity - 1)}. They and the
+ * waiting flag sit on separate cache lines, so that producer and consumer do not slow each
+ * other down.
+ *
+ * A record is a 4-byte length followed by the frame, padded to a multiple of 8 bytes, so a record
+ * never starts less than 8 bytes before the end of the data area. If a record does not fit
+ * between the tail and the end of the data area, the producer writes length -1 (a wrap marker)
+ * and continues at the start of the data area; the consumer skips to the start when it reads the
+ * marker.
+ *
+ * The producer writes the record first and the new tail after it; the consumer reads the frame
+ * first and writes the new head after it. There is a full memory fence before every write of a
+ * position and after every read of one, so the record is visible to the other side before the
+ * position that covers it. Positions are aligned, so they are read and written in one access. A
+ * bridge in C would use {@code __atomic_store_n(..., __ATOMIC_RELEASE)} and
+ * {@code __atomic_load_n(..., __ATOMIC_ACQUIRE)}.
+ *
+ * Java 7 has no fences for mapped memory, so the fence is a write to a volatile field, which
+ * HotSpot compiles to a full fence (a locked instruction on x86). It costs some 10 to 30 ns, two
+ * or three times per frame on each side, on top of the cache misses on the positions, which cost
+ * about as much; the ring is still well below a microsecond per frame.
+ *
+ * A consumer that finds the ring empty spins for a while, then yields, then sleeps for short
+ * periods (see {@link #await(int)}). To sleep longer without losing frames, the two sides can
+ * agree on a {@link Signal}, e.g. an eventfd, a pipe, or a datagram on a loopback port (see
+ * {@link DatagramSignal}), and use the waiting flag.
+ *
+ * Before sleeping, the consumer sets waiting to 1, then a full fence, reads the tail again, and
+ * sleeps only if the ring is still empty; it sets waiting back to 0 after it wakes up. After
+ * publishing a tail, the producer does a full fence, reads waiting, and signals the consumer if
+ * it is 1; the producer never writes waiting, so it signals every frame until the consumer is
+ * awake. Either the consumer sees the new tail, or the producer sees the flag, so a wakeup is
+ * never lost. Spurious wakeups are harmless, and the consumer still wakes up after
+ * {@link #MAX_SIGNAL_WAIT_MILLIS} in case the producer died. A producer that does not know about
+ * the flag ignores it, and the consumer then sleeps up to that time per frame, so both sides
+ * have to agree on using a signal.
+ *
+ * The side that creates the file initializes the header, holding an exclusive lock on the file
+ * ({@code fcntl} on Linux), as does the other side while it checks whether the file is new, so
+ * that only one of them initializes it even if they start at the same time. The magic is written
+ * last, after a full fence; a side that does not lock waits until the magic is there.
+ */
+public final class SharedMemoryRing {
+
+    private final static Logger logger = LoggerFactory.getLogger(SharedMemoryRing.class);
+
+    public static final int MAGIC = 0x474E5231;
+
+    /** Longest time a consumer sleeps on a {@link Signal} before it looks at the ring again. */
+    public static final long MAX_SIGNAL_WAIT_MILLIS = 100;
+
+    private static final int MAGIC_OFFSET    = 0;
+    private static final int CAPACITY_OFFSET = 4;
+    private static final int HEAD_OFFSET     = 64;
+    private static final int TAIL_OFFSET     = 128;
+    private static final int WAITING_OFFSET  = 192;
+    private static final int HEADER_LENGTH   = 256;
+    private static final int RECORD_HEADER   = 4;
+    private static final int WRAP            = -1;
+
+    private static final int SPINS  = 1000;
+    private static final int YIELDS = 100;
+    private static final long MAX_SLEEP_NANOS = 1_000_000;
+
+    /** Locks files of this process while they are mapped, a FileLock does not exclude other
+     * threads of the same process. */
+    private static final Object MAP_LOCK = new Object();
+
+    /** Written only for the fence, see the protocol above. */
+    private static volatile int initFence;
+
+    /** Wakes up a consumer that sleeps on an empty ring, see the protocol above.
+     *
+     * The producer side calls {@link #signal()}, the consumer side {@link #await(long)}, each on
+     * its own instance; the two instances talk over whatever the implementation uses. */
+    public interface Signal {
+        /** Wakes up the consumer. Must not block; a failure can be logged, it only delays the
+         * consumer by up to {@link SharedMemoryRing#MAX_SIGNAL_WAIT_MILLIS}. */
+        void signal();
+
+        /** Sleeps until signaled or until the timeout, whichever is first. Signals that came
+         * while nobody was sleeping may wake it up immediately. */
+        void await(long timeoutNanos) throws IOException, InterruptedException;
+    }
+
+    /** Signal between two threads of the same process. Pass the same instance to both sides. */
+    public static final class ThreadSignal implements Signal {
+        private volatile Thread  waiter;
+        private volatile boolean isSignaled = false;  // For a signal before the waiter parks.
+
+        @Override public void signal() {
+            isSignaled = true;
+            final Thread thread = waiter;
+            if (thread != null) { LockSupport.unpark(thread); }
+        }
+
+        @Override public void await(long timeoutNanos) throws InterruptedException {
+            waiter = Thread.currentThread();
+            if (!isSignaled) { LockSupport.parkNanos(this, timeoutNanos); }
+            isSignaled = false;
+            waiter = null;
+            if (Thread.interrupted()) { throw new InterruptedException(); }
+        }
+    }
+
+    /** Signal between processes, as a datagram of one byte to a UDP port of the consumer,
+     * usually on the loopback interface. The consumer side binds the port, the producer side
+     * sends to it. The content of the datagram does not matter. */
+    public static final class DatagramSignal implements Signal, Closeable {
+        private final DatagramChannel channel;
+        private final SocketAddress   consumer;  // Null on the consumer side.
+        private final Selector        selector;  // Null on the producer side.
+        private final ByteBuffer      buffer = ByteBuffer.allocateDirect(1);
+
+        private DatagramSignal(DatagramChannel channel, SocketAddress consumer, Selector selector) {
+            this.channel  = channel;
+            this.consumer = consumer;
+            this.selector = selector;
+        }
+
+        /** Returns the consumer side, which receives signals on the address. */
+        public static DatagramSignal consumer(InetSocketAddress address) throws IOException {
+            final DatagramChannel channel = DatagramChannel.open(StandardProtocolFamily.INET);
+            channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            channel.bind(address);
+            channel.configureBlocking(false);
+            final Selector selector = Selector.open();
+            channel.register(selector, SelectionKey.OP_READ);
+            return new DatagramSignal(channel, null, selector);
+        }
+
+        /** Returns the producer side, which sends signals to the consumer at the address. */
+        public static DatagramSignal producer(InetSocketAddress consumer) throws IOException {
+            final DatagramChannel channel = DatagramChannel.open(StandardProtocolFamily.INET);
+            channel.configureBlocking(false);
+            return new DatagramSignal(channel, consumer, null);
+        }
+
+        /** Returns the local address, where the consumer side receives signals. */
+        public SocketAddress localAddress() throws IOException {
+            return channel.getLocalAddress();
+        }
+
+        @Override public synchronized void signal() {
+            try {
+                buffer.clear();
+                channel.send(buffer, consumer);  // Dropped if the socket buffer is full.
+            } catch (IOException e) {
+                logger.warn("Can't signal the consumer at {}", consumer, e);
+            }
+        }
+
+        @Override public void await(long timeoutNanos) throws IOException, InterruptedException {
+            final long millis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(timeoutNanos));
+            if (selector.select(millis) > 0) {
+                selector.selectedKeys().clear();
+                do { buffer.clear(); } while (channel.receive(buffer) != null);  // Coalesce.
+            }
+            if (Thread.interrupted()) { throw new InterruptedException(); }
+        }
+
+        @Override public void close() throws IOException {
+            if (selector != null) { selector.close(); }
+            channel.close();
+        }
+    }
+
+    private final MappedByteBuffer memory;
+    private final ByteBuffer       view;  // For bulk copies of frames, used only by this side.
+    private final int              capacity;
+    private final int              mask;
+    private final Signal           signal;  // Null if the consumer only polls.
+
+    // Each side keeps its own position and a cached copy of the other side's position.
+    private long     ownPosition;
+    private long     otherPosition;
+    private volatile int fence;  // Written only for the fence, see the protocol above.
+
+    private SharedMemoryRing(MappedByteBuffer memory, int capacity, boolean isProducer,
+            Signal signal) {
+        this.memory   = memory;
+        this.view     = memory.duplicate();
+        this.capacity = capacity;
+        this.mask     = capacity - 1;
+        this.signal   = signal;
+        this.ownPosition   = readPosition(isProducer ? TAIL_OFFSET : HEAD_OFFSET);
+        this.otherPosition = readPosition(isProducer ? HEAD_OFFSET : TAIL_OFFSET);
+    }
+
+    /** Maps the file as the producer side of the ring, creating the file if needed. */
+    public static SharedMemoryRing producer(File file, int capacity) throws IOException {
+        return producer(file, capacity, null);
+    }
+
+    /** Maps the file as the producer side of the ring, creating the file if needed, and signals
+     * the consumer when it waits for a frame.
+     *
+     * @param signal producer side of the signal, or null if the consumer only polls */
+    public static SharedMemoryRing producer(File file, int capacity, Signal signal)
+            throws IOException {
+        return new SharedMemoryRing(map(file, capacity), capacity, true, signal);
+    }
+
+    /** Maps the file as the consumer side of the ring, creating the file if needed. */
+    public static SharedMemoryRing consumer(File file, int capacity) throws IOException {
+        return consumer(file, capacity, null);
+    }
+
+    /** Maps the file as the consumer side of the ring, creating the file if needed, and lets
+     * {@link #awaitFrame(int)} sleep on the signal.
+     *
+     * @param signal consumer side of the signal, or null to only poll */
+    public static SharedMemoryRing consumer(File file, int capacity, Signal signal)
+            throws IOException {
+        return new SharedMemoryRing(map(file, capacity), capacity, false, signal);
+    }
+
+    private static MappedByteBuffer map(File file, int capacity) throws IOException {
+        if (capacity < 64 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two, at least 64: "
+                    + capacity);
+        }
+        synchronized (MAP_LOCK) {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+                 FileLock lock = raf.getChannel().lock()) {
+                final boolean isNew = raf.length() == 0;
+                MappedByteBuffer memory = raf.getChannel().map(
+                        FileChannel.MapMode.READ_WRITE, 0, HEADER_LENGTH + capacity);
+                memory.order(ByteOrder.nativeOrder());
+                if (isNew) {
+                    memory.putInt(CAPACITY_OFFSET, capacity);
+                    memory.putLong(HEAD_OFFSET, 0);
+                    memory.putLong(TAIL_OFFSET, 0);
+                    memory.putInt(WAITING_OFFSET, 0);
+                    initFence = 0;
+                    memory.putInt(MAGIC_OFFSET, MAGIC);
+                } else {
+                    waitForMagic(memory, file);
+                    if (memory.getInt(CAPACITY_OFFSET) != capacity) {
+                        throw new IOException("Ring " + file + " has capacity " +
+                                memory.getInt(CAPACITY_OFFSET) + ", expected " + capacity);
+                    }
+                }
+                return memory;  // Stays mapped after the file is closed.
+            }
+        }
+    }
+
+    private static void waitForMagic(MappedByteBuffer memory, File file) throws IOException {
+        for (int i = 0; i < 1000 && magic(memory) != MAGIC; i++) {
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        if (magic(memory) != MAGIC) {
+            throw new IOException("File " + file + " is not a frame ring");
+        }
+    }
+
+    /** Reads the magic, then a full fence, so that the header is read after it. */
+    private static int magic(MappedByteBuffer memory) {
+        final int magic = memory.getInt(MAGIC_OFFSET);
+        initFence = 0;
+        return magic;
+    }
+
+    /** Returns the largest frame that fits into the ring. */
+    public int maxFrameLength() {
+        return capacity / 2 - RECORD_HEADER;
+    }
+
+    private static int align(int length) {
+        return (length + 7) & ~7;
+    }
+
+    /** Writes the frame between position and limit into the ring. Producer only.
+     *
+     * @return false if there is not enough free space, the frame is not written then */
+    public boolean offer(ByteBuffer frame) {
+        final int length = frame.remaining();
+        if (length > maxFrameLength()) {
+            throw new IllegalArgumentException("Frame of " + length + " bytes is longer than "
+                    + maxFrameLength());
+        }
+        final int recordLength = align(RECORD_HEADER + length);
+        final int offset = (int) ownPosition & mask;
+        final int untilEnd = capacity - offset;
+        final int needed = recordLength <= untilEnd ? recordLength : untilEnd + recordLength;
+        if (ownPosition + needed - otherPosition > capacity) {
+            otherPosition = readPosition(HEAD_OFFSET);
+            if (ownPosition + needed - otherPosition > capacity) { return false; }
+        }
+        if (recordLength > untilEnd) {
+            memory.putInt(HEADER_LENGTH + offset, WRAP);
+            ownPosition += untilEnd;
+        }
+        final int start = HEADER_LENGTH + ((int) ownPosition & mask);
+        memory.putInt(start, length);
+        view.limit(start + RECORD_HEADER + length).position(start + RECORD_HEADER);
+        view.put(frame);
+        ownPosition += recordLength;
+        writePosition(TAIL_OFFSET, ownPosition);
+        if (signal != null) {
+            fence = 0;  // The tail before the flag, see the protocol above.
+            if (memory.getInt(WAITING_OFFSET) == 1) { signal.signal(); }
+        }
+        return true;
+    }
+
+    /** Reads the next frame into the buffer at its position. Consumer only.
+     *
+     * Frames longer than the space in the buffer are truncated.
+     *
+     * @return length of the frame, or -1 if the ring is empty */
+    public int poll(ByteBuffer buffer) {
+        if (ownPosition == otherPosition) {
+            otherPosition = readPosition(TAIL_OFFSET);
+            if (ownPosition == otherPosition) { return -1; }
+        }
+        int start = HEADER_LENGTH + ((int) ownPosition & mask);
+        int length = memory.getInt(start);
+        if (length == WRAP) {
+            ownPosition += capacity - ((int) ownPosition & mask);
+            start = HEADER_LENGTH;
+            length = memory.getInt(start);
+        }
+        final int copied = Math.min(length, buffer.remaining());
+        view.limit(start + RECORD_HEADER + copied).position(start + RECORD_HEADER);
+        buffer.put(view);
+        ownPosition += align(RECORD_HEADER + length);
+        writePosition(HEAD_OFFSET, ownPosition);
+        return copied;
+    }
+
+    /** Returns true if the consumer has nothing to read. */
+    public boolean isEmpty() {
+        return ownPosition == readPosition(TAIL_OFFSET);
+    }
+
+    /** Waits for a frame, as the n-th consecutive wait. Consumer only.
+     *
+     * Without a signal, the same as {@link #await(int)}. With one, after spinning and yielding,
+     * sleeps on the signal until the producer writes a frame. */
+    public void awaitFrame(int n) throws IOException, InterruptedException {
+        if (signal == null || n < SPINS + YIELDS) {
+            await(n);
+            return;
+        }
+        memory.putInt(WAITING_OFFSET, 1);
+        fence = 0;  // The flag before the tail, see the protocol above.
+        try {
+            if (isEmpty()) { signal.await(TimeUnit.MILLISECONDS.toNanos(MAX_SIGNAL_WAIT_MILLIS)); }
+        } finally {
+            memory.putInt(WAITING_OFFSET, 0);
+        }
+    }
+
+    /** Waits a bit for the other side, as the n-th consecutive wait: spins first, then yields,
+     * then sleeps, up to a millisecond. Returns immediately if the thread is interrupted. */
+    public static void await(int n) {
+        if (n < SPINS) {
+            return;
+        } else if (n < SPINS + YIELDS) {
+            Thread.yield();
+        } else {
+            final long sleep = Math.min(MAX_SLEEP_NANOS, 1000L << Math.min(10, n - SPINS - YIELDS));
+            LockSupport.parkNanos(sleep);
+        }
+    }
+
+    /** Reads a position, then a full fence: reads of the record can't move before it. */
+    private long readPosition(int offset) {
+        final long position = memory.getLong(offset);
+        fence = 0;
+        return position;
+    }
+
+    /** Writes a position after a full fence: accesses to the record can't move after it. */
+    private void writePosition(int offset, long position) {
+        fence = 0;
+        memory.putLong(offset, position);
+    }
+}
@@ -25,6 +25,18 @@ public class ShortPositionVector {
     public Instant  timestamp() { return timestamp; }
     public Position position()  { return position; }
 
+    /** Short Position Vector with the fields of the Long one. */
+    public static ShortPositionVector of(Address address, LongPositionVector position) {
+        return new ShortPositionVector(address, position.timestamp(), position.position());
+    }
+
+    public ByteBuffer putTo(ByteBuffer buffer) {
+        address.putTo(buffer);
+        buffer.putInt((int) LongPositionVector.instantToTaiMillisSince2004Mod32(timestamp));
+        position.putTo(buffer);
+        return buffer;
+    }
+
     public static ShortPositionVector getFrom(ByteBuffer buffer) {
         Address  address   = Address.getFrom(buffer);
         Instant  timestamp = LongPositionVector.millisMod32ToInstant(buffer.getInt());
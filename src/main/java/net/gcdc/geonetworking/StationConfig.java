@@ -51,6 +51,51 @@ public class StationConfig {
     /** Default GeoBroadcast forwarding algorithm: 0 unspecified, 1 simple, 2 cbf, 3 advanced. */
     private  int itsGnGeoBroadcastForwardingAlgorithm;
 
+    /** Size of the broadcast forwarding packet buffer in kilobytes, for Greedy Forwarding of
+     * packets with store-carry-forward traffic class; 0 to broadcast them instead. */
+    private  int itsGnBcForwardingPacketBufferSize;
+
+    /** Maximum number of retransmissions of a Location Service Request. */
+    private  int itsGnLocationServiceMaxRetrans;
+
+    /** Duration of the Location Service retransmit timer in ms. */
+    private  int itsGnLocationServiceRetransmitTimer;
+
+    /** Size of the Location Service packet buffer in kilobytes. */
+    private  int itsGnLocationServicePacketBufferSize;
+
+    // Parameters below are implementation-specific and are not a part of the standard.
+
+    /** Maximum number of frames taken from the link layer per wakeup of the receiving thread. */
+    private  int receiveBatchSize;
+
+    /** Number of pooled frame buffers for outgoing and forwarded frames. */
+    private  int frameBufferPoolSize;
+
+    /** Capacity of the queue in front of the link layer, 0 to send from the calling thread. */
+    private  int transmitQueueCapacity;
+
+    /** Number of threads that handle received frames, sharded by source GN address, 0 to handle
+     * them on the receiving thread. With workers, listeners are called from several threads. */
+    private  int receiveWorkers;
+
+    /** Frames waiting for each receive worker, more are dropped. */
+    private  int receiveWorkerQueueCapacity;
+
+    /** Indications waiting for {@link GeonetStation#receive()}. */
+    private  int upwardQueueCapacity;
+
+    /** What to do with indications when nobody takes them with {@link GeonetStation#receive()}
+     * fast enough and the upward queue is full. */
+    private  UpwardQueue.OverflowPolicy upwardQueueOverflowPolicy;
+
+    /** Indications waiting for each listener, 0 to call listeners on the receiving thread.
+     * With a queue, listeners are called from a separate pool, see {@link AsyncGeonetDataListener}. */
+    private  int listenerQueueCapacity;
+
+    /** How duplicates of multi-hop packets are detected, per packet or per source. */
+    private  DuplicateDetector.Mode duplicateDetection;
+
     public long getItsGnLoacalGnAddr() {
         return itsGnLoacalGnAddr;
     }
@@ -69,6 +114,19 @@ public class StationConfig {
         setItsGnGeoBroadcastCbfMaxTime(100);
         setItsGnLifetimeLocTE(20);
         setItsGnGeoBroadcastForwardingAlgorithm(0);
+        setItsGnBcForwardingPacketBufferSize(1024);
+        setItsGnLocationServiceMaxRetrans(10);
+        setItsGnLocationServiceRetransmitTimer(1000);
+        setItsGnLocationServicePacketBufferSize(1024);
+        setReceiveBatchSize(1);
+        setFrameBufferPoolSize(64);
+        setTransmitQueueCapacity(0);
+        setReceiveWorkers(0);
+        setReceiveWorkerQueueCapacity(256);
+        setUpwardQueueCapacity(1024);
+        setUpwardQueueOverflowPolicy(UpwardQueue.OverflowPolicy.DROP_OLDEST);
+        setListenerQueueCapacity(0);
+        setDuplicateDetection(DuplicateDetector.Mode.PER_PACKET);
     }
 
 
@@ -172,4 +230,108 @@ public class StationConfig {
     public void setItsGnGeoBroadcastForwardingAlgorithm(int itsGnGeoBroadcastForwardingAlgorithm) {
         this.itsGnGeoBroadcastForwardingAlgorithm = itsGnGeoBroadcastForwardingAlgorithm;
     }
+
+    public int getItsGnBcForwardingPacketBufferSize() {
+        return itsGnBcForwardingPacketBufferSize;
+    }
+
+    public void setItsGnBcForwardingPacketBufferSize(int itsGnBcForwardingPacketBufferSize) {
+        this.itsGnBcForwardingPacketBufferSize = itsGnBcForwardingPacketBufferSize;
+    }
+
+    public int getItsGnLocationServiceMaxRetrans() {
+        return itsGnLocationServiceMaxRetrans;
+    }
+
+    public void setItsGnLocationServiceMaxRetrans(int itsGnLocationServiceMaxRetrans) {
+        this.itsGnLocationServiceMaxRetrans = itsGnLocationServiceMaxRetrans;
+    }
+
+    public int getItsGnLocationServiceRetransmitTimer() {
+        return itsGnLocationServiceRetransmitTimer;
+    }
+
+    public void setItsGnLocationServiceRetransmitTimer(int itsGnLocationServiceRetransmitTimer) {
+        this.itsGnLocationServiceRetransmitTimer = itsGnLocationServiceRetransmitTimer;
+    }
+
+    public int getItsGnLocationServicePacketBufferSize() {
+        return itsGnLocationServicePacketBufferSize;
+    }
+
+    public void setItsGnLocationServicePacketBufferSize(int itsGnLocationServicePacketBufferSize) {
+        this.itsGnLocationServicePacketBufferSize = itsGnLocationServicePacketBufferSize;
+    }
+
+    public int getReceiveBatchSize() {
+        return receiveBatchSize;
+    }
+
+    public void setReceiveBatchSize(int receiveBatchSize) {
+        this.receiveBatchSize = receiveBatchSize;
+    }
+
+    public int getFrameBufferPoolSize() {
+        return frameBufferPoolSize;
+    }
+
+    public void setFrameBufferPoolSize(int frameBufferPoolSize) {
+        this.frameBufferPoolSize = frameBufferPoolSize;
+    }
+
+    public int getTransmitQueueCapacity() {
+        return transmitQueueCapacity;
+    }
+
+    public void setTransmitQueueCapacity(int transmitQueueCapacity) {
+        this.transmitQueueCapacity = transmitQueueCapacity;
+    }
+
+    public int getReceiveWorkers() {
+        return receiveWorkers;
+    }
+
+    public void setReceiveWorkers(int receiveWorkers) {
+        this.receiveWorkers = receiveWorkers;
+    }
+
+    public int getReceiveWorkerQueueCapacity() {
+        return receiveWorkerQueueCapacity;
+    }
+
+    public void setReceiveWorkerQueueCapacity(int receiveWorkerQueueCapacity) {
+        this.receiveWorkerQueueCapacity = receiveWorkerQueueCapacity;
+    }
+
+    public int getUpwardQueueCapacity() {
+        return upwardQueueCapacity;
+    }
+
+    public void setUpwardQueueCapacity(int upwardQueueCapacity) {
+        this.upwardQueueCapacity = upwardQueueCapacity;
+    }
+
+    public UpwardQueue.OverflowPolicy getUpwardQueueOverflowPolicy() {
+        return upwardQueueOverflowPolicy;
+    }
+
+    public void setUpwardQueueOverflowPolicy(UpwardQueue.OverflowPolicy upwardQueueOverflowPolicy) {
+        this.upwardQueueOverflowPolicy = upwardQueueOverflowPolicy;
+    }
+
+    public int getListenerQueueCapacity() {
+        return listenerQueueCapacity;
+    }
+
+    public void setListenerQueueCapacity(int listenerQueueCapacity) {
+        this.listenerQueueCapacity = listenerQueueCapacity;
+    }
+
+    public DuplicateDetector.Mode getDuplicateDetection() {
+        return duplicateDetection;
+    }
+
+    public void setDuplicateDetection(DuplicateDetector.Mode duplicateDetection) {
+        this.duplicateDetection = duplicateDetection;
+    }
 }
@@ -0,0 +1,145 @@
+package net.gcdc.geonetworking;
+
+import java.util.Collection;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** Hosts many stations in one process on shared threads, e.g. for emulation of RSU farms and
+ * fleets.
+ *
+ * A station on its own has a receiving thread and a timer thread. Stations started here share
+ * one timer service for all their timers (a {@link HashedWheelTimer}, a scheduler of a few
+ * threads, or a {@link VirtualTimeScheduler}), and their receiving loops run on a worker executor, which uses
+ * virtual threads if Java has them (Java 21 and later) and a pool of daemon threads otherwise.
+ * Listeners wrapped by {@link StationConfig#getListenerQueueCapacity()} run on the same worker
+ * executor.
+ *
+ * Stations share only threads: each has its own location table, duplicate detection, queues
+ * and configuration. Receive workers and transmit queues, if configured, still have their own
+ * threads.
+ */
+public final class StationRuntime implements AutoCloseable {
+
+    private final static Logger logger = LoggerFactory.getLogger(StationRuntime.class);
+
+    private final ScheduledExecutorService  scheduler;  // Behind the timer service, or null.
+    private final TimerService              timer;
+    private final boolean                   isTimerOwned;
+    private final ExecutorService           workers;
+    private final boolean                   isVirtual;
+    private final Collection<GeonetStation> stations = new CopyOnWriteArrayList<>();
+
+    /** Creates a runtime with all timers on one {@link HashedWheelTimer}. */
+    public StationRuntime() {
+        this(null, new HashedWheelTimer(HashedWheelTimer.DEFAULT_TICK_NANOS,
+                TimeUnit.NANOSECONDS, "geonet-timer"), true);
+        logger.info("Station runtime with wheel timer and {} threads for stations",
+                isVirtual ? "virtual" : "platform");
+    }
+
+    /** Creates a runtime with timers on a scheduled thread pool. */
+    public StationRuntime(int schedulerThreads) {
+        this(Executors.newScheduledThreadPool(schedulerThreads, daemonThreads("geonet-timer-")),
+                null, true);
+        logger.info("Station runtime with {} timer threads and {} threads for stations",
+                schedulerThreads, isVirtual ? "virtual" : "platform");
+    }
+
+    /** Creates a runtime with the timer service, e.g. a {@link VirtualTimeScheduler}, which the
+     * caller closes after the runtime. */
+    public StationRuntime(TimerService timer) {
+        this(null, timer, false);
+    }
+
+    private StationRuntime(ScheduledExecutorService scheduler, TimerService timer,
+            boolean isTimerOwned) {
+        this.scheduler    = scheduler;
+        this.timer        = timer != null ? timer : ExecutorTimerService.on(scheduler);
+        this.isTimerOwned = isTimerOwned;
+        ExecutorService virtual = virtualThreadExecutor();
+        this.isVirtual = virtual != null;
+        this.workers = isVirtual ? virtual : Executors.newCachedThreadPool(
+                daemonThreads("geonet-station-"));
+    }
+
+    /** Returns Executors.newVirtualThreadPerTaskExecutor(), or null if this Java does not have it. */
+    private static ExecutorService virtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    private static ThreadFactory daemonThreads(final String prefix) {
+        return new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger(0);
+            @Override public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, prefix + count.getAndIncrement());
+                t.setDaemon(true);
+                return t;
+            }
+        };
+    }
+
+    /** Creates a station on the shared executors, starts its receiving loop and beacon. */
+    public GeonetStation start(StationConfig config, LinkLayer linkLayer,
+            PositionProvider positionProvider, MacAddress senderMac) {
+        final GeonetStation station = new GeonetStation(config, linkLayer, positionProvider,
+                senderMac, timer, workers);
+        stations.add(station);
+        workers.execute(new Runnable() {
+            @Override public void run() {
+                try {
+                    station.run();
+                } finally {
+                    stations.remove(station);
+                }
+            }
+        });
+        station.startBecon();
+        return station;
+    }
+
+    public GeonetStation start(StationConfig config, LinkLayer linkLayer,
+            PositionProvider positionProvider) {
+        return start(config, linkLayer, positionProvider, new MacAddress(0));
+    }
+
+    /** Like {@link BtpSocket#on(StationConfig, LinkLayer, PositionProvider)}, on this runtime. */
+    public BtpSocket socket(StationConfig config, LinkLayer linkLayer,
+            PositionProvider positionProvider) {
+        return BtpSocket.on(start(config, linkLayer, positionProvider));
+    }
+
+    /** Returns the number of stations whose receiving loop is running. */
+    public int stationCount() { return stations.size(); }
+
+    public boolean usesVirtualThreads() { return isVirtual; }
+
+    /** Closes all stations, then stops the shared threads. */
+    @Override
+    public void close() {
+        for (GeonetStation station : stations) {
+            station.close();
+        }
+        if (isTimerOwned) { timer.close(); }
+        if (scheduler != null) { scheduler.shutdownNow(); }
+        workers.shutdown();
+        try {
+            if (!workers.awaitTermination(1, TimeUnit.SECONDS)) { workers.shutdownNow(); }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            workers.shutdownNow();
+        }
+    }
+}
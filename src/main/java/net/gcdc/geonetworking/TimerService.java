@@ -0,0 +1,33 @@
+package net.gcdc.geonetworking;
+
+import java.util.concurrent.TimeUnit;
+
+import org.threeten.bp.Clock;
+
+/** Clock and one-shot timers of a station: beacons, contention-based forwarding, duplicate
+ * detection and location table expiry.
+ *
+ * Delays are measured by {@link #clock()}, so a station on a {@link VirtualTimeScheduler} runs
+ * in virtual time, and a station on an {@link ExecutorTimerService} in real time.
+ */
+public interface TimerService extends AutoCloseable {
+
+    /** Handle of a scheduled task. */
+    public static interface Timeout {
+        /** Cancels the task.
+         *
+         * @return true if the task will not run, false if it has run, is running or was
+         *         cancelled before */
+        boolean cancel();
+    }
+
+    /** Runs the task once, after the delay. */
+    Timeout schedule(Runnable task, long delay, TimeUnit unit);
+
+    /** Returns the clock of this timer service, for time stamps. */
+    Clock clock();
+
+    /** Cancels all tasks and stops the threads of this timer service, if it has any. */
+    @Override
+    void close();
+}
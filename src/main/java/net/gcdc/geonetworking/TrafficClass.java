@@ -48,6 +48,11 @@ public final class TrafficClass {
         return code;
     }
 
+    /** Returns true if packets of this class may be buffered until a forwarder is found. */
+    public boolean isStoreCarryForward() {
+        return (code & 0x80) != 0;
+    }
+
     public static TrafficClass fromByte(byte code) {
         return new TrafficClass(code);
     }
@@ -0,0 +1,124 @@
+package net.gcdc.geonetworking;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** Transmit stage between a station and its link layer: frames are queued by any thread and sent
+ * by one writer thread.
+ *
+ * Application threads (via {@link BtpSocket#send}), the beacon and the forwarding timers all send
+ * frames. With the queue, none of them waits for the link layer, and the link layer is only ever
+ * called from one thread. The writer sends everything that was queued since its last wakeup, and
+ * sleeps when the queue is empty.
+ *
+ * A frame is retained when queued and released after it is sent. When the queue is full, the
+ * frame is dropped and counted in {@link #dropped()}, the sender is never blocked.
+ */
+public final class TransmitQueue implements AutoCloseable {
+
+    private final static Logger logger = LoggerFactory.getLogger(TransmitQueue.class);
+
+    private final ByteBufferLinkLayer         linkLayer;
+    private final MpscArrayQueue<FrameBuffer> queue;
+    private final Thread                      writer;
+    private final AtomicLong                  sent    = new AtomicLong(0);
+    private final AtomicLong                  dropped = new AtomicLong(0);
+    private volatile boolean                  isWriterParked = false;
+    private volatile boolean                  isClosed       = false;
+
+    public TransmitQueue(ByteBufferLinkLayer linkLayer, int capacity) {
+        this.linkLayer = linkLayer;
+        this.queue     = new MpscArrayQueue<>(capacity);
+        this.writer    = new Thread(new Runnable() {
+            @Override public void run() { writeLoop(); }
+        }, "geonet-transmit");
+        this.writer.setDaemon(true);
+    }
+
+    public TransmitQueue start() {
+        writer.start();
+        return this;
+    }
+
+    /** Queues the frame for sending, the caller keeps its own reference.
+     *
+     * @return false if the frame was dropped because the queue is full or closed */
+    public boolean offer(FrameBuffer frame) {
+        if (isClosed) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        frame.retain();
+        if (!queue.offer(frame)) {
+            frame.release();
+            dropped.incrementAndGet();
+            logger.debug("Transmit queue is full, dropping a frame");
+            return false;
+        }
+        if (isWriterParked) { LockSupport.unpark(writer); }
+        return true;
+    }
+
+    private void writeLoop() {
+        while (!isClosed) {
+            FrameBuffer frame = queue.poll();
+            if (frame == null) {
+                isWriterParked = true;
+                if (queue.isEmpty() && !isClosed) { LockSupport.park(this); }
+                isWriterParked = false;
+                continue;
+            }
+            try {
+                ByteBuffer buffer = frame.buffer();
+                buffer.rewind();
+                linkLayer.send(buffer);
+                sent.incrementAndGet();
+            } catch (ClosedChannelException e) {
+                logger.info("Link layer is closed, stopping transmit queue");
+                isClosed = true;
+            } catch (IOException e) {
+                logger.error("Exception in sending a queued frame", e);
+            } finally {
+                frame.release();
+            }
+        }
+        drop();
+    }
+
+    /** Releases the frames that will not be sent anymore. */
+    private void drop() {
+        FrameBuffer frame = queue.poll();
+        while (frame != null) {
+            frame.release();
+            dropped.incrementAndGet();
+            frame = queue.poll();
+        }
+    }
+
+    /** Returns the number of frames waiting to be sent. */
+    public int size() { return queue.size(); }
+
+    /** Returns the number of frames handed to the link layer. */
+    public long sent() { return sent.get(); }
+
+    /** Returns the number of frames dropped because the queue was full or closed. */
+    public long dropped() { return dropped.get(); }
+
+    /** Stops the writer thread, frames still in the queue are not sent. */
+    @Override
+    public void close() {
+        isClosed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -9,8 +9,10 @@ public enum UpperProtocolType {
     private UpperProtocolType(int value) { this.value = value; }
     public  int value()           { return value;       }
 
+    private static final UpperProtocolType[] byCode = UpperProtocolType.values();
+
     public static UpperProtocolType fromCode(int code) {
-        for (UpperProtocolType h: UpperProtocolType.values()) { if (h.value() == code) { return h; } }
+        for (UpperProtocolType h: byCode) { if (h.value() == code) { return h; } }
         throw new IllegalArgumentException("Can't recognize upper protocol: " + code);
     }
 }
\ No newline at end of file
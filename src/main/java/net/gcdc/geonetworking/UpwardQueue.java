@@ -0,0 +1,180 @@
+package net.gcdc.geonetworking;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/** Bounded queue of indications to upper layer, between the receiving thread (or receive workers)
+ * and {@link GeonetStation#receive()}.
+ *
+ * Indications are kept in a ring over a preallocated array, so adding one does not allocate.
+ * What happens when the queue is full is decided by the {@link OverflowPolicy}; every put into
+ * a full queue is counted in {@link #overflows()}, and every indication lost to it in
+ * {@link #dropped()}.
+ */
+public final class UpwardQueue {
+
+    public enum OverflowPolicy {
+        /** Wait for the consumer. Stalls receiving, and eventually makes the link layer drop. */
+        BLOCK,
+        /** Drop the oldest indication in the queue, to make room for the new one. */
+        DROP_OLDEST,
+        /** Drop the new indication. */
+        DROP_NEWEST,
+        /** Drop the oldest indication of the lowest priority (highest traffic class ID), which is
+         * the new one if nothing in the queue has lower priority. Indications without traffic
+         * class have the highest priority. */
+        DROP_BY_TRAFFIC_CLASS,
+    }
+
+    private final GeonetData[]   ring;
+    private final OverflowPolicy policy;
+    private final ReentrantLock  lock     = new ReentrantLock();
+    private final Condition      notEmpty = lock.newCondition();
+    private final Condition      notFull  = lock.newCondition();
+    private final AtomicLong     overflows = new AtomicLong(0);
+    private final AtomicLong     dropped   = new AtomicLong(0);
+    private int head = 0;  // Index of the oldest indication.
+    private int size = 0;
+
+    public UpwardQueue(int capacity, OverflowPolicy policy) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.ring   = new GeonetData[capacity];
+        this.policy = policy;
+    }
+
+    /** Adds the indication, or handles overflow according to the policy.
+     *
+     * @throws InterruptedException if interrupted while waiting with {@link OverflowPolicy#BLOCK} */
+    public void put(GeonetData indication) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            add(indication);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Adds all indications in order, taking the lock once. */
+    public void putAll(List<GeonetData> indications) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            for (GeonetData indication : indications) {
+                add(indication);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Adds one indication, with the lock held. */
+    private void add(GeonetData indication) throws InterruptedException {
+        if (size == ring.length) {
+            overflows.incrementAndGet();
+            switch (policy) {
+                case BLOCK:
+                    while (size == ring.length) { notFull.await(); }
+                    break;
+                case DROP_OLDEST:
+                    removeAt(0);
+                    dropped.incrementAndGet();
+                    break;
+                case DROP_NEWEST:
+                    dropped.incrementAndGet();
+                    return;
+                case DROP_BY_TRAFFIC_CLASS: {
+                    int victim = -1;  // The new one.
+                    int victimTcId = trafficClassId(indication);
+                    for (int i = 0; i < size; i++) {
+                        final int tcId = trafficClassId(ring[index(i)]);
+                        if (tcId > victimTcId) { victim = i; victimTcId = tcId; }
+                    }
+                    dropped.incrementAndGet();
+                    if (victim < 0) { return; }
+                    removeAt(victim);
+                    break;
+                }
+            }
+        }
+        ring[index(size)] = indication;
+        size++;
+        notEmpty.signal();
+    }
+
+    /** Returns the traffic class ID, lower is more important (ETSI EN 302 636-4-1). */
+    private static int trafficClassId(GeonetData indication) {
+        return indication.trafficClass.isPresent() ?
+                indication.trafficClass.get().asByte() & 0b0011_1111 : 0;
+    }
+
+    /** Returns array index of the i-th oldest indication. */
+    private int index(int i) {
+        final int index = head + i;
+        return index < ring.length ? index : index - ring.length;
+    }
+
+    /** Removes the i-th oldest indication and closes the gap, with the lock held. */
+    private void removeAt(int i) {
+        for (int j = i; j > 0; j--) {  // Shift older ones one step towards the newer end.
+            ring[index(j)] = ring[index(j - 1)];
+        }
+        ring[head] = null;
+        head = index(1);
+        size--;
+    }
+
+    /** Removes and returns the oldest indication, waiting if the queue is empty. */
+    public GeonetData take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (size == 0) { notEmpty.await(); }
+            final GeonetData indication = ring[head];
+            removeAt(0);
+            notFull.signal();
+            return indication;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Removes and returns the oldest indication, or null if none came within the timeout. */
+    public GeonetData poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (size == 0) {
+                if (nanos <= 0) { return null; }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            final GeonetData indication = ring[head];
+            removeAt(0);
+            notFull.signal();
+            return indication;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int capacity() { return ring.length; }
+
+    public OverflowPolicy policy() { return policy; }
+
+    /** Returns the number of indications that came to a full queue. */
+    public long overflows() { return overflows.get(); }
+
+    /** Returns the number of indications dropped because the queue was full. */
+    public long dropped() { return dropped.get(); }
+}
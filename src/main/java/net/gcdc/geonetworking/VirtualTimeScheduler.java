@@ -0,0 +1,136 @@
+package net.gcdc.geonetworking;
+
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.threeten.bp.Clock;
+import org.threeten.bp.Instant;
+import org.threeten.bp.ZoneId;
+import org.threeten.bp.ZoneOffset;
+
+/** Timer service in virtual time, for discrete-event simulation of stations.
+ *
+ * Time stands still until the test (or simulator) advances it with {@link #advanceBy} or
+ * {@link #advanceTo}. Advancing runs the tasks that became due, in the order of their due time
+ * (and of scheduling, for the same time), on the calling thread, with the clock set to the due
+ * time of each task. Ten minutes of beacons and forwarding timers thus take as long as the
+ * tasks themselves.
+ *
+ * Tasks can be scheduled from any thread. For fully deterministic runs, stations should also
+ * receive on the thread that advances time, see {@link GeonetStation#poll()}.
+ */
+public final class VirtualTimeScheduler implements TimerService {
+
+    private final PriorityQueue<Task> queue = new PriorityQueue<>();  // Guarded by this.
+    private long                      sequence = 0;                    // Guarded by this.
+    private volatile long             nowNanos;   // Since epoch.
+    private volatile boolean          isClosed = false;
+    private final Clock               clock;
+
+    private final class Task implements Timeout, Comparable<Task> {
+        private final static int PENDING = 0, CANCELLED = 1, STARTED = 2;
+        private final Runnable      runnable;
+        private final long          dueNanos;
+        private final long          order;
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+
+        Task(Runnable runnable, long dueNanos, long order) {
+            this.runnable = runnable;
+            this.dueNanos = dueNanos;
+            this.order    = order;
+        }
+
+        @Override public boolean cancel() {
+            if (!state.compareAndSet(PENDING, CANCELLED)) { return false; }
+            synchronized (VirtualTimeScheduler.this) { queue.remove(this); }
+            return true;
+        }
+
+        @Override public int compareTo(Task other) {
+            return dueNanos != other.dueNanos ? (dueNanos < other.dueNanos ? -1 : 1) :
+                    order < other.order ? -1 : (order == other.order ? 0 : 1);
+        }
+    }
+
+    private final class VirtualClock extends Clock {
+        private final ZoneId zone;
+        VirtualClock(ZoneId zone) { this.zone = zone; }
+        @Override public ZoneId getZone() { return zone; }
+        @Override public Clock withZone(ZoneId zone) { return new VirtualClock(zone); }
+        @Override public Instant instant() { return now(); }
+    }
+
+    public VirtualTimeScheduler(Instant start) {
+        this.nowNanos = toNanos(start);
+        this.clock    = new VirtualClock(ZoneOffset.UTC);
+    }
+
+    private static long toNanos(Instant instant) {
+        return instant.getEpochSecond() * 1_000_000_000L + instant.getNano();
+    }
+
+    @Override
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        synchronized (this) {
+            Task t = new Task(task, nowNanos + Math.max(0, unit.toNanos(delay)), sequence++);
+            if (!isClosed) { queue.add(t); }
+            return t;
+        }
+    }
+
+    @Override
+    public Clock clock() { return clock; }
+
+    /** Returns the current virtual time. */
+    public Instant now() {
+        final long nanos = nowNanos;
+        return Instant.ofEpochSecond(nanos / 1_000_000_000L, nanos % 1_000_000_000L);
+    }
+
+    /** Advances virtual time by the amount and runs the tasks that become due.
+     *
+     * @return the number of tasks that were run */
+    public int advanceBy(long amount, TimeUnit unit) {
+        return advanceToNanos(nowNanos + unit.toNanos(amount));
+    }
+
+    /** Advances virtual time to the instant and runs the tasks that become due, including tasks
+     * that those tasks schedule before the instant.
+     *
+     * @return the number of tasks that were run */
+    public int advanceTo(Instant instant) {
+        return advanceToNanos(toNanos(instant));
+    }
+
+    private int advanceToNanos(long targetNanos) {
+        int count = 0;
+        while (true) {
+            final Task task;
+            synchronized (this) {
+                task = queue.peek();
+                if (task == null || task.dueNanos > targetNanos) { break; }
+                queue.poll();
+                if (task.dueNanos > nowNanos) { nowNanos = task.dueNanos; }
+            }
+            if (task.state.compareAndSet(Task.PENDING, Task.STARTED)) {
+                task.runnable.run();
+                count++;
+            }
+        }
+        synchronized (this) {
+            if (targetNanos > nowNanos) { nowNanos = targetNanos; }
+        }
+        return count;
+    }
+
+    /** Returns the number of tasks waiting for their time. */
+    public synchronized int pending() { return queue.size(); }
+
+    /** Drops all waiting tasks; tasks scheduled later never run. */
+    @Override
+    public synchronized void close() {
+        isClosed = true;
+        queue.clear();
+    }
+}
@@ -0,0 +1,78 @@
+package net.gcdc.geonetworking;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class AsyncGeonetDataListenerTest {
+
+    private static GeonetData data(int id) {
+        return new GeonetData(UpperProtocolType.BTP_B, Destination.singleHop(),
+                Optional.<TrafficClass>empty(), Optional.<LongPositionVector>empty(),
+                new byte[] { (byte) id });
+    }
+
+    @Test(timeout=5000)
+    public void testOrderOnSharedPool() throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        final int count = 100;
+        final CountDownLatch done = new CountDownLatch(1);
+        final List<Integer> received = new ArrayList<>();
+        AsyncGeonetDataListener async = new AsyncGeonetDataListener(new GeonetDataListener() {
+            @Override public void onGeonetDataReceived(GeonetData indication) {
+                received.add((int) indication.payload[0]);  // Never called concurrently.
+                if (received.size() == count) { done.countDown(); }
+            }
+        }, 16, executor);
+        for (int i = 0; i < count; i++) {
+            while (async.pending() == 16) { Thread.yield(); }  // Wait instead of dropping.
+            async.onGeonetDataReceived(data(i));
+        }
+        assertTrue(done.await(4, TimeUnit.SECONDS));
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.SECONDS));
+        for (int i = 0; i < count; i++) { assertEquals(i, (int) received.get(i)); }
+        assertEquals(count, async.delivered());
+        assertEquals(0, async.dropped());
+    }
+
+    @Test(timeout=5000)
+    public void testSlowListenerDoesNotBlock() throws InterruptedException {
+        ExecutorService executor = Executors.newCachedThreadPool();
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(5);
+        AsyncGeonetDataListener async = new AsyncGeonetDataListener(new GeonetDataListener() {
+            @Override public void onGeonetDataReceived(GeonetData indication) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                done.countDown();
+                if (indication.payload[0] == 1) { throw new IllegalStateException("Test"); }
+            }
+        }, 4, executor);
+        async.onGeonetDataReceived(data(0));
+        while (async.pending() > 0) { Thread.yield(); }  // Listener took it and waits.
+        for (int i = 1; i < 10; i++) {
+            async.onGeonetDataReceived(data(i));  // Returns at once, while listener waits.
+        }
+        // 4 wait in the queue, the rest are dropped.
+        assertEquals(5, async.dropped());
+        release.countDown();
+        assertTrue(done.await(4, TimeUnit.SECONDS));
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.SECONDS));
+        assertEquals(4, async.delivered());
+        assertEquals(1, async.failed());
+        assertTrue(async.maxLagNanos() > 0);
+    }
+}
@@ -0,0 +1,96 @@
+package net.gcdc.geonetworking;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.threeten.bp.Instant;
+
+public class BroadcastHubTest {
+
+    private static byte[] receive(ByteBufferLinkLayer link) throws IOException, InterruptedException {
+        ByteBuffer buffer = ByteBuffer.allocate(ByteBufferLinkLayer.MAX_FRAME_LENGTH);
+        int length = link.receive(buffer);
+        return Arrays.copyOf(buffer.array(), length);
+    }
+
+    @Test(timeout=3000)
+    public void testAllButSenderReceive() throws IOException, InterruptedException {
+        BroadcastHub hub = new BroadcastHub(false);
+        BroadcastHub.Port p1 = hub.get();
+        BroadcastHub.Port p2 = hub.get();
+        BroadcastHub.Port p3 = hub.get();
+        assertEquals(3, hub.size());
+
+        byte[] data1 = new byte[] {1, 2, 3};
+        byte[] data2 = new byte[] {4, 5};
+        p1.send(ByteBuffer.wrap(data1));
+        p2.send(ByteBuffer.wrap(data2));
+
+        assertArrayEquals(data2, receive(p1));
+        assertArrayEquals(data1, receive(p2));
+        assertArrayEquals(data1, receive(p3));
+        assertArrayEquals(data2, receive(p3));
+
+        p3.close();
+        assertEquals(2, hub.size());
+        p1.send(ByteBuffer.wrap(data1));
+        assertArrayEquals(data1, receive(p2));
+    }
+
+    @Test(timeout=3000)
+    public void testDropsPerReceiver() throws IOException, InterruptedException {
+        BroadcastHub hub = new BroadcastHub(false, true, 2, 4);
+        BroadcastHub.Port p1 = hub.get();
+        BroadcastHub.Port p2 = hub.get();
+        for (byte i = 0; i < 3; i++) {
+            p1.send(ByteBuffer.wrap(new byte[] {i}));
+        }
+        assertEquals(1, p1.dropped());  // Loopback, p1 receives its own frames too.
+        assertEquals(1, p2.dropped());
+        assertEquals(2, hub.dropped());
+
+        ByteBuffer buffer = ByteBuffer.allocate(2 * ByteBufferLinkLayer.MAX_FRAME_LENGTH);
+        int[] lengths = new int[2];
+        assertEquals(2, p2.receive(buffer, lengths));
+        assertEquals(0, buffer.get(0));
+        assertEquals(1, buffer.get(1));
+    }
+
+    @Test(timeout=3000)
+    public void testCloseReleasesQueuedFrames() throws IOException, InterruptedException {
+        BroadcastHub hub = new BroadcastHub(false, false, 4, 4);
+        BroadcastHub.Port p1 = hub.get();
+        BroadcastHub.Port p2 = hub.get();
+        for (byte i = 0; i < 3; i++) {
+            p1.send(ByteBuffer.wrap(new byte[] {i}));
+        }
+        assertEquals(1, hub.poolAvailable());
+        p2.close();  // Nobody receives on p2.
+        assertEquals(4, hub.poolAvailable());
+    }
+
+    @Test(timeout=3000)
+    public void testStations() throws IOException, InterruptedException {
+        BroadcastHub hub = new BroadcastHub(true);
+        final Optional<Address> emptyAddress = Optional.empty();
+        final Position position = new Position(57.70, 11.93);
+        PositionProvider positionProvider = new PositionProvider() {
+            @Override public LongPositionVector getLatestPosition() {
+                return new LongPositionVector(emptyAddress, Instant.now(),
+                        position, false, 0, 0);
+            }
+        };
+        BtpSocket s1 = BtpSocket.on(new StationConfig(), hub.get(), positionProvider);
+        BtpSocket s2 = BtpSocket.on(new StationConfig(), hub.get(), positionProvider);
+        BtpPacket packet = BtpPacket.singleHop(new byte[] {7, 8, 9}, (short) 2001);
+        s1.send(packet);
+        assertArrayEquals(packet.payload(), s2.receive().payload());
+        s1.close();
+        s2.close();
+    }
+}
@@ -0,0 +1,104 @@
+package net.gcdc.geonetworking;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class BufferedPublisherTest {
+
+    /** Records items and keeps the subscription for the test to request. */
+    private static class RecordingSubscriber implements Flow.Subscriber<Integer> {
+        final List<Integer>  items = new CopyOnWriteArrayList<>();
+        final CountDownLatch subscribed = new CountDownLatch(1);
+        final CountDownLatch completed = new CountDownLatch(1);
+        volatile Flow.Subscription subscription;
+        volatile Throwable error;
+
+        @Override public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscribed.countDown();
+        }
+        @Override public void onNext(Integer item) { items.add(item); }
+        @Override public void onError(Throwable throwable) {
+            error = throwable;
+            completed.countDown();
+        }
+        @Override public void onComplete() { completed.countDown(); }
+    }
+
+    private static void waitForSize(List<?> list, int size) throws InterruptedException {
+        while (list.size() < size) { Thread.sleep(1); }
+    }
+
+    @Test(timeout=5000)
+    public void testDemand() throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        BufferedPublisher<Integer> publisher = new BufferedPublisher<>(executor, 8);
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+        assertTrue(subscriber.subscribed.await(1, TimeUnit.SECONDS));
+
+        for (int i = 0; i < 12; i++) { publisher.offer(i); }  // Nothing requested yet.
+        assertEquals(4, publisher.dropped());
+        assertEquals(0, subscriber.items.size());
+
+        subscriber.subscription.request(3);
+        waitForSize(subscriber.items, 3);
+        Thread.sleep(20);
+        assertEquals(3, subscriber.items.size());  // No more than requested.
+
+        subscriber.subscription.request(Long.MAX_VALUE);
+        waitForSize(subscriber.items, 8);
+        publisher.offer(100);
+        waitForSize(subscriber.items, 9);
+        for (int i = 0; i < 8; i++) { assertEquals(i, (int) subscriber.items.get(i)); }
+        assertEquals(100, (int) subscriber.items.get(8));
+
+        publisher.close();
+        assertTrue(subscriber.completed.await(1, TimeUnit.SECONDS));
+        assertEquals(null, subscriber.error);
+        executor.shutdown();
+    }
+
+    @Test(timeout=5000)
+    public void testNonPositiveRequest() throws InterruptedException {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        BufferedPublisher<Integer> publisher = new BufferedPublisher<>(executor, 4);
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+        assertTrue(subscriber.subscribed.await(1, TimeUnit.SECONDS));
+        subscriber.subscription.request(0);
+        assertTrue(subscriber.completed.await(1, TimeUnit.SECONDS));
+        assertTrue(subscriber.error instanceof IllegalArgumentException);
+        assertEquals(0, publisher.subscriberCount());
+        executor.shutdown();
+    }
+
+    @Test(timeout=5000)
+    public void testCancel() throws InterruptedException {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        BufferedPublisher<Integer> publisher = new BufferedPublisher<>(executor, 4);
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+        assertTrue(subscriber.subscribed.await(1, TimeUnit.SECONDS));
+        subscriber.subscription.request(10);
+        publisher.offer(1);
+        waitForSize(subscriber.items, 1);
+        subscriber.subscription.cancel();
+        assertEquals(0, publisher.subscriberCount());
+        publisher.offer(2);
+        publisher.close();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.SECONDS));
+        assertEquals(1, subscriber.items.size());
+        assertEquals(1, subscriber.completed.getCount());  // Cancelled, never completed.
+    }
+}
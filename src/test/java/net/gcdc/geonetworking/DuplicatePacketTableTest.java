@@ -0,0 +1,65 @@
+package net.gcdc.geonetworking;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class DuplicatePacketTableTest {
+
+    private static final long now = 1_465_000_000_000L;
+
+    @Test
+    public void testKeyFields() {
+        DuplicatePacketTable table = new DuplicatePacketTable(1000);
+        assertFalse(table.markSeen(0x1234_5678_9abcL, 100, (short) 7, now, 60_000));
+        assertTrue(table.markSeen(0x1234_5678_9abcL, 100, (short) 7, now, 60_000));
+        assertFalse(table.markSeen(0x1234_5678_9abdL, 100, (short) 7, now, 60_000));  // Source.
+        assertFalse(table.markSeen(0x1234_5678_9abcL, 101, (short) 7, now, 60_000));  // Time.
+        assertFalse(table.markSeen(0x1234_5678_9abcL, 100, (short) -7, now, 60_000));  // SN.
+        assertEquals(4, table.size());
+    }
+
+    @Test
+    public void testExpiry() {
+        DuplicatePacketTable table = new DuplicatePacketTable(1000);
+        assertFalse(table.markSeen(42, 0, (short) 1, now, 5_000));
+        assertTrue(table.markSeen(42, 0, (short) 1, now + 4_999, 5_000));
+        assertFalse(table.markSeen(42, 0, (short) 1, now + 6_000, 5_000));  // Expired, seen anew.
+        assertTrue(table.markSeen(42, 0, (short) 1, now + 7_000, 5_000));
+    }
+
+    @Test
+    public void testGrowAndSweep() {
+        DuplicatePacketTable table = new DuplicatePacketTable(1000);
+        final int packets = 100_000;
+        for (int i = 0; i < packets; i++) {  // 100 seconds of packets living 10 seconds.
+            assertFalse(table.markSeen(i % 100, i, (short) i, now + i, 10_000));
+        }
+        for (int i = packets - 5_000; i < packets; i++) {
+            assertTrue(table.markSeen(i % 100, i, (short) i, now + packets, 10_000));
+        }
+        // Expired entries are dropped as the table rebuilds, it does not keep all of them.
+        assertTrue("Size " + table.size(), table.size() < 40_000);
+
+        // Long after, generations have wrapped around, nothing is alive.
+        final long later = now + 100_000L * 1000;
+        for (int i = packets - 5_000; i < packets; i++) {
+            assertFalse(table.markSeen(i % 100, i, (short) i, later, 10_000));
+        }
+    }
+
+    @Test
+    public void testBytesPerEntry() {
+        DuplicatePacketTable table = new DuplicatePacketTable(1000);
+        for (int i = 0; i < 100_000; i++) {
+            assertFalse(table.markSeen(i % 1000, i, (short) i, now, 60_000));
+            if (i >= 10_000 && i % 1000 == 0) {
+                final double bytesPerEntry = 14.0 * table.capacity() / table.size();
+                assertTrue("Bytes per entry " + bytesPerEntry,
+                        bytesPerEntry >= 16 && bytesPerEntry < 21.5);
+            }
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package net.gcdc.geonetworking;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.threeten.bp.Instant;
+
+public class ForwardingBufferTest {
+
+    private static final Instant now  = Instant.parse("2016-06-01T12:00:00Z");
+    private static final Area    here = Area.circle(new Position(57.70, 11.93), 100);
+    private static final Area    far  = Area.circle(new Position(57.80, 11.93), 100);
+
+    private final FrameBufferPool       pool  = new FrameBufferPool(8, 256, false);
+    private final VirtualTimeScheduler timer = new VirtualTimeScheduler(now);
+
+    private ForwardingBuffer.Packet packet(int length, Area area, int lifetimeSeconds) {
+        return new ForwardingBuffer.Packet(pool.acquire(length), area, 0, now,
+                now.plusSeconds(lifetimeSeconds));
+    }
+
+    @Test
+    public void testTakeByArea() {
+        ForwardingBuffer buffer = new ForwardingBuffer(1000, false, timer);
+        ForwardingBuffer.Packet p1 = packet(100, here, 10);
+        ForwardingBuffer.Packet p2 = packet(100, far, 10);
+        ForwardingBuffer.Packet p3 = packet(100, here, 10);
+        assertTrue(buffer.add(p1, now));
+        assertTrue(buffer.add(p2, now));
+        assertTrue(buffer.add(p3, now));
+        assertEquals(300, buffer.bytes());
+        assertEquals(Arrays.asList(far), buffer.areasCloserTo(new Position(57.79, 11.93),
+                new Position(57.75, 11.93)));
+        assertEquals(2, buffer.areasCloserTo(new Position(57.75, 11.93), new Position(57.60, 11.93))
+                .size());
+
+        List<ForwardingBuffer.Packet> taken = buffer.take(here, now);
+        assertEquals(2, taken.size());
+        assertTrue(taken.get(0) == p1);
+        assertTrue(taken.get(1) == p3);
+        assertEquals(1, buffer.size());
+        assertEquals(100, buffer.bytes());
+        assertEquals(1, p1.frame.referenceCount());  // Owned by the caller now.
+        assertTrue(buffer.take(here, now).isEmpty());
+    }
+
+    @Test
+    public void testEvictExpiredThenOldest() {
+        ForwardingBuffer buffer = new ForwardingBuffer(300, false, timer);
+        ForwardingBuffer.Packet old      = packet(100, here, 60);
+        ForwardingBuffer.Packet shortOne = packet(100, far, 5);
+        ForwardingBuffer.Packet young    = packet(100, here, 60);
+        buffer.add(old, now);
+        buffer.add(shortOne, now);
+        buffer.add(young, now);
+
+        final Instant later = now.plusSeconds(10);
+        assertTrue(buffer.add(packet(100, far, 60), later));  // Takes the expired one's space.
+        assertEquals(0, shortOne.frame.referenceCount());
+        assertEquals(1, old.frame.referenceCount());
+        assertTrue(buffer.add(packet(100, far, 60), later));  // Then the oldest is dropped.
+        assertEquals(0, old.frame.referenceCount());
+        assertEquals(1, young.frame.referenceCount());
+        assertEquals(2, buffer.dropped());
+        assertEquals(300, buffer.bytes());
+
+        assertFalse(buffer.add(packet(400, far, 60), later));   // Never fits.
+        assertFalse(buffer.add(packet(100, far, 5), later));    // Expired already.
+        assertEquals(3, buffer.size());
+
+        assertEquals(1, buffer.take(here, now.plusSeconds(30)).size());
+        assertEquals(0, buffer.take(far, now.plusSeconds(100)).size());  // All expired.
+        assertEquals(0, buffer.bytes());
+        assertEquals(7, pool.available());  // Only the taken one is still out.
+    }
+
+    @Test
+    public void testExpiredPacketsAreDroppedOnTimer() {
+        ForwardingBuffer buffer = new ForwardingBuffer(1000, false, timer);
+        ForwardingBuffer.Packet shortOne = packet(100, far, 5);
+        ForwardingBuffer.Packet longOne  = packet(100, here, 60);
+        buffer.add(longOne, now);
+        buffer.add(shortOne, now);
+
+        timer.advanceBy(5, TimeUnit.SECONDS);
+        assertEquals(0, shortOne.frame.referenceCount());
+        assertEquals(1, buffer.size());
+        timer.advanceBy(55, TimeUnit.SECONDS);
+        assertEquals(0, longOne.frame.referenceCount());
+        assertEquals(0, buffer.size());
+        assertEquals(8, pool.available());
+    }
+
+    @Test
+    public void testOwnPool() {
+        ForwardingBuffer buffer = new ForwardingBuffer(4 * FrameBufferPool.DEFAULT_SLOT_SIZE, false,
+                timer);
+        ByteBuffer source = ByteBuffer.wrap(new byte[] {1, 2, 3});
+        FrameBuffer copy = buffer.copyOf(source);
+        assertEquals(3, copy.length());
+        assertEquals(0, source.position());
+        assertEquals(2, copy.buffer().get(1));
+        copy.release();
+    }
+}
@@ -0,0 +1,75 @@
+package net.gcdc.geonetworking;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class FrameBufferPoolTest {
+
+    @Test
+    public void testRecycle() {
+        FrameBufferPool pool = new FrameBufferPool(2, 16, false);
+        FrameBuffer f1 = pool.acquire(10);
+        assertEquals(1, pool.available());
+        assertEquals(10, f1.length());
+        assertEquals(0, f1.buffer().position());
+
+        f1.retain();
+        f1.release();
+        assertEquals(1, pool.available());  // Still referenced once.
+        f1.release();
+        assertEquals(2, pool.available());
+
+        FrameBuffer f2 = pool.acquire(16);
+        FrameBuffer f3 = pool.acquire(16);
+        assertEquals(0, pool.available());
+        assertEquals(0, pool.misses());
+        f2.release();
+        f3.release();
+    }
+
+    @Test
+    public void testMisses() {
+        FrameBufferPool pool = new FrameBufferPool(1, 16, false);
+        FrameBuffer oversized = pool.acquire(17);
+        assertEquals(1, pool.misses());
+        FrameBuffer pooled = pool.acquire(16);
+        FrameBuffer exhausted = pool.acquire(16);
+        assertEquals(2, pool.misses());
+        oversized.release();
+        exhausted.release();
+        assertEquals(0, pool.available());  // Unpooled buffers are not taken into the pool.
+        pooled.release();
+        assertEquals(1, pool.available());
+        assertSame(pooled, pool.acquire(8));
+    }
+
+    @Test
+    public void testCopyOf() {
+        FrameBufferPool pool = new FrameBufferPool(1, 16, true);
+        ByteBuffer source = ByteBuffer.wrap(new byte[] {1, 2, 3, 4, 5});
+        source.position(2);
+        FrameBuffer copy = pool.copyOf(source);
+        assertEquals(2, source.position());
+        assertEquals(3, copy.length());
+        assertEquals(3, copy.buffer().get(0));
+        assertEquals(5, copy.buffer().get(2));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testDoubleRelease() {
+        FrameBuffer frame = new FrameBufferPool(1, 16, false).acquire(4);
+        frame.release();
+        frame.release();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testRetainReleased() {
+        FrameBuffer frame = new FrameBufferPool(1, 16, false).acquire(4);
+        frame.release();
+        frame.retain();
+    }
+}
@@ -0,0 +1,314 @@
+package net.gcdc.geonetworking;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.threeten.bp.Instant;
+
+public class GeonetStationTest {
+
+    private static final Position here = new Position(57.70, 11.93);
+
+    private static GeonetStation station(ByteBufferLinkLayer linkLayer) {
+        return station(new StationConfig(), linkLayer);
+    }
+
+    private static GeonetStation station(StationConfig config, ByteBufferLinkLayer linkLayer) {
+        final Optional<Address> emptyAddress = Optional.empty();
+        GeonetStation station = new GeonetStation(config, linkLayer,
+                new PositionProvider() {
+                    @Override public LongPositionVector getLatestPosition() {
+                        return new LongPositionVector(emptyAddress, Instant.now(), here, false, 0, 0);
+                    }
+                });
+        new Thread(station).start();
+        return station;
+    }
+
+    private static GeonetStation station(StationConfig config, ByteBufferLinkLayer linkLayer,
+            final Position position, MacAddress mac) {
+        final Optional<Address> emptyAddress = Optional.empty();
+        GeonetStation station = new GeonetStation(config, linkLayer,
+                new PositionProvider() {
+                    @Override public LongPositionVector getLatestPosition() {
+                        return new LongPositionVector(emptyAddress, Instant.now(), position,
+                                false, 0, 0);
+                    }
+                }, mac);
+        new Thread(station).start();
+        return station;
+    }
+
+    /** Returns the next frame on the port, with the Ethernet header. */
+    private static ByteBuffer nextFrame(BroadcastHub.Port port)
+            throws IOException, InterruptedException {
+        ByteBuffer frame = ByteBuffer.allocate(ByteBufferLinkLayer.MAX_FRAME_LENGTH);
+        port.receive(frame);
+        frame.flip();
+        return frame;
+    }
+
+    @Test(timeout=3000)
+    public void headerTemplatesAreKeptPerTrafficClass() throws IOException, InterruptedException {
+        BroadcastHub hub = new BroadcastHub(true);
+        GeonetStation station = station(hub.get());
+        for (int i = 0; i < 12; i++) {
+            station.send(new GeonetData(UpperProtocolType.BTP_B, Destination.singleHop(),
+                    Optional.of(TrafficClass.fromByte((byte) (i % 3))),
+                    Optional.<LongPositionVector>empty(), new byte[] {(byte) i}));
+        }
+        assertEquals(3, station.headerTemplateMisses());  // One per traffic class.
+        station.close();
+    }
+
+    @Test(timeout=3000)
+    public void duplicatesAreDeliveredOnce() throws IOException, InterruptedException {
+        assertDuplicatesDeliveredOnce(new StationConfig());
+    }
+
+    @Test(timeout=3000)
+    public void duplicatesAreDeliveredOncePerSource() throws IOException, InterruptedException {
+        StationConfig config = new StationConfig();
+        config.setDuplicateDetection(DuplicateDetector.Mode.PER_SOURCE);
+        assertDuplicatesDeliveredOnce(config);
+    }
+
+    private void assertDuplicatesDeliveredOnce(StationConfig receiverConfig)
+            throws IOException, InterruptedException {
+        BroadcastHub hub = new BroadcastHub(true);
+        GeonetStation sender = station(hub.get());
+        GeonetStation receiver = station(receiverConfig, hub.get());
+        BroadcastHub.Port replay = hub.get();
+
+        final AtomicInteger delivered = new AtomicInteger();
+        final CountDownLatch first = new CountDownLatch(1);
+        receiver.addGeonetDataListener(new GeonetDataListener() {
+            @Override public void onGeonetDataReceived(GeonetData indication) {
+                delivered.incrementAndGet();
+                first.countDown();
+            }
+        });
+
+        sender.send(new GeonetData(UpperProtocolType.BTP_B,
+                Destination.geobroadcast(Area.circle(here, 100)),
+                Optional.<TrafficClass>empty(), Optional.<LongPositionVector>empty(),
+                new byte[] {0, 1, 2, 3, 4}));
+        ByteBuffer frame = ByteBuffer.allocate(ByteBufferLinkLayer.MAX_FRAME_LENGTH);
+        replay.receive(frame);
+        frame.flip();
+        assertEquals(true, first.await(1, TimeUnit.SECONDS));
+
+        // The same packet again, e.g. from forwarders.
+        replay.send(frame.duplicate());
+        replay.send(frame.duplicate());
+        Thread.sleep(200);
+        assertEquals(1, delivered.get());
+
+        sender.close();
+        receiver.close();
+    }
+
+    @Test(timeout=5000)
+    public void receiveWorkersKeepOrderPerSender() throws IOException, InterruptedException {
+        final int senders = 4;
+        final int packets = 50;
+        BroadcastHub hub = new BroadcastHub(true);
+        StationConfig config = new StationConfig();
+        config.setReceiveWorkers(3);
+        GeonetStation receiver = station(config, hub.get());
+        GeonetStation[] stations = new GeonetStation[senders];
+        for (int i = 0; i < senders; i++) {
+            StationConfig senderConfig = new StationConfig();
+            senderConfig.setItsGnLocalGnAddr(
+                    new Address(false, StationType.Passenger_Car, 752, i + 1).value());
+            stations[i] = station(senderConfig, hub.get());
+        }
+
+        final List<List<Byte>> received = new ArrayList<>();
+        for (int i = 0; i < senders; i++) {
+            received.add(Collections.synchronizedList(new ArrayList<Byte>()));
+        }
+        final CountDownLatch all = new CountDownLatch(senders * packets);
+        receiver.addGeonetDataListener(new GeonetDataListener() {
+            @Override public void onGeonetDataReceived(GeonetData indication) {
+                received.get(indication.payload[0]).add(indication.payload[1]);
+                all.countDown();
+            }
+        });
+        for (byte n = 0; n < packets; n++) {
+            for (byte i = 0; i < senders; i++) {
+                stations[i].send(new GeonetData(UpperProtocolType.BTP_B, Destination.singleHop(),
+                        Optional.<TrafficClass>empty(), Optional.<LongPositionVector>empty(),
+                        new byte[] {i, n}));
+            }
+        }
+        assertEquals(true, all.await(3, TimeUnit.SECONDS));
+        for (int i = 0; i < senders; i++) {
+            for (int n = 0; n < packets; n++) {
+                assertEquals(n, (int) received.get(i).get(n));
+            }
+            stations[i].close();
+        }
+        assertEquals(0, receiver.droppedReceivedFrames());
+        receiver.close();
+    }
+
+    @Test(timeout=5000)
+    public void storeCarryForwardWaitsForCloserNeighbour()
+            throws IOException, InterruptedException {
+        final Position far  = new Position(57.80, 11.93);  // About 11 km north.
+        final Position near = new Position(57.71, 11.93);
+        final MacAddress senderMac    = new MacAddress(0x0a);
+        final MacAddress forwarderMac = new MacAddress(0x0f);
+        final MacAddress neighbourMac = new MacAddress(0x0c);
+        BroadcastHub hub = new BroadcastHub(true);
+        BroadcastHub.Port monitor = hub.get();
+        GeonetStation sender = station(new StationConfig(), hub.get(), here, senderMac);
+        StationConfig forwarderConfig = new StationConfig();
+        forwarderConfig.setItsGnGeoBroadcastForwardingAlgorithm(1);  // Simple, greedy outside.
+        GeonetStation forwarder = station(forwarderConfig, hub.get(), here, forwarderMac);
+
+        sender.send(new GeonetData(UpperProtocolType.BTP_B,
+                Destination.geobroadcast(Area.circle(far, 100)),
+                Optional.of(TrafficClass.fromByte((byte) 0x80)),  // Store-carry-forward.
+                Optional.<LongPositionVector>empty(), new byte[] {0, 1, 2, 3, 4}));
+        assertEquals(senderMac.value(), MacAddress.valueAt(nextFrame(monitor), 6));
+        Thread.sleep(200);  // Nobody is closer, the forwarder keeps it instead of broadcasting.
+
+        GeonetStation neighbour = station(new StationConfig(), hub.get(), near, neighbourMac);
+        neighbour.send(new GeonetData(UpperProtocolType.BTP_B, Destination.singleHop(),
+                Optional.<TrafficClass>empty(), Optional.<LongPositionVector>empty(),
+                new byte[] {0}));
+        assertEquals(neighbourMac.value(), MacAddress.valueAt(nextFrame(monitor), 6));
+        ByteBuffer forwarded = nextFrame(monitor);
+        assertEquals(forwarderMac.value(), MacAddress.valueAt(forwarded, 6));
+        assertEquals(neighbourMac.value(), MacAddress.valueAt(forwarded, 0));
+
+        sender.close();
+        forwarder.close();
+        neighbour.close();
+    }
+
+    private static DestinationType typeOf(ByteBuffer frame) {
+        return new CommonHeaderView().wrap(frame, 14 + BasicHeader.LENGTH).typeAndSubtype();
+    }
+
+    @Test(timeout=5000)
+    public void locationServiceSharesOneRequestPerDestination()
+            throws IOException, InterruptedException {
+        final MacAddress macA = new MacAddress(0x0a);
+        final MacAddress macB = new MacAddress(0x0b);
+        final Address addressB = new Address(false, StationType.Passenger_Car, 752, macB.value());
+        BroadcastHub hub = new BroadcastHub(true);
+        BroadcastHub.Port monitor = hub.get();
+        GeonetStation a = station(new StationConfig(), hub.get(), here, macA);
+        GeonetStation b = station(new StationConfig(), hub.get(), here, macB);
+        final int packets = 5;
+        final CountDownLatch received = new CountDownLatch(packets + 1);
+        b.addGeonetDataListener(new GeonetDataListener() {
+            @Override public void onGeonetDataReceived(GeonetData indication) {
+                received.countDown();
+            }
+        });
+
+        // A burst to a station that is not in the table yet.
+        for (byte i = 0; i < packets; i++) {
+            a.send(new GeonetData(UpperProtocolType.BTP_B, Destination.geounicast(addressB),
+                    Optional.<TrafficClass>empty(), Optional.<LongPositionVector>empty(),
+                    new byte[] {i}));
+        }
+        ByteBuffer request = nextFrame(monitor);
+        assertEquals(DestinationType.LOCATION_SERVICE_REQUEST, typeOf(request));
+        assertEquals(macA.value(), MacAddress.valueAt(request, 6));
+        ByteBuffer reply = nextFrame(monitor);
+        assertEquals(DestinationType.LOCATION_SERVICE_REPLY, typeOf(reply));
+        assertEquals(macB.value(), MacAddress.valueAt(reply, 6));
+        for (int i = 0; i < packets; i++) {
+            assertEquals(DestinationType.GEOUNICAST, typeOf(nextFrame(monitor)));
+        }
+
+        // The position is in the table now, the next packet goes out at once.
+        a.send(new GeonetData(UpperProtocolType.BTP_B, Destination.geounicast(addressB),
+                Optional.<TrafficClass>empty(), Optional.<LongPositionVector>empty(),
+                new byte[] {packets}));
+        assertEquals(DestinationType.GEOUNICAST, typeOf(nextFrame(monitor)));
+        assertEquals(true, received.await(1, TimeUnit.SECONDS));
+
+        a.close();
+        b.close();
+    }
+
+    @Test(timeout=5000)
+    public void locationServiceSendsAsSoonAsAnyPacketGivesThePosition()
+            throws IOException, InterruptedException {
+        final MacAddress macA = new MacAddress(0x0a);
+        final MacAddress macB = new MacAddress(0x0b);
+        final Address addressB = new Address(false, StationType.Passenger_Car, 752, macB.value());
+        VirtualTimeScheduler scheduler = new VirtualTimeScheduler(Instant.now());  // No resends.
+        BroadcastHub hub = new BroadcastHub(true);
+        BroadcastHub.Port monitor = hub.get();
+        final Optional<Address> emptyAddress = Optional.empty();
+        GeonetStation a = new GeonetStation(new StationConfig(), hub.get(),
+                new PositionProvider() {
+                    @Override public LongPositionVector getLatestPosition() {
+                        return new LongPositionVector(emptyAddress, Instant.now(), here, false, 0, 0);
+                    }
+                }, macA, scheduler, null);
+        new Thread(a).start();
+        a.send(new GeonetData(UpperProtocolType.BTP_B, Destination.geounicast(addressB),
+                Optional.<TrafficClass>empty(), Optional.<LongPositionVector>empty(),
+                new byte[] {0}));
+        assertEquals(DestinationType.LOCATION_SERVICE_REQUEST, typeOf(nextFrame(monitor)));
+
+        // B joins after the request, so it does not reply, but its single-hop packet is enough.
+        GeonetStation b = station(new StationConfig(), hub.get(), here, macB);
+        b.send(new GeonetData(UpperProtocolType.BTP_B, Destination.singleHop(),
+                Optional.<TrafficClass>empty(), Optional.<LongPositionVector>empty(),
+                new byte[] {1}));
+        assertEquals(DestinationType.SINGLE_HOP, typeOf(nextFrame(monitor)));
+        ByteBuffer unicast = nextFrame(monitor);
+        assertEquals(DestinationType.GEOUNICAST, typeOf(unicast));
+        assertEquals(macA.value(), MacAddress.valueAt(unicast, 6));
+
+        a.close();
+        b.close();
+    }
+
+    @Test(timeout=5000)
+    public void locationServiceGivesUpAfterRetransmissions()
+            throws IOException, InterruptedException {
+        VirtualTimeScheduler scheduler = new VirtualTimeScheduler(Instant.now());
+        BroadcastHub hub = new BroadcastHub(true);
+        BroadcastHub.Port monitor = hub.get();
+        final Optional<Address> emptyAddress = Optional.empty();
+        GeonetStation station = new GeonetStation(new StationConfig(), hub.get(),
+                new PositionProvider() {
+                    @Override public LongPositionVector getLatestPosition() {
+                        return new LongPositionVector(emptyAddress, Instant.now(), here, false, 0, 0);
+                    }
+                }, new MacAddress(0x0a), scheduler, null);
+        final Address nobody = new Address(false, StationType.Passenger_Car, 752, 0x0b);
+        for (int i = 0; i < 3; i++) {
+            station.send(new GeonetData(UpperProtocolType.BTP_B, Destination.geounicast(nobody),
+                    Optional.<TrafficClass>empty(), Optional.<LongPositionVector>empty(),
+                    new byte[] {0}));
+        }
+        scheduler.advanceBy(20, TimeUnit.SECONDS);
+
+        final int requests = 1 + new StationConfig().getItsGnLocationServiceMaxRetrans();
+        assertEquals(requests, monitor.queued());
+        for (int i = 0; i < requests; i++) {
+            assertEquals(DestinationType.LOCATION_SERVICE_REQUEST, typeOf(nextFrame(monitor)));
+        }
+        station.close();
+    }
+}
@@ -0,0 +1,105 @@
+package net.gcdc.geonetworking;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class HashedWheelTimerTest {
+
+    /** Counts down and records if the task ran before its delay. */
+    private static class Task implements Runnable {
+        final long           scheduledNanos = System.nanoTime();
+        final long           delayNanos;
+        final CountDownLatch latch;
+        final AtomicInteger  early;
+        Task(long delayMillis, CountDownLatch latch, AtomicInteger early) {
+            this.delayNanos = TimeUnit.MILLISECONDS.toNanos(delayMillis);
+            this.latch      = latch;
+            this.early      = early;
+        }
+        @Override public void run() {
+            if (System.nanoTime() - scheduledNanos < delayNanos) { early.incrementAndGet(); }
+            latch.countDown();
+        }
+    }
+
+    @Test(timeout=10000)
+    public void testNotEarlyOnAllWheels() throws InterruptedException {
+        // With 10 us ticks, 1.5 seconds is in the third wheel and cascades twice.
+        HashedWheelTimer timer = new HashedWheelTimer(10, TimeUnit.MICROSECONDS, "test-wheel");
+        final long[] delays = { 0, 1, 2, 3, 5, 40, 300, 700, 1500 };
+        CountDownLatch latch = new CountDownLatch(delays.length);
+        AtomicInteger early = new AtomicInteger();
+        for (long delay : delays) {
+            timer.schedule(new Task(delay, latch, early), delay, TimeUnit.MILLISECONDS);
+        }
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(0, early.get());
+        timer.close();
+    }
+
+    @Test(timeout=10000)
+    public void testCancel() throws InterruptedException {
+        HashedWheelTimer timer = new HashedWheelTimer();
+        final int count = 10000;
+        CountDownLatch latch = new CountDownLatch(count / 2);
+        AtomicInteger early = new AtomicInteger();
+        final AtomicInteger ran = new AtomicInteger();
+        TimerService.Timeout[] timeouts = new TimerService.Timeout[count];
+        for (int i = 0; i < count; i++) {
+            final Task task = new Task(200, latch, early);
+            timeouts[i] = timer.schedule(new Runnable() {
+                @Override public void run() {
+                    ran.incrementAndGet();
+                    task.run();
+                }
+            }, 200 + i % 50, TimeUnit.MILLISECONDS);  // Long enough to cancel before.
+        }
+        for (int i = 0; i < count; i += 2) { assertTrue(timeouts[i].cancel()); }
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        Thread.sleep(100);  // Cancelled ones would have run by now.
+        assertEquals(count / 2, ran.get());
+        assertEquals(0, early.get());
+        assertFalse(timeouts[0].cancel());
+        assertFalse(timeouts[1].cancel());  // Has run.
+        timer.close();
+    }
+
+    @Test(timeout=5000)
+    public void testIdleAndRestart() throws InterruptedException {
+        HashedWheelTimer timer = new HashedWheelTimer();
+        for (int round = 0; round < 3; round++) {  // Sleeps without timers, wakes up on schedule.
+            CountDownLatch latch = new CountDownLatch(1);
+            AtomicInteger early = new AtomicInteger();
+            timer.schedule(new Task(10, latch, early), 10, TimeUnit.MILLISECONDS);
+            assertTrue(latch.await(1, TimeUnit.SECONDS));
+            assertEquals(0, early.get());
+            Thread.sleep(50);
+        }
+        timer.close();
+    }
+
+    @Test(timeout=10000)
+    public void testSkipsEmptyTicks() throws InterruptedException {
+        HashedWheelTimer timer = new HashedWheelTimer();  // 1 ms ticks.
+        CountDownLatch latch = new CountDownLatch(2);
+        AtomicInteger early = new AtomicInteger();
+        timer.schedule(new Task(1000, latch, early), 1000, TimeUnit.MILLISECONDS);
+        Thread.sleep(300);
+        // Scheduled while the wheel sleeps until the next cascade, and due before it.
+        timer.schedule(new Task(20, latch, early), 20, TimeUnit.MILLISECONDS);
+        Thread.sleep(200);
+        assertEquals(1, latch.getCount());  // Not only with the cascade.
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(0, early.get());
+        // Two timers and a cascade every 256 ticks, instead of a thousand ticks.
+        assertTrue("Processed " + timer.processedTicks() + " ticks", timer.processedTicks() < 20);
+        timer.close();
+    }
+}
@@ -0,0 +1,70 @@
+package net.gcdc.geonetworking;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+import org.threeten.bp.Instant;
+
+public class HeaderTemplateTest {
+
+    private final MacAddress senderMac = new MacAddress(0x02_00_00_00_00_01L);
+    private final MacAddress dstMac    = new MacAddress(0x02_00_00_00_00_02L);
+    private final Area       area      = Area.circle(new Position(57.7, 11.9), 500);
+    private final LongPositionVector lpv = new LongPositionVector(
+            new Address(0x1234_5678_9abcL), Instant.now(), new Position(57.7, 11.9), true, 13, 90);
+
+    @Test
+    public void geobroadcastSameAsSerialized() {
+        HeaderTemplate template = new HeaderTemplate(UpperProtocolType.BTP_B,
+                DestinationType.GEOBROADCAST_CIRCLE, (byte) 0x02, 60, (byte) 10, (byte) 10, area,
+                0, true, senderMac);
+        ByteBuffer fromTemplate = ByteBuffer.allocate(template.length());
+        template.putTo(fromTemplate, dstMac, (short) 42, lpv, 300);
+        assertEquals(template.length(), fromTemplate.position());
+
+        ByteBuffer expected = ByteBuffer.allocate(template.length());
+        dstMac.putTo(expected);
+        senderMac.putTo(expected);
+        expected.putShort(GeonetStation.GN_ETHER_TYPE);
+        new BasicHeader((byte) 0, BasicHeader.NextHeader.COMMON_HEADER,
+                BasicHeader.Lifetime.fromSeconds(60), (byte) 10).putTo(expected);
+        new CommonHeader(UpperProtocolType.BTP_B, DestinationType.GEOBROADCAST_CIRCLE,
+                TrafficClass.fromByte((byte) 0x02), true, (short) 300, (byte) 10).putTo(expected);
+        expected.putShort((short) 42).putShort((short) 0);
+        lpv.putTo(expected);
+        area.putTo(expected);
+        expected.putShort((short) 0);
+        assertArrayEquals(expected.array(), fromTemplate.array());
+    }
+
+    @Test
+    public void singleHopWithoutEthernetHeader() {
+        HeaderTemplate template = new HeaderTemplate(UpperProtocolType.BTP_B,
+                DestinationType.SINGLE_HOP, (byte) 0, 1, (byte) 1, (byte) 1, null, 0, false, null);
+        assertEquals(BasicHeader.LENGTH + CommonHeader.LENGTH + LongPositionVector.LENGTH + 4,
+                template.length());
+        ByteBuffer buffer = ByteBuffer.allocate(template.length());
+        template.putTo(buffer, dstMac, (short) 0, lpv, 7);
+        buffer.flip();
+        BasicHeader.getFrom(buffer);
+        assertEquals(7, CommonHeader.getFrom(buffer).payloadLength());
+        assertEquals(lpv, LongPositionVector.getFrom(buffer));
+    }
+
+    @Test
+    public void matches() {
+        HeaderTemplate template = new HeaderTemplate(UpperProtocolType.BTP_B,
+                DestinationType.GEOBROADCAST_CIRCLE, (byte) 0, 60, (byte) 10, (byte) 10, area,
+                0, false, null);
+        assertTrue(template.matches((byte) 0, 60, (byte) 10, (byte) 10,
+                Area.circle(new Position(57.7, 11.9), 500), 0, false));
+        assertFalse(template.matches((byte) 0, 60, (byte) 9, (byte) 10, area, 0, false));
+        assertFalse(template.matches((byte) 0, 60, (byte) 10, (byte) 10,
+                Area.circle(new Position(57.7, 11.9), 501), 0, false));
+    }
+}
@@ -0,0 +1,88 @@
+package net.gcdc.geonetworking;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+import org.threeten.bp.Instant;
+
+public class HeaderViewTest {
+
+    private static final int OFFSET = 14;  // Views read at an offset, e.g. after Ethernet header.
+
+    @Test
+    public void basicHeader() {
+        BasicHeader h1 = new BasicHeader((byte) 0x00,
+                BasicHeader.NextHeader.COMMON_HEADER,
+                BasicHeader.Lifetime.fromSeconds(5.0),
+                (byte) 3);
+        ByteBuffer buffer = ByteBuffer.allocate(OFFSET + BasicHeader.LENGTH);
+        buffer.position(OFFSET);
+        h1.putTo(buffer);
+        BasicHeaderView view = new BasicHeaderView().wrap(buffer, OFFSET);
+        assertEquals(h1.version(), view.version());
+        assertEquals(h1.nextHeader(), view.nextHeader());
+        assertEquals(h1.lifetime().asByte(), view.lifetimeByte());
+        assertEquals(h1.remainingHopLimit(), view.remainingHopLimit());
+        assertEquals(OFFSET + BasicHeader.LENGTH, buffer.position());  // View does not move it.
+    }
+
+    @Test
+    public void commonHeader() {
+        CommonHeader h1 = new CommonHeader(
+                UpperProtocolType.BTP_B,
+                DestinationType.GEOBROADCAST_ELLIPSE,
+                TrafficClass.fromByte((byte) 0x42),
+                true,
+                (short) 1300,
+                (byte) 5
+                );
+        ByteBuffer buffer = ByteBuffer.allocate(OFFSET + CommonHeader.LENGTH);
+        buffer.position(OFFSET);
+        h1.putTo(buffer);
+        CommonHeaderView view = new CommonHeaderView().wrap(buffer, OFFSET);
+        assertEquals(h1, view.toCommonHeader());
+    }
+
+    @Test
+    public void longPositionVector() {
+        LongPositionVector v1 = new LongPositionVector(
+                Address.random(true, StationType.Unknown, 240),
+                Instant.now(),
+                new Position(57.7, -11.9),
+                true,
+                -22,
+                315
+                );
+        ByteBuffer buffer = ByteBuffer.allocate(OFFSET + LongPositionVector.LENGTH);
+        buffer.position(OFFSET);
+        v1.putTo(buffer);
+        LongPositionVectorView view = new LongPositionVectorView().wrap(buffer, OFFSET);
+        assertEquals(v1.address().get().value(), view.addressValue());
+        assertEquals(LongPositionVector.instantToTaiMillisSince2004Mod32(v1.timestamp()),
+                view.timestampMillisMod32() & 0xFFFF_FFFFL);
+        assertEquals(v1.position(), view.position());
+        assertEquals(v1.isPositionConfident(), view.isPositionConfident());
+        assertEquals(v1.speedMetersPerSecond(), view.speedMetersPerSecond(), 0.01);
+        assertEquals(v1.headingDegreesFromNorth(), view.headingDegreesFromNorth(), 0.1);
+
+        buffer.position(OFFSET);
+        assertEquals(LongPositionVector.getFrom(buffer), view.toLongPositionVector());
+    }
+
+    @Test
+    public void area() {
+        Position center = new Position(57.70, 11.93);
+        Area a1 = Area.rectangle(center, 300, 100, 50);
+        ByteBuffer buffer = ByteBuffer.allocate(OFFSET + AreaView.LENGTH);
+        buffer.position(OFFSET);
+        a1.putTo(buffer);
+        AreaView view = new AreaView().wrap(buffer, OFFSET, Area.Type.RECTANGLE);
+        assertEquals(a1, view.toArea());
+        for (int distance = 0; distance < 400; distance += 20) {
+            Position p = center.moved(distance, 60);
+            assertEquals(a1.contains(p), view.contains(p));
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package net.gcdc.geonetworking;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class LinkLayerAdapterTest {
+
+    @Test
+    public void test() throws IOException, InterruptedException {
+        DuplicatorLinkLayer d = new DuplicatorLinkLayer();
+        ByteBufferLinkLayer l1 = LinkLayerAdapter.of(d.get());
+        ByteBufferLinkLayer l2 = LinkLayerAdapter.of(d.get());
+        byte[] data = new byte[] {0x10, 0x13, 0x7F};
+
+        ByteBuffer frame = ByteBuffer.allocate(10);
+        frame.put((byte) 0x55).put(data).flip();
+        frame.get();  // Send only the bytes after the position.
+        l1.send(frame);
+        assertEquals(frame.limit(), frame.position());
+
+        ByteBuffer received = ByteBuffer.allocate(ByteBufferLinkLayer.MAX_FRAME_LENGTH);
+        assertEquals(data.length, l2.receive(received));
+        assertArrayEquals(data, Arrays.copyOf(received.array(), received.position()));
+    }
+
+    @Test
+    public void testNoDoubleWrapping() {
+        ByteBufferLinkLayer l = LinkLayerAdapter.of(new DuplicatorLinkLayer().get());
+        assertSame(l, LinkLayerAdapter.of(l));
+    }
+
+}
@@ -0,0 +1,86 @@
+package net.gcdc.geonetworking;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Selector;
+
+import org.junit.Test;
+
+public class LinkLayerDatagramChannelTest {
+
+    private final int port1 = 4460;
+    private final int port2 = 4461;
+
+    private static ByteBuffer frame(short ethertype, byte payload) {
+        ByteBuffer frame = ByteBuffer.allocateDirect(15);
+        frame.put(new byte[12]).putShort(ethertype).put(payload).flip();
+        return frame;
+    }
+
+    @Test(timeout=3000)
+    public void testBlockingSkipsOtherEthertypes() throws IOException, InterruptedException {
+        try (LinkLayerDatagramChannel l1 = new LinkLayerDatagramChannel(port1,
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), port2), true);
+             LinkLayerDatagramChannel l2 = new LinkLayerDatagramChannel(port2,
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), port1), true)) {
+            l1.send(frame((short) 0x0800, (byte) 1));  // IPv4, should be skipped.
+            l1.send(frame(GeonetStation.GN_ETHER_TYPE, (byte) 2));
+
+            ByteBuffer buffer = ByteBuffer.allocateDirect(ByteBufferLinkLayer.MAX_FRAME_LENGTH);
+            assertEquals(15, l2.receive(buffer));
+            assertEquals(15, buffer.position());
+            assertEquals(2, buffer.get(14));
+        }
+    }
+
+    @Test(timeout=3000)
+    public void testNonBlockingWithSelector() throws IOException, InterruptedException {
+        try (LinkLayerDatagramChannel l1 = new LinkLayerDatagramChannel(port1,
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), port2), true, false);
+             LinkLayerDatagramChannel l2 = new LinkLayerDatagramChannel(port2,
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), port1), true, false);
+             Selector selector = Selector.open()) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(ByteBufferLinkLayer.MAX_FRAME_LENGTH);
+            assertEquals(0, l2.receive(buffer));
+
+            Object attachment = new Object();
+            l2.register(selector, attachment);
+            l1.send(frame(GeonetStation.GN_ETHER_TYPE, (byte) 3));
+            assertEquals(1, selector.select());
+            assertTrue(selector.selectedKeys().iterator().next().attachment() == attachment);
+            assertEquals(15, l2.receive(buffer));
+            assertEquals(0, l2.receive(buffer));
+        }
+    }
+
+    @Test(timeout=3000)
+    public void testBatch() throws IOException, InterruptedException {
+        try (LinkLayerDatagramChannel l1 = new LinkLayerDatagramChannel(port1,
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), port2), true);
+             LinkLayerDatagramChannel l2 = new LinkLayerDatagramChannel(port2,
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), port1), true)) {
+            l1.send(frame(GeonetStation.GN_ETHER_TYPE, (byte) 1));
+            l1.send(frame((short) 0x0800, (byte) 2));  // IPv4, should be skipped.
+            l1.send(frame(GeonetStation.GN_ETHER_TYPE, (byte) 3));
+            l1.send(frame(GeonetStation.GN_ETHER_TYPE, (byte) 4));
+            Thread.sleep(50);  // Let all datagrams arrive.
+
+            ByteBuffer buffer = ByteBuffer.allocateDirect(2 * ByteBufferLinkLayer.MAX_FRAME_LENGTH);
+            int[] lengths = new int[2];
+            assertEquals(2, l2.receive(buffer, lengths));
+            assertEquals(15, lengths[0]);
+            assertEquals(15, lengths[1]);
+            assertEquals(1, buffer.get(14));
+            assertEquals(3, buffer.get(29));
+
+            buffer.clear();
+            assertEquals(1, l2.receive(buffer, lengths));
+            assertEquals(4, buffer.get(14));
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package net.gcdc.geonetworking;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class LinkLayerPcapReplayTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static byte[] frame(short ethertype, byte payload) {
+        ByteBuffer frame = ByteBuffer.allocate(15);
+        frame.put(new byte[12]).putShort(ethertype).put(payload);
+        return frame.array();
+    }
+
+    private static final byte[][] FRAMES = new byte[][] {
+        frame(GeonetStation.GN_ETHER_TYPE, (byte) 1),
+        frame((short) 0x0800, (byte) 2),  // IPv4, not replayed.
+        frame(GeonetStation.GN_ETHER_TYPE, (byte) 3),
+    };
+
+    private File write(ByteBuffer contents) throws IOException {
+        File file = folder.newFile();
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(contents.array(), 0, contents.position());
+        }
+        return file;
+    }
+
+    /** Writes a little endian pcap file with frames 100 ms apart. */
+    private File pcap() throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(1000).order(ByteOrder.LITTLE_ENDIAN);
+        b.putInt(0xa1b2c3d4).putShort((short) 2).putShort((short) 4).putInt(0).putInt(0)
+         .putInt(65535).putInt(1);
+        for (int i = 0; i < FRAMES.length; i++) {
+            b.putInt(1000).putInt(i * 100_000).putInt(FRAMES[i].length).putInt(FRAMES[i].length)
+             .put(FRAMES[i]);
+        }
+        return write(b);
+    }
+
+    /** Writes a big endian pcapng file with nanosecond timestamps, frames 100 ms apart. */
+    private File pcapng() throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(1000).order(ByteOrder.BIG_ENDIAN);
+        b.putInt(0x0a0d0d0a).putInt(28).putInt(0x1a2b3c4d).putShort((short) 1)
+         .putShort((short) 0).putLong(-1).putInt(28);
+        putInterface(b, 1);
+        for (int i = 0; i < FRAMES.length; i++) {
+            putFrame(b, 0, i * 100_000_000L, FRAMES[i]);
+        }
+        return write(b);
+    }
+
+    /** Puts an Interface Description Block with if_tsresol = 9 (nanoseconds). */
+    private static void putInterface(ByteBuffer b, int linkType) {
+        b.putInt(1).putInt(32).putShort((short) linkType).putShort((short) 0).putInt(65535)
+         .putShort((short) 9).putShort((short) 1).put((byte) 9).put(new byte[3])
+         .putShort((short) 0).putShort((short) 0).putInt(32);
+    }
+
+    /** Puts an Enhanced Packet Block, captured at the given nanoseconds after 1000 s. */
+    private static void putFrame(ByteBuffer b, int interfaceId, long nanos, byte[] frame) {
+        long timestamp = 1000_000_000_000L + nanos;
+        int padded = (frame.length + 3) & ~3;
+        int total = 32 + padded;
+        b.putInt(6).putInt(total).putInt(interfaceId).putInt((int) (timestamp >>> 32))
+         .putInt((int) timestamp).putInt(frame.length).putInt(frame.length)
+         .put(frame).put(new byte[padded - frame.length]).putInt(total);
+    }
+
+    private static void assertReplay(LinkLayerPcapReplay replay)
+            throws IOException, InterruptedException {
+        ByteBuffer buffer = ByteBuffer.allocate(ByteBufferLinkLayer.MAX_FRAME_LENGTH);
+        assertEquals(15, replay.receive(buffer));
+        assertEquals(1, buffer.get(14));
+        buffer.clear();
+        assertEquals(15, replay.receive(buffer));
+        assertEquals(3, buffer.get(14));
+        assertEquals(2, replay.frames());
+        try {
+            replay.receive(buffer);
+            org.junit.Assert.fail("should have reached the end of capture");
+        } catch (EOFException e) {
+            // Expected.
+        }
+    }
+
+    @Test(timeout=3000)
+    public void testPcapAsFastAsPossible() throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        assertReplay(new LinkLayerPcapReplay(pcap(), LinkLayerPcapReplay.AS_FAST_AS_POSSIBLE));
+        assertTrue(System.nanoTime() - start < 150_000_000L);
+    }
+
+    @Test(timeout=3000)
+    public void testPcapngWithOriginalTiming() throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        assertReplay(new LinkLayerPcapReplay(pcapng()));
+        assertTrue(System.nanoTime() - start >= 200_000_000L);  // Third frame is 200 ms later.
+    }
+
+    @Test(timeout=3000)
+    public void testBatch() throws IOException, InterruptedException {
+        LinkLayerPcapReplay replay = new LinkLayerPcapReplay(pcap(), LinkLayerPcapReplay.AS_FAST_AS_POSSIBLE);
+        ByteBuffer buffer = ByteBuffer.allocate(4 * ByteBufferLinkLayer.MAX_FRAME_LENGTH);
+        int[] lengths = new int[4];
+        assertEquals(2, replay.receive(buffer, lengths));
+        assertEquals(3, buffer.get(29));
+    }
+
+    /** A frame that is not due yet ends the batch, and is read again on the next receive; the
+     * Interface Description before it must not be read twice, or later interfaces get wrong
+     * IDs. */
+    @Test(timeout=3000)
+    public void testBatchStopsBeforeInterfaceDescription() throws IOException, InterruptedException {
+        ByteBuffer b = ByteBuffer.allocate(1000).order(ByteOrder.BIG_ENDIAN);
+        b.putInt(0x0a0d0d0a).putInt(28).putInt(0x1a2b3c4d).putShort((short) 1)
+         .putShort((short) 0).putLong(-1).putInt(28);
+        putInterface(b, 1);    // 0, Ethernet.
+        putFrame(b, 0, 0, FRAMES[0]);
+        putInterface(b, 105);  // 1, IEEE 802.11, not replayed.
+        putFrame(b, 0, 100_000_000L, FRAMES[2]);
+        putInterface(b, 1);    // 2, Ethernet.
+        putFrame(b, 2, 100_000_000L, FRAMES[0]);
+        LinkLayerPcapReplay replay = new LinkLayerPcapReplay(write(b));
+
+        ByteBuffer buffer = ByteBuffer.allocate(4 * ByteBufferLinkLayer.MAX_FRAME_LENGTH);
+        assertEquals(1, replay.receive(buffer, new int[4]));  // The second frame is not due.
+        buffer.clear();
+        assertEquals(15, replay.receive(buffer));
+        assertEquals(3, buffer.get(14));
+        buffer.clear();
+        assertEquals(15, replay.receive(buffer));
+        assertEquals(1, buffer.get(14));
+        assertEquals(3, replay.frames());
+    }
+}
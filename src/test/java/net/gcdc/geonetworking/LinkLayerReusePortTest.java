@@ -0,0 +1,101 @@
+package net.gcdc.geonetworking;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LinkLayerReusePortTest {
+
+    private DatagramChannel remote;  // Only there to have a port to send to.
+
+    @Before
+    public void openRemote() throws IOException {
+        remote = DatagramChannel.open().bind(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    }
+
+    @After
+    public void closeRemote() throws IOException {
+        remote.close();
+    }
+
+    private static ByteBuffer frame(short ethertype, byte sender, byte payload) {
+        ByteBuffer frame = ByteBuffer.allocate(16);
+        frame.put(new byte[12]).putShort(ethertype).put(sender).put(payload).flip();
+        return frame;
+    }
+
+    @Test(timeout=5000)
+    public void testOrderPerSender() throws IOException, InterruptedException {
+        final int senders = 3;
+        final int framesEach = 20;  // All frames fit in one default socket receive buffer.
+        try (LinkLayerReusePort link = new LinkLayerReusePort(0, remote.getLocalAddress(), true,
+                4)) {
+            InetSocketAddress linkAddress = new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                    link.localPort());
+            DatagramChannel[] channels = new DatagramChannel[senders];
+            for (int s = 0; s < senders; s++) { channels[s] = DatagramChannel.open(); }
+            for (int i = 0; i < framesEach; i++) {
+                for (int s = 0; s < senders; s++) {
+                    channels[s].send(frame(GeonetStation.GN_ETHER_TYPE, (byte) s, (byte) i), linkAddress);
+                    channels[s].send(frame((short) 0x0800, (byte) s, (byte) -1), linkAddress);  // Skipped.
+                }
+            }
+
+            int[] next = new int[senders];
+            ByteBuffer buffer = ByteBuffer.allocate(4 * ByteBufferLinkLayer.MAX_FRAME_LENGTH);
+            int[] lengths = new int[4];
+            int received = 0;
+            while (received < senders * framesEach) {
+                buffer.clear();
+                int frames = link.receive(buffer, lengths);
+                for (int f = 0; f < frames; f++) {
+                    assertEquals(16, lengths[f]);
+                    int sender = buffer.get(16 * f + 14);
+                    assertEquals(next[sender]++, buffer.get(16 * f + 15));
+                }
+                received += frames;
+            }
+            assertEquals(0, link.dropped());
+            for (DatagramChannel channel : channels) { channel.close(); }
+        }
+    }
+
+    @Test(timeout=3000)
+    public void testCloseWhileWaiting() throws Exception {
+        final LinkLayerReusePort link = new LinkLayerReusePort(0, remote.getLocalAddress(), true,
+                2);
+        final AtomicReference<Exception> closeException = new AtomicReference<>();
+        Thread closer = new Thread(new Runnable() {
+            @Override public void run() {
+                try {
+                    Thread.sleep(50);
+                    link.close();
+                } catch (InterruptedException | IOException e) {
+                    closeException.set(e);
+                }
+            }
+        });
+        closer.start();
+        try {
+            link.receive(ByteBuffer.allocate(ByteBufferLinkLayer.MAX_FRAME_LENGTH));
+            fail("receive should throw after close");
+        } catch (ClosedChannelException e) {
+            // Expected.
+        }
+        closer.join();
+        assertNull(closeException.get());
+    }
+}
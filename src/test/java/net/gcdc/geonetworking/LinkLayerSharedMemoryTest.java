@@ -0,0 +1,151 @@
+package net.gcdc.geonetworking;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class LinkLayerSharedMemoryTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static ByteBuffer frame(short ethertype, int payloadLength, byte payload) {
+        ByteBuffer frame = ByteBuffer.allocate(14 + payloadLength);
+        frame.put(new byte[12]).putShort(ethertype);
+        while (frame.hasRemaining()) { frame.put(payload); }
+        frame.flip();
+        return frame;
+    }
+
+    @Test(timeout=5000)
+    public void testBothDirectionsWithWrapAround() throws IOException, InterruptedException {
+        File a = new File(folder.getRoot(), "a");
+        File b = new File(folder.getRoot(), "b");
+        LinkLayerSharedMemory station = new LinkLayerSharedMemory(a, b, 1024, true);
+        // The bridge side, with the files swapped.
+        final SharedMemoryRing bridgeTransmit = SharedMemoryRing.producer(b, 1024);
+        final SharedMemoryRing bridgeReceive  = SharedMemoryRing.consumer(a, 1024);
+
+        final int frames = 1000;  // Many times the capacity of the ring.
+        Thread bridge = new Thread(new Runnable() {
+            @Override public void run() {
+                for (int i = 0; i < frames; i++) {
+                    offer(frame((short) 0x0800, 3, (byte) -1));  // Skipped by station.
+                    offer(frame(GeonetStation.GN_ETHER_TYPE, 1 + i % 100, (byte) i));
+                }
+            }
+            private void offer(ByteBuffer frame) {
+                while (!bridgeTransmit.offer(frame)) { Thread.yield(); }
+            }
+        });
+        bridge.start();
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(ByteBufferLinkLayer.MAX_FRAME_LENGTH);
+        for (int i = 0; i < frames; i++) {
+            buffer.clear();
+            assertEquals(14 + 1 + i % 100, station.receive(buffer));
+            assertEquals((byte) i, buffer.get(14 + i % 100));
+        }
+        bridge.join();
+
+        station.send(frame(GeonetStation.GN_ETHER_TYPE, 5, (byte) 7));
+        buffer.clear();
+        assertEquals(19, bridgeReceive.poll(buffer));
+        assertEquals(7, buffer.get(18));
+        assertEquals(-1, bridgeReceive.poll(buffer));
+        station.close();
+    }
+
+    @Test
+    public void testDropWhenFull() throws IOException {
+        File a = new File(folder.getRoot(), "a");
+        File b = new File(folder.getRoot(), "b");
+        LinkLayerSharedMemory station = new LinkLayerSharedMemory(a, b, 256, true);
+        for (int i = 0; i < 10; i++) {
+            station.send(frame(GeonetStation.GN_ETHER_TYPE, 50, (byte) i));  // 72 bytes per record.
+        }
+        assertEquals(7, station.dropped());
+    }
+
+    @Test(timeout=3000, expected=ClosedChannelException.class)
+    public void testCloseWhileWaiting() throws IOException, InterruptedException {
+        final LinkLayerSharedMemory station = new LinkLayerSharedMemory(
+                new File(folder.getRoot(), "a"), new File(folder.getRoot(), "b"), 256, true);
+        new Thread(new Runnable() {
+            @Override public void run() {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+                station.close();
+            }
+        }).start();
+        station.receive(ByteBuffer.allocate(ByteBufferLinkLayer.MAX_FRAME_LENGTH));
+    }
+
+    @Test(timeout=10000)
+    public void testThreadSignal() throws IOException, InterruptedException {
+        SharedMemoryRing.ThreadSignal signal = new SharedMemoryRing.ThreadSignal();
+        assertWokenUpBySignal(signal, signal);
+    }
+
+    @Test(timeout=10000)
+    public void testDatagramSignal() throws IOException, InterruptedException {
+        try (SharedMemoryRing.DatagramSignal receiveSignal = SharedMemoryRing.DatagramSignal.consumer(
+                    new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+                SharedMemoryRing.DatagramSignal bridgeSignal = SharedMemoryRing.DatagramSignal.producer(
+                    (InetSocketAddress) receiveSignal.localAddress())) {
+            assertWokenUpBySignal(bridgeSignal, receiveSignal);
+        }
+    }
+
+    /** Frames come slower than the longest sleep on the signal, so that the station sleeps on it
+     * each time; without the wakeup, it would see a frame up to that time late. */
+    private void assertWokenUpBySignal(SharedMemoryRing.Signal bridgeSignal,
+            SharedMemoryRing.Signal receiveSignal) throws IOException, InterruptedException {
+        File a = new File(folder.getRoot(), "a");
+        File b = new File(folder.getRoot(), "b");
+        LinkLayerSharedMemory station = new LinkLayerSharedMemory(a, b, 1024, true, null,
+                receiveSignal);
+        final SharedMemoryRing bridgeTransmit = SharedMemoryRing.producer(b, 1024, bridgeSignal);
+        final int frames = 5;
+        final long[] sentNanos = new long[frames];
+        Thread bridge = new Thread(new Runnable() {
+            @Override public void run() {
+                try {
+                    for (int i = 0; i < frames; i++) {
+                        Thread.sleep(SharedMemoryRing.MAX_SIGNAL_WAIT_MILLIS * 3 / 2);
+                        sentNanos[i] = System.nanoTime();
+                        bridgeTransmit.offer(frame(GeonetStation.GN_ETHER_TYPE, 10, (byte) i));
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        bridge.start();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(ByteBufferLinkLayer.MAX_FRAME_LENGTH);
+        long slowest = 0;
+        for (int i = 0; i < frames; i++) {
+            buffer.clear();
+            assertEquals(24, station.receive(buffer));
+            slowest = Math.max(slowest, System.nanoTime() - sentNanos[i]);
+        }
+        bridge.join();
+        station.close();
+        assertTrue("Woken up after " + TimeUnit.NANOSECONDS.toMillis(slowest) + " ms",
+                slowest < TimeUnit.MILLISECONDS.toNanos(SharedMemoryRing.MAX_SIGNAL_WAIT_MILLIS / 2));
+    }
+}
@@ -0,0 +1,77 @@
+package net.gcdc.geonetworking;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class LinkLayerUdpMulticastTest {
+
+    private final int port = 4480;
+
+    private static long sourceMac(ByteBuffer frame) {
+        return MacAddress.fromBytes(new byte[] {
+                frame.get(6), frame.get(7), frame.get(8), frame.get(9), frame.get(10), frame.get(11)
+                }).value();
+    }
+
+    private static ByteBuffer frame(long srcMac, byte payload) {
+        ByteBuffer frame = ByteBuffer.allocateDirect(15);
+        frame.put(new byte[6]);
+        new MacAddress(srcMac).putTo(frame);
+        frame.putShort(GeonetStation.GN_ETHER_TYPE).put(payload).flip();
+        return frame;
+    }
+
+    @Test(timeout=3000)
+    public void testOwnFramesAreFiltered() throws IOException, InterruptedException {
+        InetAddress group = InetAddress.getByName("239.255.0.89");
+        NetworkInterface loopback = NetworkInterface.getByInetAddress(InetAddress.getLoopbackAddress());
+        try (LinkLayerUdpMulticast l1 = new LinkLayerUdpMulticast(group, port, loopback, true);
+             LinkLayerUdpMulticast l2 = new LinkLayerUdpMulticast(group, port, loopback, true);
+             LinkLayerUdpMulticast l3 = new LinkLayerUdpMulticast(group, port, loopback, true)) {
+            ByteBuffer sent = frame(0, (byte) 1).asReadOnlyBuffer();
+            l1.send(sent);
+            assertEquals(0, sourceMac(sent));  // Sent from a copy, the frame is not touched.
+            assertEquals(sent.limit(), sent.position());
+            l2.send(frame(0x0000_0000_0042L, (byte) 2));
+
+            ByteBuffer buffer = ByteBuffer.allocateDirect(ByteBufferLinkLayer.MAX_FRAME_LENGTH);
+            assertEquals(15, l3.receive(buffer));
+            assertEquals(1, buffer.get(14));
+            assertEquals(l1.macAddress().value(), sourceMac(buffer));  // All-zero MAC replaced.
+            buffer.clear();
+            assertEquals(15, l3.receive(buffer));
+            assertEquals(2, buffer.get(14));
+
+            // Own frames are skipped, so l1 gets the frame of l2 and l2 the frame of l1.
+            buffer.clear();
+            assertEquals(15, l1.receive(buffer));
+            assertEquals(2, buffer.get(14));
+            buffer.clear();
+            assertEquals(15, l2.receive(buffer));
+            assertEquals(1, buffer.get(14));
+        }
+    }
+
+    @Test(timeout=3000)
+    public void testWithoutEthernetHeader() throws IOException, InterruptedException {
+        InetAddress group = InetAddress.getByName("239.255.0.89");
+        NetworkInterface loopback = NetworkInterface.getByInetAddress(InetAddress.getLoopbackAddress());
+        try (LinkLayerUdpMulticast l1 = new LinkLayerUdpMulticast(group, port, loopback, false);
+             LinkLayerUdpMulticast l2 = new LinkLayerUdpMulticast(group, port, loopback, false)) {
+            l1.send(ByteBuffer.wrap(new byte[] {1}));
+            l2.send(ByteBuffer.wrap(new byte[] {2}));
+            ByteBuffer buffer = ByteBuffer.allocate(ByteBufferLinkLayer.MAX_FRAME_LENGTH);
+            assertEquals(1, l1.receive(buffer));
+            assertEquals(2, buffer.get(0));
+            buffer.clear();
+            assertEquals(1, l2.receive(buffer));
+            assertEquals(1, buffer.get(0));
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package net.gcdc.geonetworking;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class PayloadViewTest {
+
+    @Test
+    public void slice() {
+        byte[] array = new byte[] {1, 2, 3, 4, 5};
+        PayloadView view = PayloadView.of(array).slice(1, 3);
+        assertEquals(3, view.length());
+        assertEquals(2, view.get(0));
+        assertArrayEquals(new byte[] {2, 3, 4}, view.toByteArray());
+        assertEquals(PayloadView.of(new byte[] {2, 3, 4}), view);
+        assertEquals(PayloadView.of(new byte[] {2, 3, 4}).hashCode(), view.hashCode());
+        assertEquals(3, view.asReadOnlyBuffer().remaining());
+        assertEquals(4, view.asReadOnlyBuffer().get(2));
+    }
+
+    @Test(expected=IndexOutOfBoundsException.class)
+    public void outOfRange() {
+        PayloadView.of(new byte[] {1, 2, 3}).slice(2, 2);
+    }
+
+    @Test
+    public void btpPacketSharesPayloadOfGeonetData() {
+        BtpPacket sent = BtpPacket.singleHop(new byte[] {7, 8, 9}, (short) 2001);
+        Optional<TrafficClass> emptyTrafficClass = Optional.empty();
+        Optional<LongPositionVector> emptySender = Optional.empty();
+        GeonetData data = new GeonetData(UpperProtocolType.BTP_B, sent.destination(),
+                emptyTrafficClass, emptySender, sent.asBytes());
+        GeonetData copy = data.withDestination(Destination.singleHop());
+        assertNotSame(data.payload, copy.payload);  // Copies do not alias each other.
+        assertArrayEquals(data.payload, copy.payload);
+
+        BtpPacket received = BtpPacket.fromGeonetData(data);
+        assertEquals(sent.payloadView(), received.payloadView());
+        assertArrayEquals(new byte[] {7, 8, 9}, received.payload());
+        assertNotSame(received.payload(), received.payload());  // payload() is a copy.
+
+        ByteBuffer buffer = ByteBuffer.allocate(3);
+        received.payloadView().putTo(buffer);
+        assertArrayEquals(new byte[] {7, 8, 9}, buffer.array());
+    }
+}
@@ -0,0 +1,50 @@
+package net.gcdc.geonetworking;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class SequenceWindowTest {
+
+    @Test
+    public void testInOrderAndDuplicates() {
+        SequenceWindow window = new SequenceWindow();
+        for (int i = 0; i < 70_000; i++) {  // Sequence numbers wrap around.
+            assertFalse(window.markSeen(1000 + i / 10, (short) i));
+            assertTrue(window.markSeen(1000 + i / 10, (short) i));
+        }
+    }
+
+    @Test
+    public void testParallelBroadcasts() {
+        SequenceWindow window = new SequenceWindow();
+        assertFalse(window.markSeen(1000, (short) 10));
+        // 11 goes a slower way, 12 arrives first.
+        assertFalse(window.markSeen(1002, (short) 12));
+        assertFalse(window.markSeen(1001, (short) 11));
+        assertTrue(window.markSeen(1001, (short) 11));
+        assertTrue(window.markSeen(1000, (short) 10));
+        assertTrue(window.markSeen(1002, (short) 12));
+    }
+
+    @Test
+    public void testBehindWindow() {
+        SequenceWindow window = new SequenceWindow();
+        assertFalse(window.markSeen(1000, (short) 0));
+        assertFalse(window.markSeen(1000, (short) SequenceWindow.SIZE));
+        assertFalse(window.markSeen(1000, (short) 1));  // Last one in the window.
+        assertFalse(window.markSeen(1000, (short) (SequenceWindow.SIZE + 2)));
+        assertTrue(window.markSeen(1000, (short) 2));   // Not seen, but too old to tell.
+    }
+
+    @Test
+    public void testSourceRestart() {
+        SequenceWindow window = new SequenceWindow();
+        for (int i = 0; i < 100; i++) { assertFalse(window.markSeen(1000, (short) i)); }
+        // Restarted source counts from 0 again, with newer timestamps.
+        assertFalse(window.markSeen(5000, (short) 0));
+        assertTrue(window.markSeen(5000, (short) 0));
+        assertFalse(window.markSeen(5000, (short) 1));
+    }
+}
@@ -0,0 +1,57 @@
+package net.gcdc.geonetworking;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.threeten.bp.Instant;
+
+public class StationRuntimeTest {
+
+    private static final Position here = new Position(57.70, 11.93);
+
+    private static final PositionProvider positionProvider = new PositionProvider() {
+        @Override public LongPositionVector getLatestPosition() {
+            return new LongPositionVector(Optional.<Address>empty(), Instant.now(), here,
+                    false, 0, 0);
+        }
+    };
+
+    @Test(timeout=10000)
+    public void manyStationsOnSharedThreads() throws IOException, InterruptedException {
+        final int count = 20;
+        BroadcastHub hub = new BroadcastHub(true);
+        GeonetStation[] stations = new GeonetStation[count];
+        final CountDownLatch received = new CountDownLatch(count - 1);
+        try (StationRuntime runtime = new StationRuntime(2)) {
+            for (int i = 0; i < count; i++) {
+                StationConfig config = new StationConfig();
+                config.setListenerQueueCapacity(16);  // Listeners on the shared workers too.
+                stations[i] = runtime.start(config, hub.get(), positionProvider);
+                if (i > 0) {
+                    stations[i].addGeonetDataListener(new GeonetDataListener() {
+                        @Override public void onGeonetDataReceived(GeonetData indication) {
+                            if (indication.protocol == UpperProtocolType.BTP_B) {
+                                received.countDown();
+                            }
+                        }
+                    });
+                }
+            }
+            assertEquals(count, runtime.stationCount());
+
+            stations[0].send(new GeonetData(UpperProtocolType.BTP_B, Destination.singleHop(),
+                    Optional.<TrafficClass>empty(), Optional.<LongPositionVector>empty(),
+                    new byte[] { 1, 2, 3 }));
+            assertTrue(received.await(5, TimeUnit.SECONDS));
+
+            stations[0].close();  // Closing one station leaves the others running.
+            while (runtime.stationCount() == count) { Thread.sleep(1); }
+            assertEquals(count - 1, runtime.stationCount());
+        }
+    }
+}
@@ -1,5 +1,8 @@
 package net.gcdc.geonetworking;
 
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
 import nl.jqno.equalsverifier.EqualsVerifier;
 
 import org.junit.Test;
@@ -8,7 +11,13 @@ public class TrafficClassTest {
 
     @Test public void test() {
         EqualsVerifier.forClass(TrafficClass.class).verify();
-        // TODO: add test for store-carry-forward flag.
+    }
+
+    @Test public void testStoreCarryForward() {
+        assertTrue(TrafficClass.fromByte((byte) 0x80).isStoreCarryForward());
+        assertTrue(TrafficClass.fromByte((byte) 0xff).isStoreCarryForward());
+        assertFalse(TrafficClass.fromByte((byte) 0x7f).isStoreCarryForward());
+        assertFalse(TrafficClass.fromByte((byte) 0x00).isStoreCarryForward());
     }
 
 }
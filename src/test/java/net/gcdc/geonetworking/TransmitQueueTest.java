@@ -0,0 +1,96 @@
+package net.gcdc.geonetworking;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+public class TransmitQueueTest {
+
+    @Test(timeout=5000)
+    public void testManyProducers() throws IOException, InterruptedException {
+        DuplicatorLinkLayer d = new DuplicatorLinkLayer();
+        final ByteBufferLinkLayer sender   = LinkLayerAdapter.of(d.get());
+        final ByteBufferLinkLayer receiver = LinkLayerAdapter.of(d.get());
+        final FrameBufferPool pool = new FrameBufferPool(16, 16, false);
+        final TransmitQueue queue = new TransmitQueue(sender, 1024).start();
+
+        final int producers = 4;
+        final int framesEach = 200;
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            final int producer = p;
+            threads[p] = new Thread(new Runnable() {
+                @Override public void run() {
+                    for (int i = 0; i < framesEach; i++) {
+                        FrameBuffer frame = pool.acquire(4);
+                        frame.buffer().putShort(0, (short) producer).putShort(2, (short) i);
+                        assertTrue(queue.offer(frame));
+                        frame.release();
+                    }
+                }
+            });
+            threads[p].start();
+        }
+        for (Thread t : threads) { t.join(); }
+
+        Set<Integer> received = new HashSet<>();
+        ByteBuffer buffer = ByteBuffer.allocate(ByteBufferLinkLayer.MAX_FRAME_LENGTH);
+        for (int i = 0; i < producers * framesEach; i++) {
+            buffer.clear();
+            assertEquals(4, receiver.receive(buffer));
+            received.add(buffer.getInt(0));
+        }
+        assertEquals(producers * framesEach, received.size());
+        queue.close();  // Waits for the writer, which releases the frames after sending.
+        assertEquals(producers * framesEach, queue.sent());
+        assertEquals(0, queue.dropped());
+        assertEquals(16, pool.available());
+    }
+
+    @Test(timeout=5000)
+    public void testDropWhenFull() throws InterruptedException {
+        final CountDownLatch isSending = new CountDownLatch(1);
+        final CountDownLatch mayFinish = new CountDownLatch(1);
+        ByteBufferLinkLayer blocked = new AbstractByteBufferLinkLayer() {
+            @Override public int receive(ByteBuffer buffer) { return 0; }
+            @Override public void send(ByteBuffer frame) throws IOException {
+                isSending.countDown();
+                try {
+                    mayFinish.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                frame.position(frame.limit());
+            }
+            @Override public boolean hasEthernetHeader() { return false; }
+            @Override public void close() { }
+        };
+        FrameBufferPool pool = new FrameBufferPool(8, 16, false);
+        TransmitQueue queue = new TransmitQueue(blocked, 2).start();
+
+        FrameBuffer first = pool.acquire(1);
+        assertTrue(queue.offer(first));
+        first.release();
+        isSending.await();  // Writer took the first frame and is stuck in send.
+
+        FrameBuffer frame = pool.acquire(1);
+        assertTrue(queue.offer(frame));
+        assertTrue(queue.offer(frame));
+        assertFalse(queue.offer(frame));
+        assertEquals(1, queue.dropped());
+        assertEquals(3, frame.referenceCount());
+
+        mayFinish.countDown();
+        frame.release();
+        queue.close();
+        assertEquals(8, pool.available());
+    }
+}
@@ -0,0 +1,84 @@
+package net.gcdc.geonetworking;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class UpwardQueueTest {
+
+    /** Indication with traffic class ID tc and payload id. */
+    private static GeonetData data(int tc, int id) {
+        return new GeonetData(UpperProtocolType.BTP_B, Destination.singleHop(),
+                Optional.of(TrafficClass.fromByte((byte) tc)),
+                Optional.<LongPositionVector>empty(), new byte[] { (byte) id });
+    }
+
+    private static int takeId(UpwardQueue queue) throws InterruptedException {
+        return queue.take().payload[0];
+    }
+
+    @Test(timeout=5000)
+    public void testDropOldest() throws InterruptedException {
+        UpwardQueue queue = new UpwardQueue(3, UpwardQueue.OverflowPolicy.DROP_OLDEST);
+        for (int i = 0; i < 5; i++) { queue.put(data(0, i)); }
+        assertEquals(3, queue.size());
+        assertEquals(2, queue.overflows());
+        assertEquals(2, queue.dropped());
+        assertEquals(2, takeId(queue));
+        assertEquals(3, takeId(queue));
+        assertEquals(4, takeId(queue));
+        assertNull(queue.poll(0, TimeUnit.MILLISECONDS));
+    }
+
+    @Test(timeout=5000)
+    public void testDropNewest() throws InterruptedException {
+        UpwardQueue queue = new UpwardQueue(3, UpwardQueue.OverflowPolicy.DROP_NEWEST);
+        queue.putAll(Arrays.asList(data(0, 0), data(0, 1), data(0, 2), data(0, 3), data(0, 4)));
+        assertEquals(2, queue.dropped());
+        assertEquals(0, takeId(queue));
+        assertEquals(1, takeId(queue));
+        assertEquals(2, takeId(queue));
+    }
+
+    @Test(timeout=5000)
+    public void testDropByTrafficClass() throws InterruptedException {
+        UpwardQueue queue = new UpwardQueue(4, UpwardQueue.OverflowPolicy.DROP_BY_TRAFFIC_CLASS);
+        queue.put(data(1, 0));
+        queue.put(data(3, 1));
+        queue.put(data(0, 2));
+        queue.put(data(3, 3));
+        queue.put(data(2, 4));  // Drops 1, the oldest of TC 3.
+        queue.put(data(5, 5));  // Lowest priority, dropped itself.
+        queue.put(data(0, 6));  // Drops 3.
+        assertEquals(3, queue.dropped());
+        assertEquals(0, takeId(queue));
+        assertEquals(2, takeId(queue));
+        assertEquals(4, takeId(queue));
+        assertEquals(6, takeId(queue));
+    }
+
+    @Test(timeout=5000)
+    public void testBlock() throws InterruptedException {
+        final UpwardQueue queue = new UpwardQueue(2, UpwardQueue.OverflowPolicy.BLOCK);
+        final int count = 1000;
+        Thread producer = new Thread(new Runnable() {
+            @Override public void run() {
+                try {
+                    for (int i = 0; i < count; i++) { queue.put(data(0, i)); }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        producer.start();
+        for (int i = 0; i < count; i++) {
+            assertEquals((byte) i, queue.take().payload[0]);
+        }
+        producer.join();
+        assertEquals(0, queue.dropped());
+    }
+}
@@ -0,0 +1,80 @@
+package net.gcdc.geonetworking;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.threeten.bp.Instant;
+
+public class VirtualTimeSchedulerTest {
+
+    private static final Instant start = Instant.parse("2016-06-01T12:00:00Z");
+
+    @Test
+    public void testOrderAndCancel() {
+        final VirtualTimeScheduler scheduler = new VirtualTimeScheduler(start);
+        final List<String> log = new ArrayList<>();
+        scheduler.schedule(new Runnable() {
+            @Override public void run() {
+                log.add("b@" + scheduler.now().toEpochMilli());
+                scheduler.schedule(new Runnable() {  // Within the same advance.
+                    @Override public void run() { log.add("d@" + scheduler.now().toEpochMilli()); }
+                }, 5, TimeUnit.MILLISECONDS);
+            }
+        }, 20, TimeUnit.MILLISECONDS);
+        scheduler.schedule(new Runnable() {
+            @Override public void run() { log.add("a@" + scheduler.now().toEpochMilli()); }
+        }, 10, TimeUnit.MILLISECONDS);
+        TimerService.Timeout c = scheduler.schedule(new Runnable() {
+            @Override public void run() { log.add("c"); }
+        }, 15, TimeUnit.MILLISECONDS);
+        assertTrue(c.cancel());
+        assertFalse(c.cancel());
+
+        assertEquals(3, scheduler.advanceBy(100, TimeUnit.MILLISECONDS));
+        final long t0 = start.toEpochMilli();
+        assertEquals(3, log.size());
+        assertEquals("a@" + (t0 + 10), log.get(0));
+        assertEquals("b@" + (t0 + 20), log.get(1));
+        assertEquals("d@" + (t0 + 25), log.get(2));
+        assertEquals(t0 + 100, scheduler.clock().millis());
+        assertEquals(0, scheduler.pending());
+    }
+
+    @Test(timeout=5000)
+    public void testBeaconsInVirtualTime() throws IOException, InterruptedException {
+        VirtualTimeScheduler scheduler = new VirtualTimeScheduler(start);
+        BroadcastHub hub = new BroadcastHub(true);
+        BroadcastHub.Port monitor = hub.get();
+        final Optional<Address> emptyAddress = Optional.empty();
+        GeonetStation station = new GeonetStation(new StationConfig(), hub.get(),
+                new PositionProvider() {
+                    @Override public LongPositionVector getLatestPosition() {
+                        return new LongPositionVector(emptyAddress, Instant.now(),
+                                new Position(57.70, 11.93), false, 0, 0);
+                    }
+                }, new MacAddress(0), scheduler, null);
+        station.startBecon();
+
+        // Beacon every 3 to 3.75 seconds, 10 minutes take no wall clock time.
+        int beacons = scheduler.advanceBy(10, TimeUnit.MINUTES);
+        assertTrue("Beacons: " + beacons, beacons >= 160 && beacons <= 200);
+
+        ByteBuffer frame = ByteBuffer.allocate(ByteBufferLinkLayer.MAX_FRAME_LENGTH);
+        for (int i = 0; i < beacons; i++) {
+            frame.clear();
+            monitor.receive(frame);
+            assertEquals(DestinationType.BEACON, new CommonHeaderView()
+                    .wrap(frame, 14 + BasicHeader.LENGTH).typeAndSubtype());
+        }
+        station.close();
+        assertEquals(0, scheduler.advanceBy(10, TimeUnit.MINUTES));  // Beacon is stopped.
+    }
+}